@@ -0,0 +1,77 @@
+package com.server.benchmarks;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.Crypt;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.server.MessageDatabase;
+
+/**
+ * Benchmarks for the cost of authenticating a request.
+ * <p>cryptVerify measures the SHA-512 Crypt hash alone. authenticateUser goes through
+ * MessageDatabase and is answered from the credential cache after the first call,
+ * while authenticateUserUncached disables the cache so every call queries the
+ * users table and hashes the password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark-password";
+
+    private String dbName;
+    private String hashedPassword;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        this.dbName = BenchmarkData.databasePath("benchmark-auth.db");
+        BenchmarkData.deleteDatabase(this.dbName);
+        MessageDatabase.getInstance().open(this.dbName);
+        MessageDatabase.getInstance().setUser(new JSONObject()
+            .put("username", USERNAME)
+            .put("password", PASSWORD)
+            .put("email", "benchmark@example.com"));
+        this.hashedPassword = Crypt.crypt(PASSWORD, "$6$benchmarksalt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        MessageDatabase.getInstance().closeDB();
+        BenchmarkData.deleteDatabase(this.dbName);
+    }
+
+    @Benchmark
+    public boolean cryptVerify() {
+        return this.hashedPassword.equals(Crypt.crypt(PASSWORD, this.hashedPassword));
+    }
+
+    @Benchmark
+    public boolean authenticateUser() throws SQLException {
+        return MessageDatabase.getInstance().authenticateUser(USERNAME, PASSWORD);
+    }
+
+    /* A negative time-to-live makes every cached entry expired, which disables the credential cache */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcredentialcache.ttl=-1")
+    public boolean authenticateUserUncached() throws SQLException {
+        return MessageDatabase.getInstance().authenticateUser(USERNAME, PASSWORD);
+    }
+}
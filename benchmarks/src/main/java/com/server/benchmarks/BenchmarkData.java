@@ -0,0 +1,158 @@
+package com.server.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import com.server.MessageDatabase;
+import com.server.WarningMessage;
+
+/**
+ * Deterministic test data shared by the benchmarks.
+ * <p>Every generated message depends only on its index, so the same table size
+ * always produces the same database file and the results are comparable
+ * between runs.
+ */
+public final class BenchmarkData {
+    /* Number of distinct nicknames in the generated messages */
+    public static final int USERS = 1000;
+    /* Time of the first generated message, in Unix time milliseconds */
+    public static final long FIRST_SENT = LocalDateTime.of(2023, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    /* Time between two generated messages in milliseconds */
+    public static final long SENT_STEP = 30_000;
+
+    private static final String[] DANGERTYPES = { "Moose", "Reindeer", "Deer", "Other" };
+    private static final long SEED = 42;
+
+    private BenchmarkData() {}
+
+    /**
+     * Creates the JSON body of a warning message as a client would POST it.
+     * @param index int, the index of the message
+     * @return String, the warning message as JSON
+     */
+    public static String warningJson(int index) {
+        final WarningMessage message = warningMessage(index);
+        return "{\"nickname\":\"" + message.getNickname() + "\"," +
+            "\"latitude\":" + message.getLatitude() + "," +
+            "\"longitude\":" + message.getLongitude() + "," +
+            "\"dangertype\":\"" + message.getDangertype() + "\"," +
+            "\"sent\":\"" + message.getSent(ZoneOffset.UTC).toOffsetDateTime() + "\"," +
+            "\"areacode\":\"358\",\"phonenumber\":\"0401234567\"}";
+    }
+
+    /**
+     * Creates a warning message without weather information.
+     * @param index int, the index of the message
+     * @return WarningMessage
+     */
+    public static WarningMessage warningMessage(int index) {
+        final Random random = new Random(SEED + index);
+        final WarningMessage message = new WarningMessage(
+            nickname(index),
+            60.0 + random.nextDouble() * 10.0,
+            20.0 + random.nextDouble() * 10.0,
+            DANGERTYPES[index % DANGERTYPES.length],
+            WarningMessage.setSent(sent(index)));
+        message.setWeather(WarningMessage.WEATHER_UNAVAILABLE);
+        return message;
+    }
+
+    /**
+     * Gets the nickname of the message with the given index.
+     * @param index int, the index of the message
+     * @return String, one of USERS nicknames
+     */
+    public static String nickname(int index) {
+        return "user" + (index % USERS);
+    }
+
+    /**
+     * Gets the sent time of the message with the given index.
+     * @param index int, the index of the message
+     * @return long, the sent time in Unix time milliseconds
+     */
+    public static long sent(int index) {
+        return FIRST_SENT + index * SENT_STEP;
+    }
+
+    /**
+     * Gets the path of a database file in the temporary directory.
+     * @param name String, the name of the file without directory
+     * @return String, the path of the file
+     */
+    public static String databasePath(String name) {
+        return new File(System.getProperty("java.io.tmpdir"), name).getPath();
+    }
+
+    /**
+     * Removes the database file and its WAL files.
+     * @param dbName String, the path of the database file
+     */
+    public static void deleteDatabase(String dbName) {
+        new File(dbName).delete();
+        new File(dbName + "-wal").delete();
+        new File(dbName + "-shm").delete();
+    }
+
+    /**
+     * Creates a database that contains the given number of generated messages.
+     * <p>The file is reused if it already exists, because filling a million rows takes a while.
+     * The schema is created by MessageDatabase, then the rows are inserted in one transaction
+     * with plain JDBC, which is much faster than going through the write queue one message at a time.
+     * @param rows int, the number of messages
+     * @return String, the path of the database file
+     * @throws SQLException
+     */
+    public static String populatedDatabase(int rows) throws SQLException {
+        final String dbName = databasePath("benchmark-" + rows + ".db");
+        if (new File(dbName).isFile()) {
+            return dbName;
+        }
+
+        final MessageDatabase messageDatabase = MessageDatabase.getInstance();
+        messageDatabase.open(dbName);
+        messageDatabase.closeDB();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbName)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertStatement = connection.prepareStatement(
+                    "INSERT INTO messages (sent, nickname, latitude, longitude, dangertype, areacode, phonenumber, weather) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    final WarningMessage message = warningMessage(i);
+                    insertStatement.setLong(1, message.dateAsInt());
+                    insertStatement.setString(2, message.getNickname());
+                    insertStatement.setDouble(3, message.getLatitude());
+                    insertStatement.setDouble(4, message.getLongitude());
+                    insertStatement.setString(5, message.getDangertype());
+                    insertStatement.setString(6, "358");
+                    insertStatement.setString(7, "0401234567");
+                    insertStatement.setInt(8, i % 2 == 0 ? i % 30 : WarningMessage.WEATHER_UNAVAILABLE);
+                    insertStatement.addBatch();
+
+                    if (i % 10000 == 9999) {
+                        insertStatement.executeBatch();
+                    }
+                }
+                insertStatement.executeBatch();
+            }
+            connection.commit();
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE");
+            }
+        } catch (final SQLException e) {
+            deleteDatabase(dbName);
+            throw e;
+        }
+
+        return dbName;
+    }
+}
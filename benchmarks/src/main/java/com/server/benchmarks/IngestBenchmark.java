@@ -0,0 +1,73 @@
+package com.server.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.server.MessageDatabase;
+
+/**
+ * Benchmark for MessageDatabase.setMessage(), i.e. the time a handler thread waits
+ * until its message has been committed.
+ * <p>Runs with several threads, because the write queue commits the messages of
+ * concurrent handlers together. Use -t to change the thread count.
+ * <p>Each trial inserts into a copy of the QueryBenchmark database of the same size,
+ * so the cost of the indexes at 10k, 100k and 1M rows is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class IngestBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private String dbName;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException, IOException {
+        /* The generated database is closed cleanly, so its WAL has been checkpointed into the file */
+        final String populated = BenchmarkData.populatedDatabase(this.rows);
+        this.dbName = BenchmarkData.databasePath("benchmark-ingest-" + this.rows + ".db");
+        BenchmarkData.deleteDatabase(this.dbName);
+        Files.copy(Paths.get(populated), Paths.get(this.dbName), StandardCopyOption.REPLACE_EXISTING);
+        /* The new messages continue after the generated ones */
+        this.nextIndex.set(this.rows);
+        MessageDatabase.getInstance().open(this.dbName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        MessageDatabase.getInstance().closeDB();
+        BenchmarkData.deleteDatabase(this.dbName);
+    }
+
+    /* Every call inserts a new message, the index keeps the primary key unique */
+    @Benchmark
+    public void setMessage() throws SQLException {
+        MessageDatabase.getInstance().setMessage(BenchmarkData.warningMessage(this.nextIndex.getAndIncrement()));
+    }
+}
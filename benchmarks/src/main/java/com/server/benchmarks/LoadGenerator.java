@@ -0,0 +1,512 @@
+package com.server.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.server.Server;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * End-to-end load generator for the HTTPS server.
+ * <p>Starts Server in-process with a freshly generated keystore and an empty database
+ * in a temporary directory, registers the test users through /registration and then
+ * runs concurrent Basic-auth clients against /warning with a configurable mix of
+ * operations. Prints throughput and latency percentiles per operation together with
+ * the CPU, heap, GC and thread usage of the process.
+ * <p>Configured with system properties:
+ * <ul>
+ * <li>load.port, the port of the server (8443)</li>
+ * <li>load.users, the number of registered users (20)</li>
+ * <li>load.clients, the number of concurrent clients (32)</li>
+ * <li>load.warmup, the warmup time in seconds that is not reported (5)</li>
+ * <li>load.duration, the measured time in seconds (30)</li>
+ * <li>load.mix, the relative weights of the operations (post_warning=50,get=10,query_user=25,query_time=15)</li>
+ * <li>load.getlimit, the page size of GET requests, 0 reads the whole table (0)</li>
+ * <li>load.serverlog, true keeps the server's console output (false)</li>
+ * </ul>
+ * <p>The clients run in the same process as the server, so the CPU and heap figures include them.
+ * Run with e.g. java -Dload.clients=64 -cp benchmarks/target/benchmarks.jar com.server.benchmarks.LoadGenerator
+ */
+public final class LoadGenerator {
+    private static final int PORT = Integer.getInteger("load.port", 8443);
+    private static final int USERS = Integer.getInteger("load.users", 20);
+    private static final int CLIENTS = Integer.getInteger("load.clients", 32);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 30);
+    private static final String MIX = System.getProperty("load.mix", "post_warning=50,get=10,query_user=25,query_time=15");
+    private static final int GET_LIMIT = Integer.getInteger("load.getlimit", 0);
+    private static final boolean SERVER_LOG = Boolean.getBoolean("load.serverlog");
+
+    private static final String PASSWORD = "password";
+    /* Length of the time interval of the time queries */
+    private static final long TIME_QUERY_WINDOW_MS = 60_000;
+
+    /**
+     * Operations the clients perform, with the label used in the report.
+     */
+    private enum Operation {
+        POST_WARNING("post_warning"),
+        GET("get"),
+        QUERY_USER("query_user"),
+        QUERY_TIME("query_time");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        private static Operation fromLabel(String label) {
+            for (final Operation operation : values()) {
+                if (operation.label.equals(label)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in load.mix: " + label);
+        }
+    }
+
+    /**
+     * Latencies and errors of one operation recorded by one client.
+     */
+    private static class OperationStats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        private void record(long nanos, boolean success) {
+            if (this.count == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            }
+            this.latencies[this.count++] = nanos;
+            if (!success) {
+                this.errors++;
+            }
+        }
+
+        private void merge(OperationStats other) {
+            if (this.count + other.count > this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, this.latencies, this.count, other.count);
+            this.count += other.count;
+            this.errors += other.errors;
+        }
+
+        private double percentileMs(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile / 100.0 * this.count) - 1;
+            return this.latencies[Math.max(0, Math.min(this.count - 1, index))] / 1_000_000.0;
+        }
+    }
+
+    private final HttpClient client;
+    private final String baseAddress = "https://localhost:" + PORT;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    /* Sent times are unique, so no two POSTed warnings collide on the primary key */
+    private final AtomicLong nextSent = new AtomicLong(Instant.now().toEpochMilli());
+    private volatile boolean recording = false;
+    private volatile boolean running = true;
+
+    private LoadGenerator(SSLContext sslContext) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .sslContext(sslContext)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+        final String[] entries = MIX.split(",");
+        this.operations = new Operation[entries.length];
+        this.cumulativeWeights = new int[entries.length];
+        int total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            final String[] entry = entries[i].trim().split("=");
+            this.operations[i] = Operation.fromLabel(entry[0].trim());
+            total += Integer.parseInt(entry[1].trim());
+            this.cumulativeWeights[i] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final PrintStream report = System.out;
+        if (!SERVER_LOG) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        final File directory = Files.createTempDirectory("loadtest").toFile();
+        final File keystore = new File(directory, "keystore.jks");
+        final File database = new File(directory, "messages.db");
+
+        report.println("Generating keystore and starting the server in " + directory);
+        generateKeystore(keystore);
+        final HttpsServer server = Server.start(PORT, keystore.getPath(), PASSWORD, database.getPath());
+
+        try {
+            final LoadGenerator generator = new LoadGenerator(clientSSLContext(keystore));
+            generator.registerUsers();
+            generator.run(report);
+        } finally {
+            Server.stop(server, 1);
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Generates a self-signed certificate for localhost with keytool.
+     * @param keystore File, the keystore to be created
+     * @throws IOException if keytool fails
+     * @throws InterruptedException
+     */
+    private static void generateKeystore(File keystore) throws IOException, InterruptedException {
+        final String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        final Process process = new ProcessBuilder(keytool,
+            "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+            "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+            "-storetype", "JKS", "-keystore", keystore.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + output);
+        }
+    }
+
+    /**
+     * Creates an SSLContext that trusts the generated certificate.
+     * @param keystore File, the generated keystore
+     * @return SSLContext for the clients
+     * @throws Exception if the keystore could not be read
+     */
+    private static SSLContext clientSSLContext(File keystore) throws Exception {
+        final KeyStore trustStore = KeyStore.getInstance("JKS");
+        try (FileInputStream keystoreStream = new FileInputStream(keystore)) {
+            trustStore.load(keystoreStream, PASSWORD.toCharArray());
+        }
+        final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    /**
+     * Registers the test users through /registration.
+     * @throws Exception if a registration fails
+     */
+    private void registerUsers() throws Exception {
+        for (int i = 0; i < USERS; i++) {
+            final String body = "{\"username\":\"" + username(i) + "\",\"password\":\"" + PASSWORD + "\",\"email\":\"" + username(i) + "@example.com\"}";
+            final HttpRequest request = HttpRequest.newBuilder(URI.create(this.baseAddress + "/registration"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+            final int status = this.client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status != 200) {
+                throw new IOException("Registering " + username(i) + " failed with status " + status);
+            }
+        }
+    }
+
+    /**
+     * Runs the clients through the warmup and the measurement and prints the report.
+     * @param report PrintStream, the output of the report
+     * @throws InterruptedException
+     */
+    private void run(PrintStream report) throws InterruptedException {
+        final List<OperationStats[]> clientStats = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            final int clientIndex = i;
+            final OperationStats[] stats = new OperationStats[Operation.values().length];
+            for (int j = 0; j < stats.length; j++) {
+                stats[j] = new OperationStats();
+            }
+            clientStats.add(stats);
+
+            final Thread thread = new Thread(() -> runClient(clientIndex, stats), "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        report.println("Running " + CLIENTS + " clients as " + USERS + " users, warmup " + WARMUP_SECONDS + " s, measurement " + DURATION_SECONDS + " s, mix " + MIX);
+        threads.forEach(Thread::start);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_SECONDS));
+
+        final ResourceSampler sampler = new ResourceSampler();
+        this.recording = true;
+        final long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(DURATION_SECONDS));
+        this.recording = false;
+        final double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        sampler.stop();
+
+        this.running = false;
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        printReport(report, clientStats, elapsedSeconds, sampler);
+    }
+
+    /**
+     * Main loop of one client.
+     * @param clientIndex int, the index of the client
+     * @param stats OperationStats[], the statistics of the client indexed by Operation ordinal
+     */
+    private void runClient(int clientIndex, OperationStats[] stats) {
+        final String authorization = "Basic " + Base64.getEncoder().encodeToString(
+            (username(clientIndex % USERS) + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+
+        while (this.running) {
+            final Operation operation = nextOperation();
+            final HttpRequest request = buildRequest(operation, clientIndex, authorization);
+
+            final long start = System.nanoTime();
+            boolean success;
+            try {
+                final HttpResponse<Void> response = this.client.send(request, HttpResponse.BodyHandlers.discarding());
+                success = response.statusCode() == 200;
+            } catch (IOException e) {
+                success = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            if (this.recording) {
+                stats[operation.ordinal()].record(elapsed, success);
+            }
+        }
+    }
+
+    /**
+     * Picks the next operation according to the weights of the mix.
+     * @return Operation
+     */
+    private Operation nextOperation() {
+        final int value = ThreadLocalRandom.current().nextInt(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        for (int i = 0; i < this.cumulativeWeights.length; i++) {
+            if (value < this.cumulativeWeights[i]) {
+                return this.operations[i];
+            }
+        }
+        return this.operations[this.operations.length - 1];
+    }
+
+    /**
+     * Builds the request of the given operation.
+     * @param operation Operation, the operation to perform
+     * @param clientIndex int, the index of the client, used as part of the nickname
+     * @param authorization String, the value of the Authorization header
+     * @return HttpRequest
+     */
+    private HttpRequest buildRequest(Operation operation, int clientIndex, String authorization) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .header("Authorization", authorization)
+            .timeout(Duration.ofSeconds(60));
+        final URI warningAddress = URI.create(this.baseAddress + "/warning");
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        switch (operation) {
+            case POST_WARNING:
+                return builder.uri(warningAddress)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(String.format(Locale.ROOT,
+                        "{\"nickname\":\"%s\",\"latitude\":%.6f,\"longitude\":%.6f,\"dangertype\":\"Moose\",\"sent\":\"%s\"}",
+                        nickname(clientIndex), 60 + random.nextDouble() * 10, 20 + random.nextDouble() * 10,
+                        Instant.ofEpochMilli(this.nextSent.getAndIncrement()))))
+                    .build();
+            case GET:
+                return builder.uri(GET_LIMIT > 0 ? URI.create(warningAddress + "?limit=" + GET_LIMIT) : warningAddress)
+                    .GET()
+                    .build();
+            case QUERY_USER:
+                return builder.uri(warningAddress)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"query\":\"user\",\"nickname\":\"" + nickname(random.nextInt(CLIENTS)) + "\"}"))
+                    .build();
+            case QUERY_TIME:
+            default:
+                final long timeEnd = this.nextSent.get();
+                return builder.uri(warningAddress)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"query\":\"time\",\"timestart\":\"" + Instant.ofEpochMilli(timeEnd - TIME_QUERY_WINDOW_MS) +
+                        "\",\"timeend\":\"" + Instant.ofEpochMilli(timeEnd) + "\"}"))
+                    .build();
+        }
+    }
+
+    /**
+     * Prints the throughput and latency of every operation and the resource usage.
+     * @param report PrintStream, the output of the report
+     * @param clientStats List of the statistics of every client
+     * @param elapsedSeconds double, the length of the measurement
+     * @param sampler ResourceSampler, the resource usage during the measurement
+     */
+    private void printReport(PrintStream report, List<OperationStats[]> clientStats, double elapsedSeconds, ResourceSampler sampler) {
+        final OperationStats total = new OperationStats();
+
+        report.println();
+        report.println(String.format(Locale.ROOT, "%-14s %9s %7s %9s %9s %9s %9s %9s %9s",
+            "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        for (final Operation operation : Operation.values()) {
+            final OperationStats merged = new OperationStats();
+            for (final OperationStats[] stats : clientStats) {
+                merged.merge(stats[operation.ordinal()]);
+            }
+            if (merged.count == 0) {
+                continue;
+            }
+            total.merge(merged);
+            printRow(report, operation.label, merged, elapsedSeconds);
+        }
+        printRow(report, "total", total, elapsedSeconds);
+
+        report.println();
+        report.println(String.format(Locale.ROOT, "CPU:     %.1f s process CPU time, %.2f cores on average (%d available)",
+            sampler.cpuSeconds(), sampler.cpuSeconds() / elapsedSeconds, Runtime.getRuntime().availableProcessors()));
+        report.println(String.format(Locale.ROOT, "Heap:    %.1f MB average used, %.1f MB max used, %.1f MB max committed",
+            sampler.averageHeapMb(), sampler.maxHeapMb, sampler.maxCommittedMb));
+        report.println(String.format(Locale.ROOT, "GC:      %d collections, %d ms total pause", sampler.gcCount(), sampler.gcMillis()));
+        report.println(String.format(Locale.ROOT, "Threads: %d peak live threads", sampler.peakThreads()));
+    }
+
+    private static void printRow(PrintStream report, String label, OperationStats stats, double elapsedSeconds) {
+        Arrays.sort(stats.latencies, 0, stats.count);
+        report.println(String.format(Locale.ROOT, "%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+            label, stats.count, stats.errors, stats.count / elapsedSeconds,
+            stats.percentileMs(50), stats.percentileMs(90), stats.percentileMs(99), stats.percentileMs(99.9), stats.percentileMs(100)));
+    }
+
+    private static String username(int index) {
+        return "loaduser" + index;
+    }
+
+    private static String nickname(int clientIndex) {
+        return "client" + clientIndex;
+    }
+
+    /**
+     * Samples the heap once a second and records the CPU time, GC and thread
+     * counters at the start and the end of the measurement.
+     */
+    private static class ResourceSampler {
+        private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final long startCpuNanos;
+        private final long startGcCount;
+        private final long startGcMillis;
+        private long endCpuNanos;
+        private long endGcCount;
+        private long endGcMillis;
+        private volatile double heapSumMb;
+        private volatile int heapSamples;
+        private volatile double maxHeapMb;
+        private volatile double maxCommittedMb;
+
+        private ResourceSampler() {
+            this.threads.resetPeakThreadCount();
+            this.startCpuNanos = this.os.getProcessCpuTime();
+            this.startGcCount = totalGcCount();
+            this.startGcMillis = totalGcMillis();
+            this.scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+        }
+
+        private void sample() {
+            final double usedMb = this.memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+            final double committedMb = this.memory.getHeapMemoryUsage().getCommitted() / (1024.0 * 1024.0);
+            this.heapSumMb += usedMb;
+            this.heapSamples++;
+            this.maxHeapMb = Math.max(this.maxHeapMb, usedMb);
+            this.maxCommittedMb = Math.max(this.maxCommittedMb, committedMb);
+        }
+
+        private void stop() throws InterruptedException {
+            this.scheduler.shutdown();
+            this.scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            this.endCpuNanos = this.os.getProcessCpuTime();
+            this.endGcCount = totalGcCount();
+            this.endGcMillis = totalGcMillis();
+        }
+
+        private double cpuSeconds() {
+            return (this.endCpuNanos - this.startCpuNanos) / 1_000_000_000.0;
+        }
+
+        private double averageHeapMb() {
+            return this.heapSamples == 0 ? 0 : this.heapSumMb / this.heapSamples;
+        }
+
+        private long gcCount() {
+            return this.endGcCount - this.startGcCount;
+        }
+
+        private long gcMillis() {
+            return this.endGcMillis - this.startGcMillis;
+        }
+
+        private int peakThreads() {
+            return this.threads.getPeakThreadCount();
+        }
+
+        private static long totalGcCount() {
+            long count = 0;
+            for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long totalGcMillis() {
+            long millis = 0;
+            for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return millis;
+        }
+    }
+}
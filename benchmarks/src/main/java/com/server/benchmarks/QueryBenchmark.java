@@ -0,0 +1,115 @@
+package com.server.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.server.MessageDatabase;
+import com.server.MessageSerializer;
+import com.server.SerializedMessages;
+
+/**
+ * Benchmarks for the message queries at different table sizes.
+ * <p>The databases are generated by BenchmarkData and kept in the temporary
+ * directory, so only the first run of each size has to fill the table.
+ * <p>getMessages() and writeMessages() read the whole table, so at a million rows
+ * a single call takes seconds. Select sizes with e.g. -p rows=10000,100000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    /* Length of the time interval query, one day */
+    private static final long INTERVAL = 24 * 60 * 60 * 1000L;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    private MessageDatabase messageDatabase;
+    private CachedRowSet userRows;
+    private long timeStart;
+    private int nextUser;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        final String dbName = BenchmarkData.populatedDatabase(this.rows);
+        this.messageDatabase = MessageDatabase.getInstance();
+        this.messageDatabase.open(dbName);
+        /* Query the middle of the table, so the interval is always full */
+        this.timeStart = BenchmarkData.sent(this.rows / 2);
+
+        /* Result of one user query kept in memory, so serializeUserQuery() does not touch the database */
+        this.userRows = RowSetProvider.newFactory().createCachedRowSet();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbName);
+                PreparedStatement statement = connection.prepareStatement("SELECT * FROM messages WHERE nickname = ?")) {
+            statement.setString(1, BenchmarkData.nickname(0));
+            try (ResultSet result = statement.executeQuery()) {
+                this.userRows.populate(result);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        this.messageDatabase.closeDB();
+    }
+
+    /* Whole table serialized into one byte array */
+    @Benchmark
+    public SerializedMessages getMessages() throws SQLException {
+        return this.messageDatabase.getMessages();
+    }
+
+    /* Whole table serialized to JSON, as sent by the GET handler */
+    @Benchmark
+    public void writeMessages() throws SQLException, IOException {
+        this.messageDatabase.writeMessages(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public SerializedMessages getMessagesByUser() throws SQLException {
+        this.nextUser = (this.nextUser + 1) % BenchmarkData.USERS;
+        return this.messageDatabase.getMessagesByUser(BenchmarkData.nickname(this.nextUser));
+    }
+
+    @Benchmark
+    public SerializedMessages getMessagesByTimeInterval() throws SQLException {
+        return this.messageDatabase.getMessagesByTimeInterval(this.timeStart, this.timeStart + INTERVAL);
+    }
+
+    /* JSON serialization of the rows of one user query without the query itself */
+    @Benchmark
+    public SerializedMessages serializeUserQuery() throws SQLException {
+        this.userRows.beforeFirst();
+        final MessageSerializer serializer = MessageSerializer.start();
+        while (this.userRows.next()) {
+            serializer.append(this.userRows);
+        }
+        return serializer.toMessages();
+    }
+}
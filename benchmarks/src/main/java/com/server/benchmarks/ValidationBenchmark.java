@@ -0,0 +1,83 @@
+package com.server.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.server.InvalidRequestException;
+import com.server.JsonChecker;
+import com.server.RequestDecoder;
+import com.server.WarningMessage;
+import com.server.WarningRequest;
+
+/**
+ * Benchmarks for the CPU work of a POSTed warning before it reaches the database:
+ * JsonChecker validation, WarningMessage construction and the single-pass RequestDecoder
+ * that replaced them in WarningHandler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+    private final JsonChecker jsonChecker = new JsonChecker();
+    private final RequestDecoder requestDecoder = new RequestDecoder();
+    private String content;
+    private JSONObject contentToJSON;
+
+    @Setup
+    public void setup() {
+        this.content = BenchmarkData.warningJson(1);
+        this.contentToJSON = new JSONObject(this.content);
+    }
+
+    /* The validation steps in the order WarningHandler used to run them, each parsing the content itself */
+    @Benchmark
+    public int validateWarning() {
+        int code = 0;
+        if (this.jsonChecker.isJSONValid(this.content)) {
+            code = this.jsonChecker.checkWarningIsValid(this.content);
+            if (code == 200) {
+                code = this.jsonChecker.checkDangertype(new JSONObject(this.content));
+            }
+        }
+        return code;
+    }
+
+    /* Parsing, validation and WarningMessage construction as WarningHandler runs them now */
+    @Benchmark
+    public WarningRequest decodeWarning() throws InvalidRequestException {
+        return this.requestDecoder.decode(this.content);
+    }
+
+    @Benchmark
+    public JSONObject parseJson() {
+        return new JSONObject(this.content);
+    }
+
+    @Benchmark
+    public WarningMessage createWarningMessage() {
+        final OffsetDateTime offsetTime = OffsetDateTime.parse(this.contentToJSON.getString("sent"));
+        final LocalDateTime time = offsetTime.toLocalDateTime();
+        final WarningMessage message = new WarningMessage(this.contentToJSON.getString("nickname"), this.contentToJSON.getDouble("latitude"), this.contentToJSON.getDouble("longitude"), this.contentToJSON.getString("dangertype"), time);
+        if (this.jsonChecker.checkJsonForAreaAndPhone(this.contentToJSON)) {
+            message.setAreacode(this.contentToJSON.getString("areacode"));
+            message.setPhonenumber(this.contentToJSON.getString("phonenumber"));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,169 @@
+package com.server;
+
+/**
+ * Class that wraps the information required by an Area Query object.
+ * <p>An area is either a bounding box given with its north, south, east and west
+ * edges, or a circle given with its center point and radius in kilometres.
+ * A circle is searched from the database with its bounding box, and the
+ * messages outside the circle are then filtered out with contains().
+ * <p>The bounding box of a circle that crosses the 180th meridian wraps around it,
+ * which is shown by a western edge that is east of the eastern edge.
+ */
+public class AreaQuery {
+    /* Mean radius of the Earth in kilometres */
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    /* Added to the edges of a circle's bounding box so that rounding does not leave out points on the circle */
+    private static final double EDGE_MARGIN = 1e-9;
+
+    private final double south;
+    private final double north;
+    private final double west;
+    private final double east;
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double radiusKm;
+
+    /**
+     * Constructor for a bounding box query.
+     * @param south double, the smallest latitude of the area
+     * @param north double, the largest latitude of the area
+     * @param west double, the smallest longitude of the area
+     * @param east double, the largest longitude of the area
+     */
+    public AreaQuery(double south, double north, double west, double east) {
+        this(south, north, west, east, Double.NaN, Double.NaN, -1);
+    }
+
+    private AreaQuery(double south, double north, double west, double east, double centerLatitude, double centerLongitude, double radiusKm) {
+        this.south = south;
+        this.north = north;
+        this.west = west;
+        this.east = east;
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.radiusKm = radiusKm;
+    }
+
+    /**
+     * Creates a query for the messages within the given distance of a point.
+     * @param latitude double, the latitude of the center point
+     * @param longitude double, the longitude of the center point
+     * @param radiusKm double, the radius of the area in kilometres
+     * @return AreaQuery, the query for the circle
+     */
+    public static AreaQuery fromRadius(double latitude, double longitude, double radiusKm) {
+        /* The radius as an angle at the center of the Earth, the same sphere distanceKm() uses */
+        final double angle = radiusKm / EARTH_RADIUS_KM;
+        final double latitudeDelta = Math.toDegrees(angle) + EDGE_MARGIN;
+        final double south = latitude - latitudeDelta;
+        final double north = latitude + latitudeDelta;
+
+        if (south <= -90 || north >= 90) {
+            /* The circle reaches a pole, so every longitude is within the radius */
+            return new AreaQuery(Math.max(-90, south), Math.min(90, north), -180, 180, latitude, longitude, radiusKm);
+        }
+
+        /* The circle is widest north or south of its center, where a meridian touches it */
+        final double longitudeDelta = Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(Math.toRadians(latitude)))) + EDGE_MARGIN;
+        if (longitudeDelta >= 180) {
+            return new AreaQuery(south, north, -180, 180, latitude, longitude, radiusKm);
+        }
+
+        /* Wrap an edge that goes over the 180th meridian to the other side */
+        double west = longitude - longitudeDelta;
+        double east = longitude + longitudeDelta;
+        if (west < -180) {
+            west += 360;
+        }
+        if (east > 180) {
+            east -= 360;
+        }
+        return new AreaQuery(south, north, west, east, latitude, longitude, radiusKm);
+    }
+
+    /**
+     * Getter for the southern edge of the bounding box.
+     * @return double, the smallest latitude
+     */
+    public double getSouth() {
+        return this.south;
+    }
+
+    /**
+     * Getter for the northern edge of the bounding box.
+     * @return double, the largest latitude
+     */
+    public double getNorth() {
+        return this.north;
+    }
+
+    /**
+     * Getter for the western edge of the bounding box.
+     * @return double, the smallest longitude, or the western edge of a box that crosses the 180th meridian
+     */
+    public double getWest() {
+        return this.west;
+    }
+
+    /**
+     * Getter for the eastern edge of the bounding box.
+     * @return double, the largest longitude, or the eastern edge of a box that crosses the 180th meridian
+     */
+    public double getEast() {
+        return this.east;
+    }
+
+    /**
+     * Checks whether the bounding box crosses the 180th meridian.
+     * <p>Such a box covers the longitudes from getWest() to 180 and from -180 to getEast().
+     * @return boolean, true if the western edge is east of the eastern edge
+     */
+    public boolean crossesAntimeridian() {
+        return this.west > this.east;
+    }
+
+    /**
+     * Checks whether the query is a circle instead of a bounding box.
+     * @return boolean, true if the query was created with fromRadius(), false if not
+     */
+    public boolean isRadiusQuery() {
+        return this.radiusKm >= 0;
+    }
+
+    /**
+     * Checks whether the given point belongs to the area.
+     * <p>For a circle the great-circle distance to the center point is compared with the radius.
+     * @param latitude double, the latitude of the point
+     * @param longitude double, the longitude of the point
+     * @return boolean, true if the point is inside the area, false if not
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < this.south || latitude > this.north) {
+            return false;
+        }
+        if (crossesAntimeridian() ? longitude < this.west && longitude > this.east : longitude < this.west || longitude > this.east) {
+            return false;
+        }
+        if (!isRadiusQuery()) {
+            return true;
+        }
+        return distanceKm(this.centerLatitude, this.centerLongitude, latitude, longitude) <= this.radiusKm;
+    }
+
+    /**
+     * Calculates the great-circle distance between two points with the haversine formula.
+     * @param latitude1 double, the latitude of the first point
+     * @param longitude1 double, the longitude of the first point
+     * @param latitude2 double, the latitude of the second point
+     * @param longitude2 double, the longitude of the second point
+     * @return double, the distance in kilometres
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        final double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2)
+            + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+            * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,162 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * HttpHandler class that handles bulk POST requests of WarningMessages.
+ * <p>The body is a JSON array of warnings or newline delimited JSON (NDJSON) with
+ * one warning per line. Each warning is validated with the same rules as a single
+ * warning sent to /warning, and all valid warnings are inserted in one transaction.
+ * <p>The response is a JSON object with the status of each item in the order of the body:
+ * {"accepted":1,"rejected":1,"results":[{"index":0,"status":200},{"index":1,"status":413,"error":"..."}]}
+ * <p>The request itself is rejected with 413 if the body is larger than MAX_BULK_BODY_SIZE
+ * bytes or has more than MAX_BULK_ITEMS items, and with 400 if it is not valid JSON.
+ */
+public class BulkWarningHandler implements HttpHandler {
+    /* Largest accepted bulk body in bytes, can be changed with -Dserver.maxbulkbody=BYTES */
+    private static final int MAX_BULK_BODY_SIZE = Integer.getInteger("server.maxbulkbody", 4 * 1024 * 1024);
+    /* Largest accepted number of warnings in one request, can be changed with -Dserver.maxbulkitems=N */
+    private static final int MAX_BULK_ITEMS = Integer.getInteger("server.maxbulkitems", 1000);
+
+    private final RequestDecoder requestDecoder = new RequestDecoder();
+
+    public BulkWarningHandler() {}
+
+    /**
+     * Handle method for the custom HttpHandler class.
+     * Designed to handle POST requests that contain several WarningMessages.
+     * @param exchangeObject: Received from the client.
+     */
+    @Override
+    public void handle(final HttpExchange exchangeObject) throws IOException {
+        int code = 0;
+        boolean status = false;
+
+        Log.debug("Handling a bulk request");
+
+        if (exchangeObject.getRequestMethod().equalsIgnoreCase("POST")) {
+            MetricsFilter.setOperation("post_bulk");
+            try {
+                final List<JSONObject> items = RequestBody.parseList(exchangeObject, MAX_BULK_BODY_SIZE, MAX_BULK_ITEMS);
+                status = sendResults(store(items), exchangeObject);
+                code = 200;
+            } catch (final InvalidRequestException e) {
+                Log.debug("Rejected the bulk request: {}", e.getMessage());
+                code = e.getCode();
+            } catch (final SQLException e) {
+                Log.warn("Failed to store the bulk request: {}", e.getMessage());
+                code = 500;
+            }
+
+            if (exchangeObject.getResponseCode() == -1) {
+                exchangeObject.sendResponseHeaders(code, -1);
+            }
+
+        /* Only POST is supported, in any other case send a general error */
+        } else {
+            final byte[] bytes = "Error: Requested function is not supported".getBytes("UTF-8");
+            exchangeObject.sendResponseHeaders(400, bytes.length);
+            try (OutputStream outputStream = exchangeObject.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+
+        if (status) {
+            Log.debug("BulkWarningHandler is done. Closing the handling process.");
+        } else {
+            Log.debug("BulkWarningHandler is done, but the operation failed. Closing the handling process.");
+        }
+    }
+
+    /**
+     * A method that validates the items and stores the valid ones in one transaction.
+     * @param items List of the parsed items of the request
+     * @return JSONArray, the status of each item
+     * @throws SQLException if the transaction could not be committed
+     */
+    private JSONArray store(final List<JSONObject> items) throws SQLException {
+        final JSONArray results = new JSONArray();
+        final List<WarningMessage> messages = new ArrayList<>(items.size());
+        final List<JSONObject> stored = new ArrayList<>(items.size());
+
+        /* Validate every item first, so that the valid ones can be inserted together */
+        for (int i = 0; i < items.size(); i++) {
+            final JSONObject result = new JSONObject();
+            result.put("index", i);
+            results.put(result);
+
+            try {
+                final WarningRequest request = this.requestDecoder.decode(items.get(i));
+                if (request.getType() != WarningRequest.Type.WARNING) {
+                    throw new InvalidRequestException(412, "Only warnings are accepted in a bulk request");
+                }
+                WarningHandler.applyWeather(request);
+                messages.add(request.getMessage());
+                stored.add(result);
+            } catch (final InvalidRequestException e) {
+                result.put("status", e.getCode());
+                result.put("error", e.getMessage());
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            final List<SQLException> errors = MessageDatabase.getInstance().setMessages(messages);
+            for (int i = 0; i < messages.size(); i++) {
+                if (errors.get(i) == null) {
+                    stored.get(i).put("status", 200);
+                    WarningHandler.enrichWeather(messages.get(i));
+                } else {
+                    Log.debug("Problem with message content: {}", errors.get(i).getMessage());
+                    stored.get(i).put("status", 500);
+                    stored.get(i).put("error", errors.get(i).getMessage());
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * A method that sends the status of each item to the client.
+     * @param results JSONArray, the status of each item
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return true if succeeds, false if fails
+     */
+    private boolean sendResults(final JSONArray results, final HttpExchange exchangeObject) {
+        int accepted = 0;
+        for (int i = 0; i < results.length(); i++) {
+            if (results.getJSONObject(i).getInt("status") == 200) {
+                accepted++;
+            }
+        }
+
+        final JSONObject response = new JSONObject();
+        response.put("accepted", accepted);
+        response.put("rejected", results.length() - accepted);
+        response.put("results", results);
+
+        try {
+            final byte[] bytes = response.toString().getBytes("UTF-8");
+            exchangeObject.getResponseHeaders().set("Content-Type", "application/json");
+            exchangeObject.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchangeObject.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+            return true;
+        } catch (final IOException e) {
+            Log.warn("Something went wrong when sending the bulk response: {}", e.getMessage());
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+package com.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class that holds the encoded response body of the full message listing.
+ * <p>The body is the same for every client until the next message is committed,
+ * so it is encoded once and sent as it is. The gzip copy is compressed the first
+ * time a client that accepts gzip asks for it.
+ * <p>The ETag is given by ListingCache and is different for every version of the
+ * listing. Each content coding of the listing is a different representation, so
+ * the coding is added to the tag of a compressed body.
+ */
+public class CachedListing {
+    private final SerializedMessages messages;
+    private final String tag;
+    private volatile byte[] gzipped;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param messages SerializedMessages, the full listing
+     * @param tag String, the unquoted entity tag of this version of the listing
+     */
+    public CachedListing(SerializedMessages messages, String tag) {
+        this.messages = messages;
+        this.tag = tag;
+    }
+
+    /**
+     * Getter for the listing.
+     * @return SerializedMessages, the full listing
+     */
+    public SerializedMessages getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * Getter for the ETag of the listing sent with the given coding.
+     * @param encoding ContentEncoding, the coding of the response body
+     * @return String, the quoted entity tag
+     */
+    public String getEtag(ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return "\"" + this.tag + "\"";
+        }
+        return "\"" + this.tag + "-" + encoding.getToken() + "\"";
+    }
+
+    /**
+     * Getter for the gzip compressed listing, compressed on the first call.
+     * @return byte[], the listing compressed with gzip. The array must not be modified.
+     */
+    public byte[] getGzipped() {
+        byte[] compressed = this.gzipped;
+        if (compressed == null) {
+            synchronized (this) {
+                compressed = this.gzipped;
+                if (compressed == null) {
+                    compressed = gzip(this.messages.getBytes());
+                    this.gzipped = compressed;
+                }
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * Checks whether the If-None-Match header of a request matches the listing sent with the given coding.
+     * @param ifNoneMatch String, the value of the header, or null if there was none
+     * @param encoding ContentEncoding, the coding the response body would be sent with
+     * @return boolean, true if the client already has this listing
+     */
+    public boolean matches(String ifNoneMatch, ContentEncoding encoding) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        final String etag = getEtag(encoding);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            /* If-None-Match uses the weak comparison */
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compresses the bytes with gzip.
+     * @param bytes byte[], the bytes to compress
+     * @return byte[], the compressed bytes
+     */
+    private static byte[] gzip(byte[] bytes) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 8 + 64);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(output, MessageSerializer.STREAM_CHUNK_SIZE)) {
+            gzipStream.write(bytes);
+        } catch (IOException e) {
+            /* Writing to memory does not fail */
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+}
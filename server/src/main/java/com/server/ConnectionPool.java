@@ -0,0 +1,123 @@
+package com.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Bounded pool of read-only SQLite connections.
+ * <p>MessageDatabase uses the pool for all queries that only read the database,
+ * so that concurrent requests can run their queries in parallel.
+ * Writes go through a single dedicated connection in MessageDatabase.
+ * <p>The database should be in WAL mode, which lets the readers run while
+ * the writer is inserting new rows.
+ * <p>Every connection has its own StatementCache, which the thread holding the
+ * connection can get with statements().
+ */
+public class ConnectionPool {
+    /* How long a thread waits for a free connection before giving up */
+    private static final long ACQUIRE_TIMEOUT_MS = 10000;
+
+    private final BlockingQueue<Connection> idleConnections;
+    private final List<Connection> allConnections;
+    /* Written only by the constructor, so it can be read by any thread afterwards */
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+
+    /**
+     * Constructor that opens the given number of read-only connections.
+     * @param address String, the JDBC address of the database, e.g. "jdbc:sqlite:messages.db"
+     * @param size int, the number of connections in the pool
+     * @throws SQLException if a connection could not be opened
+     */
+    public ConnectionPool(String address, int size) throws SQLException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Error: Connection pool size must be at least 1");
+        }
+
+        this.idleConnections = new ArrayBlockingQueue<>(size);
+        this.allConnections = new ArrayList<>(size);
+
+        final SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout((int) ACQUIRE_TIMEOUT_MS);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                final Connection connection = DriverManager.getConnection(address, config.toProperties());
+                this.allConnections.add(connection);
+                this.statementCaches.put(connection, new StatementCache(connection));
+                this.idleConnections.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+
+        Log.info("Opened a pool of {} read-only database connections", size);
+    }
+
+    /**
+     * Takes a free connection from the pool, waiting if all connections are in use.
+     * <p>The connection must be given back with release() when the caller is done with it.
+     * @return Connection, a read-only database connection
+     * @throws SQLException if no connection became free in time
+     */
+    public Connection acquire() throws SQLException {
+        try {
+            final Connection connection = this.idleConnections.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (connection == null) {
+                throw new SQLException("Timed out while waiting for a free database connection");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a free database connection");
+        }
+    }
+
+    /**
+     * Gives a connection taken with acquire() back to the pool.
+     * @param connection Connection, the connection to be released
+     */
+    public void release(Connection connection) {
+        if (connection != null) {
+            this.idleConnections.offer(connection);
+        }
+    }
+
+    /**
+     * Gets the statement cache of a connection taken with acquire().
+     * @param connection Connection, a connection of this pool held by the calling thread
+     * @return StatementCache of the connection
+     */
+    public StatementCache statements(Connection connection) {
+        return this.statementCaches.get(connection);
+    }
+
+    /**
+     * Closes the cached statements and all connections of the pool.
+     */
+    public void close() {
+        for (final StatementCache statementCache : this.statementCaches.values()) {
+            statementCache.close();
+        }
+        for (final Connection connection : this.allConnections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                Log.warn("Failed to close a pooled database connection: {}", e.getMessage());
+            }
+        }
+        this.allConnections.clear();
+        this.idleConnections.clear();
+    }
+}
@@ -0,0 +1,152 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Content codings of the responses, negotiated with the Accept-Encoding header of the request.
+ * <p>A response body is compressed while it is written: the stream returned by wrap()
+ * deflates each write into the response body, so no second copy of the body is made.
+ * Bodies smaller than the threshold, -Dwarninghandler.compressthreshold=BYTES (1024 by
+ * default), are sent as they are, because compressing them saves less than it costs.
+ * <p>Streamed responses use -Dwarninghandler.compresslevel=0-9 (1 by default). The JSON
+ * arrays repeat the same keys on every message, so even the fastest level shrinks them
+ * to a fraction.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity"), GZIP("gzip"), DEFLATE("deflate");
+
+    /* Smallest body that is compressed, can be changed with -Dwarninghandler.compressthreshold=BYTES */
+    private static final int THRESHOLD = Integer.getInteger("warninghandler.compressthreshold", 1024);
+    /* Deflate level of streamed responses, can be changed with -Dwarninghandler.compresslevel=0-9 */
+    private static final int LEVEL = Integer.getInteger("warninghandler.compresslevel", Deflater.BEST_SPEED);
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Getter for the value of the Content-Encoding header.
+     * @return String, the name of the coding
+     */
+    public String getToken() {
+        return this.token;
+    }
+
+    /**
+     * Chooses the coding of a response body of the given size.
+     * @param requestHeaders Headers, the headers of the request
+     * @param length long, the length of the body, or -1 if it is not known before it is written
+     * @return ContentEncoding, IDENTITY if the body is too small or the client accepts no other coding
+     */
+    public static ContentEncoding negotiate(Headers requestHeaders, long length) {
+        if (length >= 0 && length < THRESHOLD) {
+            return IDENTITY;
+        }
+        return negotiate(requestHeaders.get("Accept-Encoding"));
+    }
+
+    /**
+     * Chooses the coding the client prefers from the values of its Accept-Encoding headers.
+     * <p>The coding with the highest q value wins and gzip wins a tie. A coding that is
+     * not listed gets the q value of "*", and q=0 means the client does not accept it.
+     * @param acceptEncoding List of the header values, or null if there was no header
+     * @return ContentEncoding, IDENTITY if the client accepts neither gzip nor deflate
+     */
+    static ContentEncoding negotiate(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return IDENTITY;
+        }
+
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (final String header : acceptEncoding) {
+            for (final String coding : header.split(",")) {
+                final String[] parts = coding.split(";");
+                final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                final double quality = parseQuality(parts);
+
+                if (name.equals("gzip") || name.equals("x-gzip")) {
+                    gzip = Math.max(gzip, quality);
+                } else if (name.equals("deflate")) {
+                    deflate = Math.max(deflate, quality);
+                } else if (name.equals("*")) {
+                    any = Math.max(any, quality);
+                }
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : IDENTITY;
+    }
+
+    /**
+     * Wraps the response body into a stream that compresses what is written to it.
+     * <p>Closing the returned stream finishes the compressed data and closes the response body.
+     * @param outputStream OutputStream, the response body
+     * @return OutputStream, the stream the body is written to
+     * @throws IOException
+     */
+    public OutputStream wrap(OutputStream outputStream) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(outputStream, MessageSerializer.STREAM_CHUNK_SIZE) {
+                    {
+                        this.def.setLevel(LEVEL);
+                    }
+                };
+            case DEFLATE:
+                /* HTTP deflate is the zlib format, which Deflater writes by default */
+                final Deflater deflater = new Deflater(LEVEL);
+                return new DeflaterOutputStream(outputStream, deflater, MessageSerializer.STREAM_CHUNK_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                return outputStream;
+        }
+    }
+
+    /**
+     * Parses the q parameter of one coding of the Accept-Encoding header.
+     * @param parts String[], the coding split at semicolons
+     * @return double, the q value, 1 if there is none and 0 if it is invalid
+     */
+    private static double parseQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,138 @@
+package com.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bounded cache of recently verified user credentials.
+ * <p>Verifying a password against the stored SHA-512 crypt hash is expensive,
+ * and Basic authentication sends the same credentials with every request.
+ * After a successful verification the cache stores a keyed HMAC-SHA256 digest
+ * of the password, so repeated requests only need to compare digests.
+ * <p>The plaintext password is never stored. The HMAC key is random and only
+ * lives in the memory of this process.
+ * <p>Entries expire after TTL_MS milliseconds and the cache holds at most
+ * MAX_ENTRIES users. An entry must be invalidated when the user record changes.
+ */
+public class CredentialCache {
+    /* How long a verified password is trusted, can be changed with -Dcredentialcache.ttl=MS */
+    private static final long TTL_MS = Long.getLong("credentialcache.ttl", 5 * 60 * 1000);
+    /* Largest number of cached users, can be changed with -Dcredentialcache.size=N */
+    private static final int MAX_ENTRIES = Integer.getInteger("credentialcache.size", 10000);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * Cached digest of a verified password and the time it expires.
+     */
+    private static class Entry {
+        private final byte[] digest;
+        private final long expiresAt;
+
+        private Entry(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Constructor that creates a random key for the password digests.
+     */
+    public CredentialCache() {
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac instance = Mac.getInstance("HmacSHA256");
+                instance.init(this.key);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    /**
+     * Checks whether the given credentials have been verified recently.
+     * @param username String, the username the client provided
+     * @param password String, the password the client provided
+     * @return boolean, true if the credentials match a cached entry that has not expired, false otherwise
+     */
+    public boolean verify(final String username, final String password) {
+        final Entry entry = this.entries.get(username);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            this.entries.remove(username, entry);
+            return false;
+        }
+        return MessageDigest.isEqual(entry.digest, digest(password));
+    }
+
+    /**
+     * Stores credentials that have just been verified against the database.
+     * @param username String, the verified username
+     * @param password String, the verified password
+     */
+    public void put(final String username, final String password) {
+        if (this.entries.size() >= MAX_ENTRIES && !this.entries.containsKey(username)) {
+            evict();
+        }
+        this.entries.put(username, new Entry(digest(password), System.currentTimeMillis() + TTL_MS));
+    }
+
+    /**
+     * Removes the cached credentials of the given user.
+     * <p>Must be called whenever the user record changes in the database.
+     * @param username String, the user whose record changed
+     */
+    public void invalidate(final String username) {
+        this.entries.remove(username);
+    }
+
+    /**
+     * Makes room for a new entry. Removes all expired entries, and if the cache
+     * is still full, the entry that would expire first.
+     */
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        String oldestUsername = null;
+        long oldestExpiry = Long.MAX_VALUE;
+
+        final Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Entry> next = iterator.next();
+            if (next.getValue().expiresAt < now) {
+                iterator.remove();
+            } else if (next.getValue().expiresAt < oldestExpiry) {
+                oldestExpiry = next.getValue().expiresAt;
+                oldestUsername = next.getKey();
+            }
+        }
+
+        if (this.entries.size() >= MAX_ENTRIES && oldestUsername != null) {
+            this.entries.remove(oldestUsername);
+        }
+    }
+
+    /**
+     * Calculates the keyed digest of the given password.
+     * @param password String, the password to be digested
+     * @return byte[], the HMAC-SHA256 of the password
+     */
+    private byte[] digest(final String password) {
+        return this.mac.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package com.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket boundaries.
+ * <p>Observations are counted into the first bucket whose upper bound is at least
+ * the observed value. The buckets, the count and the sum are all LongAdders, so
+ * concurrent threads can record observations without contending on a lock.
+ * <p>Used by Metrics, which renders the buckets as a Prometheus histogram.
+ */
+public class Histogram {
+    /* Upper bounds of the buckets in seconds, the last bucket (+Inf) is implicit */
+    private static final double[] BOUNDS_SECONDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * 1_000_000_000L);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_SECONDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Constructor that creates the empty buckets.
+     */
+    public Histogram() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one observation.
+     * @param nanos long, the observed duration in nanoseconds
+     */
+    public void observeNanos(long nanos) {
+        int index = 0;
+        while (index < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[index]) {
+            index++;
+        }
+        this.buckets[index].increment();
+        this.count.increment();
+        this.sumNanos.add(nanos);
+    }
+
+    /**
+     * Getter for the number of observations.
+     * @return long, the number of recorded observations
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Getter for the sum of all observations.
+     * @return double, the sum of the observed durations in seconds
+     */
+    public double getSumSeconds() {
+        return this.sumNanos.sum() / 1_000_000_000.0;
+    }
+
+    /**
+     * Appends the histogram in Prometheus text format.
+     * <p>Prometheus buckets are cumulative, so each bucket also counts the observations of the smaller buckets.
+     * @param builder StringBuilder, the output
+     * @param name String, the name of the metric
+     * @param labels String, the labels of the series without braces, e.g. 'operation="get"', or empty
+     */
+    public void render(StringBuilder builder, String name, String labels) {
+        final String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+
+        for (int i = 0; i < this.buckets.length; i++) {
+            cumulative += this.buckets[i].sum();
+            final String bound = i < BOUNDS_SECONDS.length ? Double.toString(BOUNDS_SECONDS[i]) : "+Inf";
+            builder.append(name).append("_bucket{").append(labels).append(separator)
+                .append("le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+        }
+
+        final String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        builder.append(name).append("_sum").append(braces).append(' ').append(getSumSeconds()).append('\n');
+        builder.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
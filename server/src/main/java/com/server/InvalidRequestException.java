@@ -0,0 +1,30 @@
+package com.server;
+
+/**
+ * Exception thrown by RequestDecoder when the body of a request is not
+ * a valid warning or query.
+ * <p>Carries the HTTP response code that should be sent to the client.
+ */
+public class InvalidRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param code int, the HTTP response code for the client
+     * @param message String, the reason the request was rejected
+     */
+    public InvalidRequestException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    /**
+     * Getter for the HTTP response code.
+     * @return int, the response code that should be sent to the client
+     */
+    public int getCode() {
+        return this.code;
+    }
+}
@@ -22,10 +22,10 @@ public class JsonChecker {
         try {
             new JSONObject(content);
         } catch (final JSONException e) {
-            System.out.println("Error: The received message was not proper JSON");
+            Log.debug("The received message was not proper JSON");
             return false;
         }
-        System.out.println("Success: The received message was proper JSON");
+        Log.debug("The received message was proper JSON");
         return true;
     }
 
@@ -37,30 +37,39 @@ public class JsonChecker {
      * @return int, 200 if all fields are OK, 413 if not
      */
     public int checkWarningIsValid(final String content) {
-        System.out.println("Status: Checking if the content has nickname, latitude, longitude, dangertype and sent");
-        System.out.println("Status: Also checking that latitude and longitude are double");
-        
-        final JSONObject contentToJSON = new JSONObject(content);
+        return checkWarningIsValid(new JSONObject(content));
+    }
+
+    /**
+     * Method that checks if an already parsed warning message
+     * contains all required information.
+     * <p>The return value should be used as HTTP response code.
+     * @param contentToJSON JSONObject, the warning message received from the client
+     * @return int, 200 if all fields are OK, 413 if not
+     */
+    public int checkWarningIsValid(final JSONObject contentToJSON) {
+        Log.debug("Checking if the content has nickname, latitude, longitude, dangertype and sent");
+        Log.debug("Also checking that latitude and longitude are double");
 
         if (contentToJSON.has("nickname") && !contentToJSON.isNull("nickname")) {
             if (contentToJSON.has("latitude") && !contentToJSON.isNull("latitude")) {
                 if (contentToJSON.has("longitude") && !contentToJSON.isNull("longitude")) {
                     if (contentToJSON.has("dangertype") && !contentToJSON.isNull("dangertype")) {
                         if (contentToJSON.has("sent") && !contentToJSON.isNull(("sent"))) {
-                            System.out.println("Success: The content contains all required information");
-                            System.out.println("Status: Checking if latitude and longitude are in double format");
+                            Log.debug("The content contains all required information");
+                            Log.debug("Checking if latitude and longitude are in double format");
                             
                             /* Check that latitude and longitude are double */
                             try {
                                 contentToJSON.getDouble("latitude");
                                 contentToJSON.getDouble("longitude");
                             } catch (final JSONException e) {
-                                System.out.println("Failure: Latitude and/or longitude were not double");
+                                Log.debug("Latitude and/or longitude were not double");
                                 return 413;
                             }
 
-                            System.out.println("Success: Latitude and longitude are double");
-                            System.out.println("Success: Content is accepted");
+                            Log.debug("Latitude and longitude are double");
+                            Log.debug("Content is accepted");
                             return 200;            
                         }
                     }
@@ -68,7 +77,7 @@ public class JsonChecker {
             }
         }
 
-        System.out.println("Error: The content does not have all required information");  
+        Log.debug("The content does not have all required information");
         return 413;
     }
 
@@ -89,10 +98,10 @@ public class JsonChecker {
         /* List of accepted danger types */
         switch(dangertype) {
             case "moose": case "reindeer":
-                System.out.println("Success: Proper danger type detected");
+                Log.debug("Proper danger type detected");
                 return 200;
         }
-        System.out.println("Error: Invalid danger type detected");
+        Log.debug("Invalid danger type detected");
         return 413;
     }
 
@@ -104,14 +113,14 @@ public class JsonChecker {
      * @return boolean, return true if content has areacode and phonenumber, false otherwise.
      */
     public boolean checkJsonForAreaAndPhone(final JSONObject content) {
-        System.out.println("Status: Checking if the WarningMessage has area code and phone number");
+        Log.debug("Checking if the WarningMessage has area code and phone number");
         if (content.has("areacode")) {
             if (content.has("phonenumber")) {
-                System.out.println("Status: The message has areacode and phone number");
+                Log.debug("The message has areacode and phone number");
                 return true;
             }
         }
-        System.out.println("Status: The message does not have both areacode and phone number");
+        Log.debug("The message does not have both areacode and phone number");
         return false;
     }
 
@@ -122,25 +131,28 @@ public class JsonChecker {
      * @return boolean, true if "weather" was found, false if not.
      */
     public boolean checkJsonForWeather(final JSONObject content) {
-        System.out.println("Status: Checking if the WarningMessage requests weather");
+        Log.debug("Checking if the WarningMessage requests weather");
         if (content.has("weather")) {
-            System.out.println("Status: Weather request found");
+            Log.debug("Weather request found");
             return true;
         }
-        System.out.println("Status: Weather request not found");
+        Log.debug("Weather request not found");
         return false;
     }
 
     public String getQueryType(final JSONObject content) {
-        System.out.println("Status: Checking the query JSON for query type");
+        Log.debug("Checking the query JSON for query type");
         if (content.get("query").toString().equals("user")) {
-            System.out.println("Success: Found query type: " + "user");
+            Log.debug("Found query type: user");
             return "user";
         } else if (content.get("query").toString().equals("time")) {
-            System.out.println("Success: Found query type: " + "time");
+            Log.debug("Found query type: time");
             return "time";
+        } else if (content.get("query").toString().equals("area")) {
+            Log.debug("Found query type: area");
+            return "area";
         } else {
-            System.out.println("Error: No valid query type found");
+            Log.debug("No valid query type found");
             return "invalid";
         }
     }
@@ -152,14 +164,122 @@ public class JsonChecker {
      * @return boolean, true if content is ok, false if not
      */
     public boolean checkUserQueryValidity(final JSONObject content) {
-        System.out.println("Status: Checking the validity of User Query");
+        Log.debug("Checking the validity of User Query");
         if (content.has("nickname")) {
             if (content.getString("nickname") != null) {
-                System.out.println("Success: User Query contains valid information");
+                Log.debug("User Query contains valid information");
                 return true;
             }
         }
-        System.out.println("Error: Empty content on User Query");
+        Log.debug("Empty content on User Query");
+        return false;
+    }
+
+    /**
+     * Method that checks whether the Area Query describes a valid area.
+     * <p>The area must be given either as a center point with fields 'latitude',
+     * 'longitude' and 'radius' (kilometres), or as a bounding box with fields
+     * 'north', 'south', 'east' and 'west'.
+     * <p>Latitudes must be within [-90, 90] and longitudes within [-180, 180].
+     * A box whose west edge is east of its east edge wraps across the 180th meridian.
+     * @param content JSONObject, the Query as JSON
+     * @return boolean, true if content is ok, false if not
+     */
+    public boolean checkAreaQueryValidity(final JSONObject content) {
+        Log.debug("Checking the validity of Area Query");
+        try {
+            if (content.has("radius")) {
+                final double latitude = content.getDouble("latitude");
+                final double longitude = content.getDouble("longitude");
+                final double radius = content.getDouble("radius");
+                if (isLatitude(latitude) && isLongitude(longitude) && radius > 0 && Double.isFinite(radius)) {
+                    Log.debug("Area Query contains a valid center point and radius");
+                    return true;
+                }
+            } else {
+                final double south = content.getDouble("south");
+                final double north = content.getDouble("north");
+                final double west = content.getDouble("west");
+                final double east = content.getDouble("east");
+                if (isLatitude(south) && isLatitude(north) && south <= north && isLongitude(west) && isLongitude(east)) {
+                    Log.debug("Area Query contains a valid bounding box");
+                    return true;
+                }
+            }
+        } catch (final JSONException e) {
+            Log.debug("Area Query is missing a coordinate or it is not a number");
+            return false;
+        }
+        Log.debug("Area Query contains an invalid area");
         return false;
     }
+
+    /**
+     * Checks whether the value is a valid latitude.
+     * @param latitude double, the value to be checked
+     * @return boolean, true if the value is within [-90, 90], false if not or NaN
+     */
+    private static boolean isLatitude(final double latitude) {
+        return latitude >= -90 && latitude <= 90;
+    }
+
+    /**
+     * Checks whether the value is a valid longitude.
+     * @param longitude double, the value to be checked
+     * @return boolean, true if the value is within [-180, 180], false if not or NaN
+     */
+    private static boolean isLongitude(final double longitude) {
+        return longitude >= -180 && longitude <= 180;
+    }
+
+    /**
+     * Method that creates an Area Query from a JSON query that has been
+     * checked with checkAreaQueryValidity().
+     * @param content JSONObject, the Query as JSON
+     * @return AreaQuery, the area described by the query
+     */
+    public AreaQuery getAreaQuery(final JSONObject content) {
+        if (content.has("radius")) {
+            return AreaQuery.fromRadius(content.getDouble("latitude"), content.getDouble("longitude"), content.getDouble("radius"));
+        }
+        return new AreaQuery(content.getDouble("south"), content.getDouble("north"), content.getDouble("west"), content.getDouble("east"));
+    }
+
+    /**
+     * Method that checks whether the query asks for a single page of messages
+     * instead of all matching messages.
+     * <p>A query is paginated if it contains the field 'limit' or 'cursor'.
+     * @param content JSONObject, the Query as JSON
+     * @return boolean, true if the query is paginated, false if not
+     */
+    public boolean checkJsonForPagination(final JSONObject content) {
+        return content.has("limit") || content.has("cursor");
+    }
+
+    /**
+     * Method that gets the page size of a paginated query.
+     * <p>If the query does not contain the field 'limit', the default page size is used.
+     * @param content JSONObject, the Query as JSON
+     * @return int, the page size
+     * @throws IllegalArgumentException if the limit is not a number between 1 and MessagePage.MAX_LIMIT
+     */
+    public int getLimit(final JSONObject content) throws IllegalArgumentException {
+        if (!content.has("limit")) {
+            return MessagePage.DEFAULT_LIMIT;
+        }
+        return MessagePage.parseLimit(content.get("limit").toString());
+    }
+
+    /**
+     * Method that gets the cursor of a paginated query.
+     * @param content JSONObject, the Query as JSON
+     * @return MessageCursor, the decoded cursor or null if the query asks for the first page
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public MessageCursor getCursor(final JSONObject content) throws IllegalArgumentException {
+        if (!content.has("cursor") || content.isNull("cursor")) {
+            return null;
+        }
+        return MessageCursor.decode(content.get("cursor").toString());
+    }
 }
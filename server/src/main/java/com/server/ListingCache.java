@@ -0,0 +1,127 @@
+package com.server;
+
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the full message listing that GET /warning sends.
+ * <p>Every committed write invalidates the cache by increasing its version. A listing
+ * is only served if no write has been committed since its query started, so a client
+ * always sees the messages that were committed before its request. The first request
+ * after a write rebuilds the listing, and concurrent requests wait for it instead of
+ * querying the database themselves.
+ * <p>The ETag of a listing is the version it was built at together with a random
+ * id of the cache, so a tag from before a restart never matches a new listing.
+ * <p>A listing larger than the size bound is not kept. After that get() returns null
+ * and the caller streams the messages from the database instead.
+ */
+public class ListingCache {
+    private final int maxBytes;
+    private final String id = Long.toHexString(new SecureRandom().nextLong());
+    private final AtomicLong version = new AtomicLong();
+    private final Object buildLock = new Object();
+    private volatile Entry current;
+    private volatile boolean tooLarge;
+
+    /**
+     * Query that builds the listing.
+     */
+    public interface Loader {
+        SerializedMessages load() throws SQLException;
+    }
+
+    /**
+     * Cached listing and the version it was built at.
+     */
+    private static class Entry {
+        private final CachedListing listing;
+        private final long version;
+
+        private Entry(CachedListing listing, long version) {
+            this.listing = listing;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Constructor that initializes the size bound.
+     * @param maxBytes int, the largest listing kept, in bytes
+     */
+    public ListingCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the current listing, building it with the loader if a write has been committed since it was built.
+     * @param loader Loader, the query of the full listing
+     * @return CachedListing, or null if the listing is too large to be cached
+     * @throws SQLException if the loader failed
+     */
+    public CachedListing get(Loader loader) throws SQLException {
+        final CachedListing cached = current();
+        if (cached != null) {
+            recordLookup(true);
+            return cached;
+        }
+        if (this.tooLarge) {
+            return null;
+        }
+
+        synchronized (this.buildLock) {
+            /* Another request may have built it while this one waited */
+            final CachedListing built = current();
+            if (built != null) {
+                recordLookup(true);
+                return built;
+            }
+            recordLookup(false);
+
+            final long buildVersion = this.version.get();
+            final SerializedMessages messages = loader.load();
+            final CachedListing listing = new CachedListing(messages, this.id + "-" + buildVersion);
+            if (messages.getBytes().length > this.maxBytes) {
+                Log.info("The message listing has grown over {} bytes, it is no longer cached", this.maxBytes);
+                this.tooLarge = true;
+            } else {
+                this.current = new Entry(listing, buildVersion);
+            }
+            return listing;
+        }
+    }
+
+    /**
+     * Invalidates the listing, called after every committed write.
+     */
+    public void invalidate() {
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * Drops the listing, called when the database is closed.
+     */
+    public void clear() {
+        synchronized (this.buildLock) {
+            this.version.incrementAndGet();
+            this.current = null;
+            this.tooLarge = false;
+        }
+    }
+
+    /**
+     * Gets the cached listing if it is still valid.
+     * @return CachedListing, or null if there is none or it is out of date
+     */
+    private CachedListing current() {
+        final Entry entry = this.current;
+        return entry != null && entry.version == this.version.get() ? entry.listing : null;
+    }
+
+    /**
+     * Records a lookup of the cache to the metrics.
+     * @param hit boolean, true if the listing was in the cache
+     */
+    private static void recordLookup(final boolean hit) {
+        Metrics.getInstance().increment(Metrics.LISTING_CACHE_LOOKUPS, hit ? "result=\"hit\"" : "result=\"miss\"");
+    }
+}
@@ -0,0 +1,45 @@
+package com.server;
+
+import java.io.IOException;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Filter that answers 503 Service Unavailable to the requests that the
+ * bounded executor could not queue.
+ * <p>User filters run before the authenticator, so a shed request costs
+ * neither a password check nor a database query.
+ */
+public class LoadSheddingFilter extends Filter {
+    /* Seconds the client is asked to wait before retrying */
+    private static final String RETRY_AFTER = "1";
+
+    public LoadSheddingFilter() {}
+
+    /**
+     * Sends 503 if the request was shed, otherwise passes it on.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @param chain Chain, the rest of the filters and the handler
+     */
+    @Override
+    public void doFilter(HttpExchange exchangeObject, Chain chain) throws IOException {
+        if (ServerExecutor.isShed()) {
+            Log.debug("The server is overloaded, shedding the request");
+            exchangeObject.getResponseHeaders().set("Retry-After", RETRY_AFTER);
+            exchangeObject.sendResponseHeaders(503, -1);
+            exchangeObject.close();
+            return;
+        }
+        chain.doFilter(exchangeObject);
+    }
+
+    /**
+     * Returns a short description of the filter.
+     * @return String, the description
+     */
+    @Override
+    public String description() {
+        return "Answers 503 to requests rejected by the executor";
+    }
+}
@@ -0,0 +1,279 @@
+package com.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous logger of the server with levels.
+ * <p>A message is only recorded if its level is at least the configured level,
+ * which can be set with -Dserver.loglevel=DEBUG|INFO|WARN|ERROR|OFF (INFO by default).
+ * Messages below the level cost one comparison: nothing is formatted or written.
+ * <p>Messages take their arguments separately, e.g. Log.debug("Got {} messages", count),
+ * and the placeholders are only filled in by the writer thread. The arguments should
+ * therefore not be changed after they have been logged.
+ * <p>Recorded messages are put to a bounded ring buffer, and a single writer thread
+ * formats them and writes them to standard output, so handler threads never wait
+ * for the console. If the buffer is full the message is dropped and counted in
+ * the log_dropped_total metric instead of blocking the caller.
+ * <p>Each line has the time, the level and the name of the logging thread:
+ * 2023-02-01T12:00:00.123Z INFO  [http-worker-1] Message
+ */
+public final class Log {
+    /**
+     * Levels of the messages in increasing order of importance.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    /* Lowest level that is recorded, can be changed with -Dserver.loglevel=LEVEL */
+    private static final Level LEVEL = parseLevel(System.getProperty("server.loglevel", "INFO"));
+    /* Number of messages the ring buffer holds, can be changed with -Dserver.logbuffer=N */
+    private static final int BUFFER_SIZE = Integer.getInteger("server.logbuffer", 8192);
+    /* Longest time flush() waits for the writer thread */
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+
+    private static final BlockingQueue<Entry> BUFFER = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private static final LongAdder QUEUED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final AtomicLong WRITTEN = new AtomicLong();
+
+    static {
+        Metrics.getInstance().register(Metrics.LOG_DROPPED, "", DROPPED::sum);
+
+        final Thread writer = new Thread(Log::run, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * One recorded message waiting in the buffer.
+     */
+    private static class Entry {
+        private final long time;
+        private final Level level;
+        private final String thread;
+        private final String format;
+        private final Object[] arguments;
+
+        private Entry(Level level, String format, Object[] arguments) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.thread = Thread.currentThread().getName();
+            this.format = format;
+            this.arguments = arguments;
+        }
+    }
+
+    private Log() {}
+
+    /**
+     * Checks whether messages of the given level are recorded.
+     * <p>Useful when computing an argument is expensive by itself.
+     * @param level Level, the level of the message
+     * @return boolean, true if the message would be recorded
+     */
+    public static boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(LEVEL) >= 0;
+    }
+
+    /**
+     * Checks whether debug messages are recorded.
+     * @return boolean, true if the level is DEBUG
+     */
+    public static boolean isDebugEnabled() {
+        return LEVEL == Level.DEBUG;
+    }
+
+    public static void debug(String message) {
+        if (LEVEL == Level.DEBUG) {
+            record(Level.DEBUG, message, null);
+        }
+    }
+
+    public static void debug(String format, Object argument) {
+        if (LEVEL == Level.DEBUG) {
+            record(Level.DEBUG, format, new Object[] { argument });
+        }
+    }
+
+    public static void debug(String format, Object first, Object second) {
+        if (LEVEL == Level.DEBUG) {
+            record(Level.DEBUG, format, new Object[] { first, second });
+        }
+    }
+
+    public static void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            record(Level.INFO, message, null);
+        }
+    }
+
+    public static void info(String format, Object argument) {
+        if (isEnabled(Level.INFO)) {
+            record(Level.INFO, format, new Object[] { argument });
+        }
+    }
+
+    public static void info(String format, Object first, Object second) {
+        if (isEnabled(Level.INFO)) {
+            record(Level.INFO, format, new Object[] { first, second });
+        }
+    }
+
+    public static void warn(String message) {
+        if (isEnabled(Level.WARN)) {
+            record(Level.WARN, message, null);
+        }
+    }
+
+    public static void warn(String format, Object argument) {
+        if (isEnabled(Level.WARN)) {
+            record(Level.WARN, format, new Object[] { argument });
+        }
+    }
+
+    public static void warn(String format, Object first, Object second) {
+        if (isEnabled(Level.WARN)) {
+            record(Level.WARN, format, new Object[] { first, second });
+        }
+    }
+
+    public static void error(String message) {
+        if (isEnabled(Level.ERROR)) {
+            record(Level.ERROR, message, null);
+        }
+    }
+
+    public static void error(String format, Object argument) {
+        if (isEnabled(Level.ERROR)) {
+            record(Level.ERROR, format, new Object[] { argument });
+        }
+    }
+
+    public static void error(String format, Object first, Object second) {
+        if (isEnabled(Level.ERROR)) {
+            record(Level.ERROR, format, new Object[] { first, second });
+        }
+    }
+
+    /**
+     * Waits until the writer thread has written the messages recorded so far.
+     * <p>Called when the server stops, so that the last messages are not lost.
+     */
+    public static void flush() {
+        final long target = QUEUED.sum();
+        final long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+
+        while (WRITTEN.get() + DROPPED.sum() < target && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fills the {} placeholders of the format with the arguments in order.
+     * @param format String, the message with placeholders
+     * @param arguments Object[], the values of the placeholders, or null
+     * @return String, the formatted message
+     */
+    static String format(String format, Object[] arguments) {
+        if (arguments == null) {
+            return format;
+        }
+
+        final StringBuilder builder = new StringBuilder(format.length() + 32);
+        int start = 0;
+        for (final Object argument : arguments) {
+            final int placeholder = format.indexOf("{}", start);
+            if (placeholder < 0) {
+                break;
+            }
+            builder.append(format, start, placeholder).append(argument);
+            start = placeholder + 2;
+        }
+        return builder.append(format, start, format.length()).toString();
+    }
+
+    /**
+     * Puts a message to the buffer, or drops it if the buffer is full.
+     * @param level Level, the level of the message
+     * @param format String, the message with placeholders
+     * @param arguments Object[], the values of the placeholders, or null
+     */
+    private static void record(Level level, String format, Object[] arguments) {
+        QUEUED.increment();
+        if (!BUFFER.offer(new Entry(level, format, arguments))) {
+            DROPPED.increment();
+        }
+    }
+
+    /**
+     * Main loop of the writer thread. Takes the messages from the buffer in batches,
+     * formats and writes them, and flushes the output when the buffer is empty.
+     */
+    private static void run() {
+        final PrintStream output = System.out;
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 16 * 1024);
+        final List<Entry> batch = new ArrayList<>(256);
+
+        while (true) {
+            try {
+                batch.add(BUFFER.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            BUFFER.drainTo(batch, 255);
+
+            try {
+                for (final Entry entry : batch) {
+                    writer.write(Instant.ofEpochMilli(entry.time).toString());
+                    writer.write(' ');
+                    writer.write(String.format(Locale.ROOT, "%-5s", entry.level));
+                    writer.write(" [");
+                    writer.write(entry.thread);
+                    writer.write("] ");
+                    writer.write(format(entry.format, entry.arguments));
+                    writer.write('\n');
+                }
+                if (BUFFER.isEmpty()) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                /* Standard output is gone, there is nowhere to report it */
+            }
+
+            WRITTEN.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Parses the configured level.
+     * @param value String, the name of the level, in any case
+     * @return Level, or INFO if the name is unknown
+     */
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Class that represents the position of a page in a paginated message query.
+ * <p>The cursor is based on the primary key of the messages table (sent, nickname)
+ * and points to the last message of the previous page. The next page starts
+ * from the first message that is older than the cursor.
+ * <p>The client only sees the cursor as an opaque String created with encode().
+ */
+public class MessageCursor {
+    private final long sent;
+    private final String nickname;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param sent long, the sent time of the last message in Unix time format
+     * @param nickname String, the nickname of the last message
+     */
+    public MessageCursor(long sent, String nickname) {
+        this.sent = sent;
+        this.nickname = nickname;
+    }
+
+    /**
+     * Getter for the class variable sent.
+     * @return long, the sent time in Unix time format
+     */
+    public long getSent() {
+        return this.sent;
+    }
+
+    /**
+     * Getter for the class variable nickname.
+     * @return String, the class variable nickname
+     */
+    public String getNickname() {
+        return this.nickname;
+    }
+
+    /**
+     * Encodes the cursor into an opaque URL safe String that can be sent to the client.
+     * @return String, the encoded cursor
+     */
+    public String encode() {
+        final String raw = this.sent + ":" + this.nickname;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor String that was earlier created with encode().
+     * @param encoded String, the cursor received from the client
+     * @return MessageCursor, the decoded cursor
+     * @throws IllegalArgumentException if the given String is not a valid cursor
+     */
+    public static MessageCursor decode(String encoded) throws IllegalArgumentException {
+        if (encoded == null || encoded.isEmpty()) {
+            throw new IllegalArgumentException("Cursor cannot be empty");
+        }
+
+        final String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        final int separator = raw.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded);
+        }
+
+        try {
+            return new MessageCursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded);
+        }
+    }
+}
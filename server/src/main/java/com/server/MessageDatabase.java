@@ -1,6 +1,7 @@
 package com.server;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -8,17 +9,110 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import org.apache.commons.codec.digest.Crypt;
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
-/* Class that wraps all database related methods */
+/**
+ * Class that wraps all database related methods.
+ * <p>The database is opened in WAL mode. All writes go through one dedicated
+ * writer connection and are serialized with writeLock. Queries that only read
+ * the database use a bounded pool of read-only connections, so they can run
+ * in parallel with each other and with the writer.
+ * <p>Queries run through the StatementCache of their connection, so each SQL
+ * string is prepared once per connection, and all values are bound as parameters.
+ */
 public class MessageDatabase {
-    private Connection dbConnection = null;
+    /* Number of read-only connections, can be changed with -Dmessagedatabase.readers=N */
+    private static final int READ_POOL_SIZE = Integer.getInteger("messagedatabase.readers", Math.max(4, Runtime.getRuntime().availableProcessors()));
+    /* How many minutes of messages the recent message index keeps, can be changed with -Dmessagedatabase.recentminutes=N */
+    private static final long RECENT_MINUTES = Long.getLong("messagedatabase.recentminutes", 6 * 60);
+    /* Largest number of messages in the recent message index, can be changed with -Dmessagedatabase.recentmax=N */
+    private static final int RECENT_MAX = Integer.getInteger("messagedatabase.recentmax", 50000);
+    /* Largest full message listing kept in memory, can be changed with -Dmessagedatabase.listingbytes=N */
+    private static final int LISTING_MAX_BYTES = Integer.getInteger("messagedatabase.listingbytes", 16 * 1024 * 1024);
+
+    /* Queries of the messages and users tables, their plans are checked at startup by checkQueryPlans() */
+    private static final String SELECT_ALL = "SELECT * FROM messages ORDER BY rowid";
+    private static final String SELECT_BY_USER = "SELECT * FROM messages WHERE nickname = ?";
+    private static final String SELECT_BY_TIME = "SELECT * FROM messages WHERE sent >= ? AND sent <= ?";
+    private static final String SELECT_BY_AREA =
+        "SELECT m.* FROM message_area a JOIN messages m ON m.sent = a.sent AND m.nickname = a.nickname " +
+        "WHERE a.maxlat >= ? AND a.minlat <= ? AND a.maxlon >= ? AND a.minlon <= ? " +
+        "AND m.latitude BETWEEN ? AND ? AND m.longitude BETWEEN ? AND ?";
+    /* An area that crosses the 180th meridian is searched as its western and eastern halves */
+    private static final String SELECT_BY_AREA_SPLIT = SELECT_BY_AREA + " UNION ALL " + SELECT_BY_AREA;
+    /* The pending value is a literal so that the partial index messages_weather_pending can be used */
+    private static final String SELECT_PENDING_WEATHER =
+        "SELECT sent, nickname, latitude, longitude, dangertype FROM messages WHERE weather = " + WarningMessage.WEATHER_PENDING;
+    private static final String UPDATE_WEATHER = "UPDATE messages SET weather = ? WHERE sent = ? AND nickname = ?";
+    private static final String SELECT_MESSAGE = "SELECT * FROM messages WHERE sent = ? AND nickname = ?";
+    private static final String SELECT_RECENT = "SELECT * FROM messages WHERE sent >= ? ORDER BY sent DESC, nickname DESC LIMIT ?";
+    private static final String SELECT_OLDER_EXISTS = "SELECT EXISTS (SELECT 1 FROM messages WHERE sent < ?)";
+    private static final String USER_FILTER = "nickname = ?";
+    private static final String TIME_FILTER = "sent >= ? AND sent <= ?";
+    private static final String SELECT_USERNAME = "SELECT username FROM users WHERE username = ?";
+    private static final String SELECT_PASSWORD = "SELECT password FROM users WHERE username = ?";
+    private static final String INSERT_USER = "INSERT INTO users (username, password, email) VALUES (?, ?, ?)";
+
+    /* Version of the schema before versioned migrations, when the spatial index already existed */
+    private static final int LEGACY_AREA_INDEX_VERSION = 3;
+
+    /**
+     * Schema of the database as ordered migration steps. New steps are only appended.
+     * <p>Version 1: the messages table with the primary key (sent, nickname), and the users table.
+     * <p>Version 2: the spatial index, an SQLite R*Tree with one entry per message. Each entry
+     * stores the location of the message and the primary key of its row. Triggers keep the
+     * index up to date when messages are inserted or deleted.
+     * <p>Version 3: the existing messages are added to the spatial index in chunks.
+     * <p>Version 4: secondary indexes for nickname lookups, danger types and pending weather.
+     * Time ranges use the primary key.
+     */
+    private static final SchemaMigrator SCHEMA = new SchemaMigrator()
+        .schema(1, "messages and users tables",
+            "CREATE TABLE IF NOT EXISTS messages (" +
+            "sent INT NOT NULL," +
+            "nickname VARCHAR (50) NOT NULL," +
+            "latitude DOUBLE NOT NULL," +
+            "longitude DOUBLE NOT NULL," +
+            "dangertype VARCHAR(255) NOT NULL," +
+            "areacode INT," +
+            "phonenumber VARCHAR (50)," +
+            "weather INT," +
+            "PRIMARY KEY (sent, nickname))",
+            "CREATE TABLE IF NOT EXISTS users (" +
+            "username VARCHAR (50) PRIMARY KEY," +
+            "password VARCHAR (50) NOT NULL," +
+            "email VARCHAR (50) NOT NULL)")
+        .schema(2, "spatial index of messages",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS message_area USING rtree(" +
+            "id, minlat, maxlat, minlon, maxlon, +sent INT, +nickname TEXT)",
+            "CREATE TRIGGER IF NOT EXISTS message_area_insert AFTER INSERT ON messages BEGIN " +
+            "INSERT INTO message_area (minlat, maxlat, minlon, maxlon, sent, nickname) " +
+            "VALUES (new.latitude, new.latitude, new.longitude, new.longitude, new.sent, new.nickname); END",
+            "CREATE TRIGGER IF NOT EXISTS message_area_delete AFTER DELETE ON messages BEGIN " +
+            "DELETE FROM message_area WHERE sent = old.sent AND nickname = old.nickname; END")
+        .backfill(3, "existing messages to the spatial index", "messages",
+            "INSERT INTO message_area (minlat, maxlat, minlon, maxlon, sent, nickname) " +
+            "SELECT latitude, latitude, longitude, longitude, sent, nickname FROM messages WHERE rowid > ? AND rowid <= ?")
+        .schema(4, "secondary indexes of messages",
+            "CREATE INDEX IF NOT EXISTS messages_nickname_sent ON messages (nickname, sent)",
+            "CREATE INDEX IF NOT EXISTS messages_dangertype_sent ON messages (dangertype, sent)",
+            "CREATE INDEX IF NOT EXISTS messages_weather_pending ON messages (sent) WHERE weather = " + WarningMessage.WEATHER_PENDING);
+
+    private Connection writeConnection = null;
+    private StatementCache writeStatements = null;
+    private ConnectionPool readPool = null;
+    private MessageWriteQueue writeQueue = null;
+    private final Object writeLock = new Object();
+    private final CredentialCache credentialCache = new CredentialCache();
+    private final RecentMessageIndex recentMessages = new RecentMessageIndex(RECENT_MINUTES * 60_000, RECENT_MAX);
+    private final ListingCache listingCache = new ListingCache(LISTING_MAX_BYTES);
     private static MessageDatabase dbInstance = null;
     private SecureRandom secureRandom = null;
 
@@ -40,38 +134,8 @@ public class MessageDatabase {
 
     /* Private constructor for Singleton implementation */
     private MessageDatabase() {
-        try {
-            System.out.println("Status: MessageDatabase constructor calls initialize");
-            initialize();
-        } catch (final SQLException e) {
-            System.out.println("Error: Something went wrong in the DB constructor: " + e.getMessage());
-        }
-    }
-
-    /* Method that creates a SQL connection */
-
-    /**
-     * Method that is used to initialize database tables.
-     * <p>Calls createMessageTable() and createUserTable() to create
-     * two tables for the database.
-     * <p>Also initializes SecureRandom class variable required for
-     * secure passwords.
-     * @return boolean, true if SQL database connection exists, false otherwise
-     * @throws SQLException
-     */
-    private boolean initialize() throws SQLException {
-        System.out.println("Status: Initializing database");
-
-        if (this.dbConnection != null) {
-            System.out.println("Status: Calling method for message table creation");
-            createMessageTable();
-            System.out.println("Status: Calling method for user table creation");
-            createUserTable();
-            this.secureRandom = new SecureRandom();
-            return true;
-        }
-
-        return false;
+        this.secureRandom = new SecureRandom();
+        Metrics.getInstance().register(Metrics.RECENT_INDEX_MESSAGES, "", this.recentMessages::size);
     }
 
     /**
@@ -80,337 +144,665 @@ public class MessageDatabase {
      * If a file with the given name is not found, creates a new file.
      * <p>Combines the given name with "jdbc:sqlite:" to create a
      * database connection.
+     * <p>Switches the database to WAL mode, brings its schema up to date with
+     * migrate(), loads the recent messages to memory and opens the pool of
+     * read-only connections after that.
      * 
      * @param dbName, String that provides a name for the database file
      * @throws SQLException
      */
     public void open(final String dbName) throws SQLException {
-        System.out.println("Status: Opening the database file");
-        boolean exists = false;
-        final File file = new File(dbName);
-        System.out.println("Status: Checking the given database file: " + file.toString());
-
-        /* Check if the given file can be found. Also make sure that it is not a directory */
-        if (!file.isDirectory()) {
-            System.out.println("Status: " + file.toString() + " is not a directory, good");
-            if (file.isFile()) {
-                System.out.println("Status: " + file.toString() + " is a file. Database item found");
-                exists = true;
-            }
-        }
+        Log.info("Opening the database file {}", dbName);
+        final String address = "jdbc:sqlite:" + dbName;
 
         try {
-            final String address = "jdbc:sqlite:" + dbName;
-            this.dbConnection = DriverManager.getConnection(address);
+            this.writeConnection = DriverManager.getConnection(address);
+            this.writeStatements = new StatementCache(this.writeConnection);
+
+            /* WAL mode lets the read-only connections query while the writer inserts */
+            try (Statement pragmaStatement = this.writeConnection.createStatement()) {
+                pragmaStatement.execute("PRAGMA journal_mode=WAL");
+            }
         } catch (final Exception e) {
-            System.out.println("Error while estabilishing dbConnection: " + e.getMessage());
+            Log.error("Error while estabilishing dbConnection: {}", e.getMessage());
+        }
+
+        if (this.writeConnection == null) {
+            throw new SQLException("The database " + dbName + " could not be opened");
         }
 
-        /* If the given file could not be found, initialize a new database using that name */
-        if (!exists) {
-            System.out.println("Status: Database was not found, initializing a new one");
-            initialize();
+        /* New databases get the whole schema, existing ones the steps they do not have yet */
+        migrate();
+        for (final String problem : checkQueryPlans()) {
+            Log.warn("Query plan: {}", problem);
         }
+        loadRecentMessages();
+
+        this.readPool = new ConnectionPool(address, READ_POOL_SIZE);
+        this.writeQueue = new MessageWriteQueue(this.writeConnection, this.writeLock);
     }
 
     /**
-     * Method that creates a message table to the database.
-     * <p>The table will contain following attributes:
-     * <ul>
-     * <li>sent (int)</li>
-     * <li>nickname (varchar)</li>
-     * <li>latitude (double)</li>
-     * <li>longitude (double)</li>
-     * <li>dangertype (varchar)</li>
-     * <li>areacode (int)</li>
-     * <li>phonenumber (varchar)</li>
-     * </ul>
-     * <p>Primary key is the combination of sent and nickname.
+     * Method that checks that no query of the database falls back to a table scan.
+     * <p>Runs EXPLAIN QUERY PLAN on every query and reports the queries whose plan scans
+     * a whole table or sorts its result in a temporary B-tree. Listing all messages
+     * reads the whole table by design and is allowed to scan it.
+     * @return List of the problems found, empty if every query uses an index
      * @throws SQLException
      */
-    private void createMessageTable() throws SQLException {
-        System.out.println("Status: Creating message table");
-        
-        try {
-            final String createPrompt = 
-            "CREATE TABLE messages (" +
-            "sent INT NOT NULL," +
-            "nickname VARCHAR (50) NOT NULL," +
-            "latitude DOUBLE NOT NULL," +
-            "longitude DOUBLE NOT NULL," +
-            "dangertype VARCHAR(255) NOT NULL," +
-            "areacode INT," +
-            "phonenumber VARCHAR (50)," +
-            "weather INT," +
-            "PRIMARY KEY (sent, nickname))";
+    public List<String> checkQueryPlans() throws SQLException {
+        final List<String> problems = new ArrayList<>();
+        if (this.writeConnection == null) {
+            return problems;
+        }
 
-            final Statement createStatement = this.dbConnection.createStatement();
-            createStatement.executeUpdate(createPrompt);
-            createStatement.close();
+        final List<String> queries = new ArrayList<>(List.of(
+            SELECT_BY_USER, SELECT_BY_TIME, SELECT_BY_AREA, SELECT_BY_AREA_SPLIT, SELECT_PENDING_WEATHER, UPDATE_WEATHER,
+            SELECT_MESSAGE, SELECT_RECENT, SELECT_OLDER_EXISTS, SELECT_USERNAME, SELECT_PASSWORD));
+        for (final String filter : new String[] { "", USER_FILTER, TIME_FILTER }) {
+            queries.add(pageQuery(filter, false));
+            queries.add(pageQuery(filter, true));
+        }
 
-            System.out.println("Success: Message table initialized");
-        } catch (final SQLException e) {
-            System.out.println("SQLException occured while creating message table: " + e.getMessage());
-        } catch (final Exception e) {
-            System.out.println("Error occured while creating message table: " + e.getMessage());
+        synchronized (this.writeLock) {
+            for (final String query : queries) {
+                try (PreparedStatement explainStatement = this.writeConnection.prepareStatement("EXPLAIN QUERY PLAN " + query);
+                        ResultSet result = explainStatement.executeQuery()) {
+                    while (result.next()) {
+                        final String detail = result.getString("detail");
+                        if (detail.matches("SCAN (TABLE )?\\w+( AS \\w+)?") || detail.startsWith("USE TEMP B-TREE")) {
+                            problems.add("Query does not use an index (" + detail + "): " + query);
+                        }
+                    }
+                }
+            }
         }
+
+        return problems;
     }
 
     /**
-     * Method that creates a user table to the database.
-     * <p>The table will contain following attributes:
-     * <ul>
-     * <li>username (varchar)</li>
-     * <li>password (varchar)</li>
-     * <li>email (varchar)</li>
-     * </ul>
-     * <p>Primary key is the username since it is required to be unique
-     * @throws SQLException
+     * Method that applies the schema migrations the database does not have yet.
+     * <p>Databases created before versioned migrations have version 0. If such a database
+     * already has the spatial index, it has the schema of LEGACY_AREA_INDEX_VERSION and only
+     * the later steps are applied, otherwise every step is applied. The table creating
+     * steps do nothing if their tables exist.
+     * @throws SQLException if a migration step failed
      */
-    private void createUserTable() throws SQLException {
-        System.out.println("Status: Creating user table");
-        try {
-            final String createPrompt =
-            "CREATE TABLE users (" +
-            "username VARCHAR (50) PRIMARY KEY," +
-            "password VARCHAR (50) NOT NULL," +
-            "email VARCHAR (50) NOT NULL)";
+    private void migrate() throws SQLException {
+        synchronized (this.writeLock) {
+            if (SchemaMigrator.getVersion(this.writeConnection) == 0
+                    && SchemaMigrator.tableExists(this.writeConnection, "messages")
+                    && SchemaMigrator.tableExists(this.writeConnection, "message_area")) {
+                Log.info("Database was created before versioned migrations, marking it as version {}", LEGACY_AREA_INDEX_VERSION);
+                SchemaMigrator.setVersion(this.writeConnection, LEGACY_AREA_INDEX_VERSION);
+            }
 
-            final Statement createStatement = this.dbConnection.createStatement();
-            createStatement.executeUpdate(createPrompt);
-            createStatement.close();
+            final int version = SCHEMA.migrate(this.writeConnection);
+            Log.info("Database schema is at version {}", version);
+        }
+    }
 
-            System.out.println("Success: User table initialized");
-        } catch (final SQLException e) {
-            System.out.println("SQLException occured while creating user table: " + e.getMessage());
-        } catch (final Exception e) {
-            System.out.println("Error occured while creating user table: " + e.getMessage());
+    /**
+     * Method that fills the recent message index with the newest messages of the database.
+     * <p>Loads the messages inside the retention window, at most one more than the index keeps,
+     * so that the index can set its floor. If the database has nothing older, the index
+     * has the whole table.
+     * @throws SQLException
+     */
+    private void loadRecentMessages() throws SQLException {
+        final long start = System.nanoTime();
+        final long cutoff = this.recentMessages.getCutoff();
+        final NavigableMap<RecentMessageIndex.Key, byte[]> loaded = new TreeMap<>();
+        final boolean complete;
+
+        synchronized (this.writeLock) {
+            final PreparedStatement recentStatement = this.writeStatements.prepare(SELECT_RECENT);
+            recentStatement.setLong(1, cutoff);
+            recentStatement.setInt(2, this.recentMessages.getMaxMessages() + 1);
+            try (ResultSet result = recentStatement.executeQuery()) {
+                while (result.next()) {
+                    loaded.put(new RecentMessageIndex.Key(result.getLong("sent"), result.getString("nickname")), MessageSerializer.toJson(result));
+                }
+            }
+
+            final PreparedStatement olderStatement = this.writeStatements.prepare(SELECT_OLDER_EXISTS);
+            olderStatement.setLong(1, cutoff);
+            try (ResultSet result = olderStatement.executeQuery()) {
+                complete = result.next() && result.getInt(1) == 0;
+            }
         }
+
+        this.recentMessages.load(loaded, complete);
+        Log.info("Loaded {} recent messages to memory in {} ms", this.recentMessages.size(), (System.nanoTime() - start) / 1_000_000);
     }
 
     /**
-     * Method that closes the database connection.
-     * <p>Calls the Connection.close() method and 
-     * sets the Connection class member variable to null.
+     * Method that closes the database connections.
+     * <p>Writes the messages still waiting in the write queue, then closes the writer connection and the pool of read-only connections
+     * and sets the class member variables to null.
      * @throws SQLException
      */
     public void closeDB() throws SQLException {
-        if (this.dbConnection == null) {
-            this.dbConnection.close();
-            System.out.println("Status: Closing database connection");
-            this.dbConnection = null;
+        if (this.writeQueue != null) {
+            this.writeQueue.close();
+            this.writeQueue = null;
+        }
+        this.recentMessages.clear();
+        this.listingCache.clear();
+        if (this.readPool != null) {
+            this.readPool.close();
+            this.readPool = null;
+        }
+        /* A message writer that outlived close() finishes its batch before the connection is closed */
+        synchronized (this.writeLock) {
+            if (this.writeStatements != null) {
+                this.writeStatements.close();
+                this.writeStatements = null;
+            }
+            if (this.writeConnection != null) {
+                Log.info("Closing database connection");
+                this.writeConnection.close();
+                this.writeConnection = null;
+            }
         }
     }
 
     /**
      * Method that inserts a new WarningMessage to the database.
-     * <p>Creates a Insert into messages statement.
+     * <p>The message is handed to the write queue, which inserts messages from
+     * concurrent handlers in batched transactions. Returns when the batch
+     * containing the message has been committed and the message has been
+     * added to the recent message index.
      * @param message WarningMessage that WarningHandler.handle() passes to the database
-     * @throws SQLException
+     * @throws SQLException if the message could not be inserted
      */
     public void setMessage(final WarningMessage message) throws SQLException {
-        System.out.println("Status: Setting a new WarningMessage to database");
-
-        final StringBuilder temp = new StringBuilder("insert into messages ");
-
-        temp.append("VALUES('");
-        temp.append(message.dateAsInt());
-        temp.append("','");
-        temp.append(message.getNickname());
-        temp.append("','");
-        temp.append(message.getLatitude());
-        temp.append("','");
-        temp.append(message.getLongitude());
-        temp.append("','");
-        temp.append(message.getDangertype());
-        temp.append("','");
-        temp.append(message.getAreacode());
-        temp.append("','");
-        temp.append(message.getPhonenumber());
-        temp.append("','");
-        temp.append(message.getWeather());
-        temp.append("')");
-
-        final String setMessageString = temp.toString();
-        Statement createStatement;
-        createStatement = this.dbConnection.createStatement();
-        createStatement.executeUpdate(setMessageString);
-        createStatement.close();
+        Log.debug("Setting a new WarningMessage to database");
+
+        if (this.writeQueue == null) {
+            throw new SQLException("The database has not been opened");
+        }
+        final long start = System.nanoTime();
+        try {
+            this.writeQueue.write(message);
+        } finally {
+            this.listingCache.invalidate();
+            Metrics.getInstance().observe(Metrics.DB_INSERT_DURATION, "", System.nanoTime() - start);
+        }
+        rememberMessage(message);
+    }
+
+    /**
+     * Method that inserts several WarningMessages to the database in one transaction.
+     * <p>Used by BulkWarningHandler. A message that violates a constraint only fails
+     * its own insert, the other messages are still committed.
+     * @param messages List of the messages to be inserted
+     * @return List with null for each inserted message and the error for each failed one
+     * @throws SQLException if the transaction could not be committed
+     */
+    public List<SQLException> setMessages(final List<WarningMessage> messages) throws SQLException {
+        Log.debug("Setting {} new WarningMessages to database", messages.size());
+
+        if (this.writeQueue == null) {
+            throw new SQLException("The database has not been opened");
+        }
+        final long start = System.nanoTime();
+        final List<SQLException> errors;
+        try {
+            errors = this.writeQueue.writeAll(messages);
+        } finally {
+            this.listingCache.invalidate();
+            Metrics.getInstance().observe(Metrics.DB_INSERT_DURATION, "", System.nanoTime() - start);
+        }
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (errors.get(i) == null) {
+                rememberMessage(messages.get(i));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Method that adds a committed message to the recent message index.
+     * <p>A message whose areacode SQLite changes when storing it is read back from
+     * the database, so that the index has exactly what a query would return.
+     * @param message WarningMessage, the message that has been committed
+     */
+    private void rememberMessage(final WarningMessage message) {
+        final long sent = message.dateAsInt();
+        if (!this.recentMessages.covers(sent)) {
+            return;
+        }
+
+        if (MessageSerializer.isStoredAsIs(message)) {
+            this.recentMessages.add(sent, message.getNickname(), MessageSerializer.toJson(message));
+        } else {
+            synchronized (this.writeLock) {
+                rememberStoredMessage(sent, message.getNickname(), false);
+            }
+        }
+    }
+
+    /**
+     * Method that reads a message from the database and puts it to the recent message index.
+     * <p>If the message cannot be read, the index gives up the messages up to its sent time,
+     * so that queries of that time fall back to the database instead of missing it.
+     * <p>Must be called holding writeLock.
+     * @param sent long, the sent time of the message in Unix time format
+     * @param nickname String, the nickname of the message
+     * @param replace boolean, true to only replace a message that is already in the index
+     */
+    private void rememberStoredMessage(final long sent, final String nickname, final boolean replace) {
+        try {
+            final PreparedStatement selectStatement = this.writeStatements.prepare(SELECT_MESSAGE);
+            selectStatement.setLong(1, sent);
+            selectStatement.setString(2, nickname);
+            try (ResultSet result = selectStatement.executeQuery()) {
+                if (!result.next()) {
+                    return;
+                }
+                if (replace) {
+                    this.recentMessages.replace(sent, nickname, MessageSerializer.toJson(result));
+                } else {
+                    this.recentMessages.add(sent, nickname, MessageSerializer.toJson(result));
+                }
+            }
+        } catch (SQLException e) {
+            Log.warn("Failed to read a message for the recent message index: {}", e.getMessage());
+            this.recentMessages.forget(sent);
+        }
+    }
+
+    /**
+     * Method that updates the weather of a message that is already in the database.
+     * <p>Used by WeatherEnricher when the weather of a message was fetched in the background.
+     * @param message WarningMessage, the message with its new weather value
+     * @throws SQLException
+     */
+    public void updateWeather(final WarningMessage message) throws SQLException {
+        Log.debug("Updating the weather of a WarningMessage");
+
+        synchronized (this.writeLock) {
+            if (this.writeConnection == null) {
+                throw new SQLException("The database has not been opened");
+            }
+            final PreparedStatement updateStatement = this.writeStatements.prepare(UPDATE_WEATHER);
+            updateStatement.setInt(1, message.getWeather());
+            updateStatement.setLong(2, message.dateAsInt());
+            updateStatement.setString(3, message.getNickname());
+            updateStatement.executeUpdate();
+            this.listingCache.invalidate();
+
+            /* The message may not have all its fields here, so the index gets the stored row */
+            if (this.recentMessages.contains(message.dateAsInt(), message.getNickname())) {
+                rememberStoredMessage(message.dateAsInt(), message.getNickname(), true);
+            }
+        }
     }
 
-     /**
-      * Method that checks if there are any messages in the database.
-      * <p>Breaks the loop if one message instance has been found.
-      * @return int, 0 if there were not messages, 1 if any were found
-      * @throws SQLException
-      */
-    public int checkIfThereAreMessages() throws SQLException {
-        int count = 0;
-        final Statement queryStatement = this.dbConnection.createStatement();
-        final ResultSet result = queryStatement.executeQuery("SELECT * FROM messages ORDER BY rowid");
-
-        while (result.next()) {
-            count++;
-            if (count > 0) {
-                break;
+    /**
+     * Method that gets the messages whose weather is still waiting to be fetched.
+     * <p>Used by WeatherEnricher to resume enrichment after a restart.
+     * @return List of WarningMessages that have the weather value WarningMessage.WEATHER_PENDING
+     * @throws SQLException
+     */
+    public List<WarningMessage> getMessagesWithPendingWeather() throws SQLException {
+        final List<WarningMessage> messages = new ArrayList<>();
+        final Connection connection = this.readPool.acquire();
+
+        try {
+            try (ResultSet result = this.readPool.statements(connection).prepare(SELECT_PENDING_WEATHER).executeQuery()) {
+                while (result.next()) {
+                    messages.add(new WarningMessage(result.getString("nickname"), result.getDouble("latitude"), result.getDouble("longitude"), result.getString("dangertype"), WarningMessage.setSent(result.getLong("sent"))));
+                }
             }
+        } finally {
+            this.readPool.release(connection);
         }
 
-        return count;
+        return messages;
     }
 
     /**
      * Method for getting messages from the database.
      * <p>Creates a Select from messages statement.
      * <p>Selects all messages from the messages table.
-     * @return JSONArray of all WarningMessages stored in the database.
+     * @return SerializedMessages, all WarningMessages stored in the database as a JSON array.
      * @throws SQLException
      */
-    public JSONArray getMessages() throws SQLException {
-        System.out.println("Status: Getting messages from database");
+    public SerializedMessages getMessages() throws SQLException {
+        Log.debug("Getting messages from database");
 
-        JSONObject jsonObject = new JSONObject();
-        final JSONArray jsonArray = new JSONArray();
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
 
-        if (checkIfThereAreMessages() > 0) {
-            final Statement queryStatement = this.dbConnection.createStatement();
-            final ResultSet result = queryStatement.executeQuery("SELECT * FROM messages ORDER BY rowid");
-    
+        try (ResultSet result = this.readPool.statements(connection).prepare(SELECT_ALL).executeQuery()) {
+            final MessageSerializer serializer = MessageSerializer.start();
             while (result.next()) {
-                WarningMessage msg = new WarningMessage(result.getString("nickname"), result.getDouble("latitude"), result.getDouble("longitude"), result.getString("dangertype"), WarningMessage.setSent(result.getLong("sent")));
-                jsonObject.put("sent", msg.getSent(ZoneOffset.UTC));
-                jsonObject.put("nickname", msg.getNickname());
-                jsonObject.put("latitude", msg.getLatitude());
-                jsonObject.put("longitude", msg.getLongitude());
-                jsonObject.put("dangertype", msg.getDangertype());
-
-                /* Check if the warningmessage has areacode and phonenumber */
-                if (result.getInt("areacode") > 0 && result.getString("phonenumber") != null) {
-                    msg.setAreacode(result.getString("areacode"));
-                    msg.setPhonenumber(result.getString("phonenumber"));
-                    jsonObject.put("areacode", msg.getAreacode());
-                    jsonObject.put("phonenumber", msg.getPhonenumber());
-                }
+                serializer.append(result);
+            }
+            return serializer.toMessages();
+        } finally {
+            this.readPool.release(connection);
+            recordQuery("all", start);
+        }
+    }
 
-                /* Check if the warningmessage has weather information */
-                if (result.getInt("weather") > -999) {
-                    msg.setWeather(result.getInt("weather"));
-                    jsonObject.put("weather", msg.getWeather() + " Celsius");
-                }
+    /**
+     * Method that gets the full message listing from the listing cache.
+     * <p>The listing is the same JSON array that getMessages() returns. It is only
+     * queried again after a message has been committed.
+     * @return CachedListing, or null if the listing is too large to be cached,
+     * in which case writeMessages() should be used
+     * @throws SQLException
+     */
+    public CachedListing getListing() throws SQLException {
+        return this.listingCache.get(this::getMessages);
+    }
 
-                jsonArray.put(jsonObject);
-                // Initialize empty object for next round
-                jsonObject = new JSONObject();
+    /**
+     * Method that writes all messages from the database straight to the given stream.
+     * <p>Walks the ResultSet row by row and writes each message as soon as it
+     * has been read, so the whole table is never held in memory at once.
+     * <p>The output is the same JSON array that getMessages() would produce.
+     * @param outputStream OutputStream, usually the response body of the exchange
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void writeMessages(final OutputStream outputStream) throws SQLException, IOException {
+        Log.debug("Streaming messages from database");
+
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
+
+        try (ResultSet result = this.readPool.statements(connection).prepare(SELECT_ALL).executeQuery()) {
+            final MessageSerializer serializer = MessageSerializer.start();
+            while (result.next()) {
+                serializer.append(result);
+                if (serializer.size() >= MessageSerializer.STREAM_CHUNK_SIZE) {
+                    serializer.drainTo(outputStream);
+                }
             }
-        }
 
-        return jsonArray;
+            serializer.finish();
+            serializer.drainTo(outputStream);
+            outputStream.flush();
+        } finally {
+            this.readPool.release(connection);
+            recordQuery("all", start);
+        }
     }
 
     /**
      * Method that gets the messages with the requested nickname from the database.
      * @param nickname String, the nickname used for the query
-     * @return JSONArray, containing the messages posted by the requested nickname
-     * @throws JSONException
+     * @return SerializedMessages, containing the messages posted by the requested nickname
      * @throws SQLException
      */
-    public JSONArray getMessagesByUser(String nickname) throws JSONException, SQLException {
-        System.out.println("Status: Getting messages with nickname: " + nickname);
+    public SerializedMessages getMessagesByUser(String nickname) throws SQLException {
+        Log.debug("Getting messages with nickname: {}", nickname);
 
-        JSONObject jsonObject = new JSONObject();
-        final JSONArray jsonArray = new JSONArray();
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
 
-        if (checkIfThereAreMessages() > 0) {
-            final String queryPrompt =
-            "SELECT * FROM messages WHERE nickname = ?";
-            final PreparedStatement queryStatement = this.dbConnection.prepareStatement(queryPrompt);
+        try {
+            final PreparedStatement queryStatement = this.readPool.statements(connection).prepare(SELECT_BY_USER);
             queryStatement.setString(1, nickname);
-            final ResultSet result = queryStatement.executeQuery(); 
-
-            while (result.next()) {
-                WarningMessage msg = new WarningMessage(result.getString("nickname"), result.getDouble("latitude"), result.getDouble("longitude"), result.getString("dangertype"), WarningMessage.setSent(result.getLong("sent")));
-                jsonObject.put("sent", msg.getSent(ZoneOffset.UTC));
-                jsonObject.put("nickname", msg.getNickname());
-                jsonObject.put("latitude", msg.getLatitude());
-                jsonObject.put("longitude", msg.getLongitude());
-                jsonObject.put("dangertype", msg.getDangertype());
-
-                /* Check if the warningmessage has areacode and phonenumber */
-                if (result.getInt("areacode") > 0 && result.getString("phonenumber") != null) {
-                    msg.setAreacode(result.getString("areacode"));
-                    msg.setPhonenumber(result.getString("phonenumber"));
-                    jsonObject.put("areacode", msg.getAreacode());
-                    jsonObject.put("phonenumber", msg.getPhonenumber());
-                }
 
-                /* Check if the warningmessage has weather information */
-                if (result.getInt("weather") > -999) {
-                    msg.setWeather(result.getInt("weather"));
-                    jsonObject.put("weather", msg.getWeather() + " Celsius");
+            try (ResultSet result = queryStatement.executeQuery()) {
+                final MessageSerializer serializer = MessageSerializer.start();
+                while (result.next()) {
+                    serializer.append(result);
                 }
-
-                jsonArray.put(jsonObject);
-                // Initialize empty object for next round
-                jsonObject = new JSONObject();
+                return serializer.toMessages();
             }
+        } finally {
+            this.readPool.release(connection);
+            recordQuery("user", start);
         }
-
-        return jsonArray;
     }
 
     /**
      * Method that gets messages posted in a certain time interval from the database.
      * @param timeStart long, the start date/time in Unix time format
      * @param timeEnd long, the end date/time in Unix time format
-     * @return JSONArray, containing the messages posted in the requested time interval
-     * @throws JSONException
+     * @return SerializedMessages, containing the messages posted in the requested time interval
      * @throws SQLException
      */
-    public JSONArray getMessagesByTimeInterval(long timeStart, long timeEnd) throws JSONException, SQLException {
-        System.out.println("Status: Getting messages with a time interval");
+    public SerializedMessages getMessagesByTimeInterval(long timeStart, long timeEnd) throws SQLException {
+        Log.debug("Getting messages with a time interval");
 
-        JSONObject jsonObject = new JSONObject();
-        final JSONArray jsonArray = new JSONArray();
+        final SerializedMessages recent = this.recentMessages.getMessagesByTimeInterval(timeStart, timeEnd);
+        if (recordRecentLookup(recent != null)) {
+            return recent;
+        }
 
-        if (checkIfThereAreMessages() > 0) {
-            final String queryPrompt =
-            "SELECT * FROM messages WHERE sent >= ? AND sent <= ?";
-            final PreparedStatement queryStatement = this.dbConnection.prepareStatement(queryPrompt);
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
+
+        try {
+            final PreparedStatement queryStatement = this.readPool.statements(connection).prepare(SELECT_BY_TIME);
             queryStatement.setLong(1, timeStart);
             queryStatement.setLong(2, timeEnd);
-            final ResultSet result = queryStatement.executeQuery();
 
-            while (result.next()) {
-                WarningMessage msg = new WarningMessage(result.getString("nickname"), result.getDouble("latitude"), result.getDouble("longitude"), result.getString("dangertype"), WarningMessage.setSent(result.getLong("sent")));
-                jsonObject.put("sent", msg.getSent(ZoneOffset.UTC));
-                jsonObject.put("nickname", msg.getNickname());
-                jsonObject.put("latitude", msg.getLatitude());
-                jsonObject.put("longitude", msg.getLongitude());
-                jsonObject.put("dangertype", msg.getDangertype());
-
-                /* Check if the warningmessage has areacode and phonenumber */
-                if (result.getInt("areacode") > 0 && result.getString("phonenumber") != null) {
-                    msg.setAreacode(result.getString("areacode"));
-                    msg.setPhonenumber(result.getString("phonenumber"));
-                    jsonObject.put("areacode", msg.getAreacode());
-                    jsonObject.put("phonenumber", msg.getPhonenumber());
+            try (ResultSet result = queryStatement.executeQuery()) {
+                final MessageSerializer serializer = MessageSerializer.start();
+                while (result.next()) {
+                    serializer.append(result);
                 }
+                return serializer.toMessages();
+            }
+        } finally {
+            this.readPool.release(connection);
+            recordQuery("time", start);
+        }
+    }
+    
+    /**
+     * Method that gets the messages sent from the requested area.
+     * <p>Uses the spatial index to read only the messages inside the bounding box of
+     * the area. For a radius query the messages outside the circle are filtered out.
+     * <p>The R*Tree stores coordinates with single precision, so the index is only
+     * used to find the candidates and the exact coordinates are checked from the row.
+     * @param areaQuery AreaQuery, the area used for the query
+     * @return SerializedMessages, containing the messages sent from the requested area
+     * @throws SQLException
+     */
+    public SerializedMessages getMessagesByArea(AreaQuery areaQuery) throws SQLException {
+        Log.debug("Getting messages within an area");
+
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
+
+        try {
+            final PreparedStatement queryStatement;
+            if (areaQuery.crossesAntimeridian()) {
+                queryStatement = this.readPool.statements(connection).prepare(SELECT_BY_AREA_SPLIT);
+                setAreaParameters(queryStatement, 1, areaQuery, areaQuery.getWest(), 180);
+                setAreaParameters(queryStatement, 9, areaQuery, -180, areaQuery.getEast());
+            } else {
+                queryStatement = this.readPool.statements(connection).prepare(SELECT_BY_AREA);
+                setAreaParameters(queryStatement, 1, areaQuery, areaQuery.getWest(), areaQuery.getEast());
+            }
 
-                /* Check if the warningmessage has weather information */
-                if (result.getInt("weather") > -999) {
-                    msg.setWeather(result.getInt("weather"));
-                    jsonObject.put("weather", msg.getWeather() + " Celsius");
+            try (ResultSet result = queryStatement.executeQuery()) {
+                final MessageSerializer serializer = MessageSerializer.start();
+                while (result.next()) {
+                    if (areaQuery.contains(result.getDouble("latitude"), result.getDouble("longitude"))) {
+                        serializer.append(result);
+                    }
                 }
+                return serializer.toMessages();
+            }
+        } finally {
+            this.readPool.release(connection);
+            recordQuery("area", start);
+        }
+    }
+
+    /**
+     * Sets the bounding box of an area query to the placeholders of SELECT_BY_AREA.
+     * @param statement PreparedStatement, the area query
+     * @param first int, the index of the first of the eight placeholders
+     * @param areaQuery AreaQuery, the area used for the query
+     * @param west double, the western edge of the box
+     * @param east double, the eastern edge of the box
+     * @throws SQLException
+     */
+    private static void setAreaParameters(final PreparedStatement statement, final int first, final AreaQuery areaQuery, final double west, final double east) throws SQLException {
+        for (int i = first; i < first + 8; i += 4) {
+            statement.setDouble(i, areaQuery.getSouth());
+            statement.setDouble(i + 1, areaQuery.getNorth());
+            statement.setDouble(i + 2, west);
+            statement.setDouble(i + 3, east);
+        }
+    }
+
+    /**
+     * Method for getting one page of messages from the database.
+     * <p>Messages are ordered from newest to oldest by the primary key (sent, nickname).
+     * @param limit int, the maximum number of messages on the page
+     * @param cursor MessageCursor, the cursor received with the previous page, or null for the first page
+     * @return MessagePage, containing the messages and the cursor for the next page
+     * @throws SQLException
+     */
+    public MessagePage getMessagesPage(int limit, MessageCursor cursor) throws SQLException {
+        Log.debug("Getting a page of messages from database");
+
+        final MessagePage recent = this.recentMessages.getMessagesPage(Long.MIN_VALUE, Long.MAX_VALUE, limit, cursor);
+        if (recordRecentLookup(recent != null)) {
+            return recent;
+        }
+        return queryPage("all", "", new Object[0], limit, cursor);
+    }
+
+    /**
+     * Method that gets one page of the messages with the requested nickname from the database.
+     * <p>Messages are ordered from newest to oldest by the primary key (sent, nickname).
+     * @param nickname String, the nickname used for the query
+     * @param limit int, the maximum number of messages on the page
+     * @param cursor MessageCursor, the cursor received with the previous page, or null for the first page
+     * @return MessagePage, containing the messages and the cursor for the next page
+     * @throws SQLException
+     */
+    public MessagePage getMessagesByUserPage(String nickname, int limit, MessageCursor cursor) throws SQLException {
+        Log.debug("Getting a page of messages with nickname: {}", nickname);
+        return queryPage("user", USER_FILTER, new Object[] { nickname }, limit, cursor);
+    }
 
-                jsonArray.put(jsonObject);
-                // Initialize empty object for next round
-                jsonObject = new JSONObject();
+    /**
+     * Method that gets one page of the messages posted in a certain time interval from the database.
+     * <p>Messages are ordered from newest to oldest by the primary key (sent, nickname).
+     * @param timeStart long, the start date/time in Unix time format
+     * @param timeEnd long, the end date/time in Unix time format
+     * @param limit int, the maximum number of messages on the page
+     * @param cursor MessageCursor, the cursor received with the previous page, or null for the first page
+     * @return MessagePage, containing the messages and the cursor for the next page
+     * @throws SQLException
+     */
+    public MessagePage getMessagesByTimeIntervalPage(long timeStart, long timeEnd, int limit, MessageCursor cursor) throws SQLException {
+        Log.debug("Getting a page of messages with a time interval");
+
+        final MessagePage recent = this.recentMessages.getMessagesPage(timeStart, timeEnd, limit, cursor);
+        if (recordRecentLookup(recent != null)) {
+            return recent;
+        }
+        return queryPage("time", TIME_FILTER, new Object[] { timeStart, timeEnd }, limit, cursor);
+    }
+
+    /**
+     * Method that runs a keyset paginated query against the messages table.
+     * <p>The cursor is compared against the primary key (sent, nickname), which lets
+     * SQLite start the query with an index range scan instead of reading the whole table.
+     * <p>One extra row is fetched to find out whether there is a next page.
+     * @param queryType String, the type of the query used as the label of its duration metric
+     * @param filter String, the WHERE condition of the query without the keyword, empty if none
+     * @param parameters Object[], the values for the placeholders in the filter
+     * @param limit int, the maximum number of messages on the page
+     * @param cursor MessageCursor, the cursor received with the previous page, or null for the first page
+     * @return MessagePage, containing the messages and the cursor for the next page
+     * @throws SQLException
+     */
+    private MessagePage queryPage(final String queryType, final String filter, final Object[] parameters, final int limit, final MessageCursor cursor) throws SQLException {
+        final long start = System.nanoTime();
+        final Connection connection = this.readPool.acquire();
+
+        try {
+            final PreparedStatement queryStatement = this.readPool.statements(connection).prepare(pageQuery(filter, cursor != null));
+            int index = 1;
+            for (final Object parameter : parameters) {
+                queryStatement.setObject(index++, parameter);
+            }
+            if (cursor != null) {
+                queryStatement.setLong(index++, cursor.getSent());
+                queryStatement.setString(index++, cursor.getNickname());
             }
+            queryStatement.setInt(index, limit + 1);
+
+            try (ResultSet result = queryStatement.executeQuery()) {
+                final MessageSerializer serializer = MessageSerializer.start();
+                MessageCursor nextCursor = null;
+
+                while (result.next()) {
+                    if (serializer.getCount() == limit) {
+                        /* There is at least one more message, the last message of this page is the next cursor */
+                        nextCursor = new MessageCursor(serializer.getLastSent(), serializer.getLastNickname());
+                        break;
+                    }
+                    serializer.append(result);
+                }
+
+                return new MessagePage(serializer.toMessages(), nextCursor);
+            }
+        } finally {
+            this.readPool.release(connection);
+            recordQuery(queryType + "_page", start);
         }
+    }
 
-        return jsonArray;
+    /**
+     * Method that builds the SQL of a keyset paginated query.
+     * @param filter String, the WHERE condition of the query without the keyword, empty if none
+     * @param hasCursor boolean, true if the query continues from a cursor
+     * @return String, the SQL with placeholders for the filter, the cursor and the limit
+     */
+    private static String pageQuery(final String filter, final boolean hasCursor) {
+        final StringBuilder queryPrompt = new StringBuilder("SELECT * FROM messages");
+
+        if (!filter.isEmpty() || hasCursor) {
+            queryPrompt.append(" WHERE ");
+            queryPrompt.append(filter);
+            if (hasCursor) {
+                queryPrompt.append(filter.isEmpty() ? "" : " AND ");
+                queryPrompt.append("(sent, nickname) < (?, ?)");
+            }
+        }
+        queryPrompt.append(" ORDER BY sent DESC, nickname DESC LIMIT ?");
+
+        return queryPrompt.toString();
     }
-    
+
+    /**
+     * Records the duration of a message query to the metrics.
+     * @param queryType String, the type of the query, e.g. "user" or "time_page"
+     * @param start long, the System.nanoTime() when the query was started
+     */
+    private void recordQuery(final String queryType, final long start) {
+        Metrics.getInstance().observe(Metrics.DB_QUERY_DURATION, "query=\"" + queryType + "\"", System.nanoTime() - start);
+    }
+
+    /**
+     * Records whether a query was answered from the recent message index.
+     * @param hit boolean, true if the index had the result
+     * @return boolean, the given hit
+     */
+    private boolean recordRecentLookup(final boolean hit) {
+        Metrics.getInstance().increment(Metrics.RECENT_INDEX_LOOKUPS, hit ? "result=\"hit\"" : "result=\"miss\"");
+        return hit;
+    }
+
     /**
      * Method that puts a new user to the database.
      * <p>Creates Insert into users statement.
@@ -421,77 +813,75 @@ public class MessageDatabase {
      * @return boolean, true if the user was added succesfully, false if not
      * @throws SQLException
      */
-    public synchronized boolean setUser(final JSONObject user) throws SQLException {
-        System.out.println("Status: Setting new user to database");
+    public boolean setUser(final JSONObject user) throws SQLException {
+        Log.debug("Setting new user to database");
 
-        if (checkIfUserExists(user.getString("username"))) {
-            System.out.println("Error: User already exists");
-            return false;
-        }
+        /* The check and the insert must not be interleaved with another registration */
+        synchronized (this.writeLock) {
+            if (checkIfUserExists(user.getString("username"))) {
+                Log.debug("User already exists");
+                return false;
+            }
 
-        if (user.getString("username") == null || user.getString("password") == null || user.getString("email") == null) {
-            System.out.println("Error: Not all mandatory information received for creating new user");
-            return false;
-        }
+            if (user.getString("username") == null || user.getString("password") == null || user.getString("email") == null) {
+                Log.debug("Not all mandatory information received for creating new user");
+                return false;
+            }
 
-        /* Hash the password with salt */
-        try {
-            final byte bytes[] = new byte[13];
-            this.secureRandom.nextBytes(bytes);
-            final String saltBytes = new String(Base64.getEncoder().encode(bytes));
-            final String salt = "$6$" + saltBytes;
-            final String hashedPassword = Crypt.crypt(user.getString("password"), salt);      
-
-            final StringBuilder temp = new StringBuilder("insert into users ");
-            temp.append("VALUES('");
-            temp.append(user.getString("username"));
-            temp.append("','");
-            temp.append(hashedPassword);
-            temp.append("','");
-            temp.append(user.getString("email"));
-            temp.append("')");
-            final String setUserString = temp.toString();
-            
-            Statement createStatement;
-            createStatement = this.dbConnection.createStatement();
-            createStatement.executeUpdate(setUserString);
-            createStatement.close();
-            
-            return true;       
-        } catch (final Exception e) {
-            System.out.println("Error: MessageDatabase.setUser failed: " + e.getMessage());
+            /* Hash the password with salt */
+            try {
+                /* Crypt only accepts the characters [./0-9A-Za-z] in the salt, so the '+' of Base64 is replaced.
+                 * 12 random bytes give the 16 characters SHA-512 crypt uses without padding. */
+                final byte bytes[] = new byte[12];
+                this.secureRandom.nextBytes(bytes);
+                final String saltBytes = Base64.getEncoder().withoutPadding().encodeToString(bytes).replace('+', '.');
+                final String salt = "$6$" + saltBytes;
+                final String hashedPassword = Crypt.crypt(user.getString("password"), salt);      
+
+                final PreparedStatement insertStatement = this.writeStatements.prepare(INSERT_USER);
+                insertStatement.setString(1, user.getString("username"));
+                insertStatement.setString(2, hashedPassword);
+                insertStatement.setString(3, user.getString("email"));
+                insertStatement.executeUpdate();
+
+                /* The user record changed, do not trust earlier verifications of this username */
+                this.credentialCache.invalidate(user.getString("username"));
+                
+                return true;       
+            } catch (final Exception e) {
+                Log.warn("MessageDatabase.setUser failed: {}", e.getMessage());
+            }
         }
 
-        System.out.println("Error: setUser() failed");
+        Log.warn("setUser() failed");
         return false;
     }
 
     /**
      * Method that checks if the given username is in the database.
      * <p>Creates a select username from users query.
+     * <p>Uses the writer connection, the caller must hold writeLock.
      * @param givenUsername, the username to be queried as a String
      * @return boolean, true if the username was found, false if not
      * @throws SQLException
      */
-    private synchronized boolean checkIfUserExists(final String givenUsername) throws SQLException {
-        System.out.println("Status: Checking from database if given username exists");
-
-        Statement queryStatement = null;
-        ResultSet result;
+    private boolean checkIfUserExists(final String givenUsername) throws SQLException {
+        Log.debug("Checking from database if given username exists");
         
-        final String checkUser = "select username from users where username = '" + givenUsername + "'";
-        System.out.println("Status: Checking user");
+        Log.debug("Checking user");
 
         try {
-            queryStatement = this.dbConnection.createStatement();
-            result = queryStatement.executeQuery(checkUser);   
-            
-            if (result.next()) {
-                System.out.println("User with the given username found");
-                return true;
+            final PreparedStatement queryStatement = this.writeStatements.prepare(SELECT_USERNAME);
+            queryStatement.setString(1, givenUsername);
+
+            try (ResultSet result = queryStatement.executeQuery()) {
+                if (result.next()) {
+                    Log.debug("User with the given username found");
+                    return true;
+                }
             }
         } catch (final Exception e) {
-            System.out.println("Error occured while doing a check user exists query: " + e.getMessage());
+            Log.warn("Error occured while doing a check user exists query: {}", e.getMessage());
         }
 
         return false;
@@ -501,34 +891,57 @@ public class MessageDatabase {
      * Method that authenticates the user by checking if the given credentials are proper.
      * <p>Creates a select username, password from users query.
      * <p>This method is required by UserAuthenticator.checkCredentials().
+     * <p>Uses a read-only connection from the pool, so several users can be
+     * authenticated at the same time.
+     * <p>Credentials that were verified recently are found from the credential cache,
+     * in which case neither the database nor the password hash is needed.
      * @param givenUserName as String
      * @param givenPassword as String
      * @return boolean, true if the user credentials were proper, false if not/username was not found
      * @throws SQLException
      */
-    public synchronized boolean authenticateUser(final String givenUserName, final String givenPassword) throws SQLException {
-        System.out.println("Status: Authenticating user from database");
+    public boolean authenticateUser(final String givenUserName, final String givenPassword) throws SQLException {
+        Log.debug("Authenticating user from database");
 
-        Statement queryStatement = null;
-        ResultSet result;
-        
-        final String getMessagesString = "select username, password from users where username = '" + givenUserName + "'";
+        if (this.credentialCache.verify(givenUserName, givenPassword)) {
+            Log.debug("User credentials found from the credential cache");
+            Metrics.getInstance().increment(Metrics.AUTH_CACHE_REQUESTS, "result=\"hit\"");
+            return true;
+        }
+        Metrics.getInstance().increment(Metrics.AUTH_CACHE_REQUESTS, "result=\"miss\"");
+
+        String hashedPassword = null;
+        final Connection connection = this.readPool.acquire();
         
-        queryStatement = this.dbConnection.createStatement();
-        result = queryStatement.executeQuery(getMessagesString);
+        try {
+            final PreparedStatement queryStatement = this.readPool.statements(connection).prepare(SELECT_PASSWORD);
+            queryStatement.setString(1, givenUserName);
+
+            try (ResultSet result = queryStatement.executeQuery()) {
+                if (result.next()) {
+                    /* Fetch the hashed password from database */
+                    hashedPassword = result.getString("password");
+                }
+            }
+        } finally {
+            this.readPool.release(connection);
+        }
         
-        if (result.next() == false) {
-            System.out.println("Error: Could not find given username");
+        if (hashedPassword == null) {
+            Log.debug("Could not find given username");
             return false;
         } else {
-            /* Fetch the hashed password from database */
-            final String hashedPassword = result.getString("password");
             /* Check if the given plaintext password matches with the hashed one */
-            if (hashedPassword.equals(Crypt.crypt(givenPassword, hashedPassword))) {
-                System.out.println("Status: User credentials are correct");
+            final long start = System.nanoTime();
+            final String givenHash = Crypt.crypt(givenPassword, hashedPassword);
+            Metrics.getInstance().observe(Metrics.AUTH_CRYPT_DURATION, "", System.nanoTime() - start);
+
+            if (hashedPassword.equals(givenHash)) {
+                Log.debug("User credentials are correct");
+                this.credentialCache.put(givenUserName, givenPassword);
                 return true;
             } else {
-                System.out.println("Status: User credentials are incorrect");
+                Log.debug("User credentials are incorrect");
                 return false;
             }
         }
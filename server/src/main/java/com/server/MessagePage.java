@@ -0,0 +1,64 @@
+package com.server;
+
+/**
+ * Class that wraps one page of a paginated message query.
+ * <p>Contains the messages of the page and the cursor for the next page.
+ * The cursor is null if there are no more messages after this page.
+ */
+public class MessagePage {
+    /* Page size used when the client gives a cursor without a limit */
+    public static final int DEFAULT_LIMIT = 100;
+    /* Largest page size a client can request */
+    public static final int MAX_LIMIT = 1000;
+
+    private final SerializedMessages messages;
+    private final MessageCursor nextCursor;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param messages SerializedMessages, the messages of the page
+     * @param nextCursor MessageCursor, the cursor for the next page or null if this is the last page
+     */
+    public MessagePage(SerializedMessages messages, MessageCursor nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Getter for the class variable messages.
+     * @return SerializedMessages, the messages of the page
+     */
+    public SerializedMessages getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * Getter for the class variable nextCursor.
+     * @return MessageCursor, the cursor for the next page or null if this is the last page
+     */
+    public MessageCursor getNextCursor() {
+        return this.nextCursor;
+    }
+
+    /**
+     * Checks whether there are more messages after this page.
+     * @return boolean, true if there is a next page, false if not
+     */
+    public boolean hasNextPage() {
+        return this.nextCursor != null;
+    }
+
+    /**
+     * Parses and validates a page size received from the client.
+     * @param limit String, the requested page size
+     * @return int, the page size
+     * @throws IllegalArgumentException if the limit is not a number between 1 and MAX_LIMIT
+     */
+    public static int parseLimit(String limit) throws IllegalArgumentException {
+        final int value = Integer.parseInt(limit.trim());
+        if (value < 1 || value > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,626 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * Serializer that writes messages from a ResultSet straight into JSON bytes.
+ * <p>The output is the same as building a JSONObject of each row and calling
+ * JSONArray.toString(), but nothing is created per row except the Strings read
+ * from the ResultSet: the columns are read by index, the field names are copied
+ * from precomputed bytes, and numbers and the sent time are formatted directly
+ * into a byte buffer.
+ * <p>Each thread has its own serializer, so the buffer is reused by the next
+ * query of the same handler thread. A serializer must be finished before
+ * the same thread starts another one.
+ */
+public class MessageSerializer {
+    /* Buffered bytes after which a streaming query writes the buffer out */
+    public static final int STREAM_CHUNK_SIZE = 16 * 1024;
+
+    /* Buffers larger than this are not kept for the next query */
+    private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+    /* Fields of a message, in the order they are read from the row */
+    private static final int SENT = 0;
+    private static final int NICKNAME = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 3;
+    private static final int DANGERTYPE = 4;
+    private static final int AREACODE = 5;
+    private static final int PHONENUMBER = 6;
+    private static final int WEATHER = 7;
+    private static final String[] FIELDS = { "sent", "nickname", "latitude", "longitude", "dangertype", "areacode", "phonenumber", "weather" };
+
+    /* "name": of each field as UTF-8 */
+    private static final byte[][] FIELD_NAMES = new byte[FIELDS.length][];
+    /* Order of the fields for each combination of optional fields, indexed by optionalFields() */
+    private static final int[][] FIELD_ORDERS = new int[4][];
+    private static final byte[] CELSIUS = " Celsius".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8 };
+
+    private static final ThreadLocal<MessageSerializer> SERIALIZERS = ThreadLocal.withInitial(MessageSerializer::new);
+    /* Separate serializers for single messages, so that toJson() can be used while an array is being written */
+    private static final ThreadLocal<MessageSerializer> SINGLE_SERIALIZERS = ThreadLocal.withInitial(MessageSerializer::new);
+
+    static {
+        for (int field = 0; field < FIELDS.length; field++) {
+            FIELD_NAMES[field] = ("\"" + FIELDS[field] + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+        for (int optional = 0; optional < FIELD_ORDERS.length; optional++) {
+            FIELD_ORDERS[optional] = fieldOrder((optional & 1) != 0, (optional & 2) != 0);
+        }
+    }
+
+    private byte[] buffer = new byte[4096];
+    private int position;
+    private int count;
+    private boolean finished;
+    private final int[] columns = new int[FIELDS.length];
+    private long lastSent;
+    private String lastNickname;
+
+    private MessageSerializer() {}
+
+    /**
+     * Starts a JSON array of messages.
+     * @return MessageSerializer, the serializer of the current thread
+     */
+    public static MessageSerializer start() {
+        final MessageSerializer serializer = SERIALIZERS.get();
+        if (serializer.buffer.length > MAX_RETAINED_SIZE) {
+            serializer.buffer = new byte[4096];
+        }
+        serializer.columns[SENT] = 0;
+        serializer.position = 0;
+        serializer.count = 0;
+        serializer.finished = false;
+        serializer.lastNickname = null;
+        serializer.put((byte) '[');
+        return serializer;
+    }
+
+    /**
+     * Writes the current row of the ResultSet as the next message of the array.
+     * <p>Areacode and phonenumber are only included if the message has both,
+     * and weather is only included if the message has weather information.
+     * @param result ResultSet with the columns of the messages table, positioned on the row to be written
+     * @throws SQLException
+     */
+    public void append(final ResultSet result) throws SQLException {
+        if (this.columns[SENT] == 0) {
+            /* The columns are looked up on the first row, SQLite closes a ResultSet without rows at once */
+            for (int field = 0; field < FIELDS.length; field++) {
+                this.columns[field] = result.findColumn(FIELDS[field]);
+            }
+        }
+        final String phonenumber = result.getString(this.columns[PHONENUMBER]);
+        final boolean hasContact = result.getInt(this.columns[AREACODE]) > 0 && phonenumber != null;
+
+        appendMessage(result.getLong(this.columns[SENT]), result.getString(this.columns[NICKNAME]),
+            result.getDouble(this.columns[LATITUDE]), result.getDouble(this.columns[LONGITUDE]), result.getString(this.columns[DANGERTYPE]),
+            hasContact ? result.getString(this.columns[AREACODE]) : null, hasContact ? phonenumber : null,
+            result.getInt(this.columns[WEATHER]));
+    }
+
+    /**
+     * Writes a message as the next message of the array, the same way as its row
+     * would be written after it has been stored.
+     * @param message WarningMessage, a message for which isStoredAsIs() is true
+     * @throws IllegalArgumentException if the database would store the message differently
+     */
+    public void append(final WarningMessage message) throws IllegalArgumentException {
+        if (!isStoredAsIs(message)) {
+            throw new IllegalArgumentException("The areacode of the message is changed when it is stored");
+        }
+        final boolean hasContact = message.getAreacode() != null && message.getPhonenumber() != null;
+
+        appendMessage(message.dateAsInt(), message.getNickname(), message.getLatitude(), message.getLongitude(), message.getDangertype(),
+            hasContact ? message.getAreacode() : null, hasContact ? message.getPhonenumber() : null, message.getWeather());
+    }
+
+    /**
+     * Writes an already serialized message as the next message of the array.
+     * @param json byte[], one JSON object made by toJson()
+     */
+    public void appendJson(final byte[] json) {
+        ensure(json.length + 1);
+        if (this.count > 0) {
+            this.buffer[this.position++] = ',';
+        }
+        System.arraycopy(json, 0, this.buffer, this.position, json.length);
+        this.position += json.length;
+        this.count++;
+    }
+
+    /**
+     * Serializes the current row of the ResultSet into one JSON object.
+     * @param result ResultSet with the columns of the messages table, positioned on the row
+     * @return byte[], the message as a JSON object
+     * @throws SQLException
+     */
+    public static byte[] toJson(final ResultSet result) throws SQLException {
+        final MessageSerializer serializer = SINGLE_SERIALIZERS.get();
+        serializer.columns[SENT] = 0;
+        serializer.position = 0;
+        serializer.count = 0;
+        serializer.append(result);
+        return Arrays.copyOf(serializer.buffer, serializer.position);
+    }
+
+    /**
+     * Serializes a message into one JSON object, the same way as its row would be serialized.
+     * @param message WarningMessage, a message for which isStoredAsIs() is true
+     * @return byte[], the message as a JSON object
+     * @throws IllegalArgumentException if the database would store the message differently
+     */
+    public static byte[] toJson(final WarningMessage message) throws IllegalArgumentException {
+        final MessageSerializer serializer = SINGLE_SERIALIZERS.get();
+        serializer.position = 0;
+        serializer.count = 0;
+        serializer.append(message);
+        return Arrays.copyOf(serializer.buffer, serializer.position);
+    }
+
+    /**
+     * Checks whether a message reads back from the database with the values it has.
+     * <p>The areacode is stored in an INT column, so SQLite turns an areacode that looks
+     * like a number into an integer, e.g. "0358" reads back as "358". Only areacodes
+     * that are plain positive int values are certain to read back the same.
+     * @param message WarningMessage, the message to be checked
+     * @return boolean, true if toJson(message) gives the same JSON as the stored row
+     */
+    public static boolean isStoredAsIs(final WarningMessage message) {
+        final String areacode = message.getAreacode();
+        if (areacode == null || message.getPhonenumber() == null) {
+            /* Without both fields the areacode is never written */
+            return true;
+        }
+        if (areacode.isEmpty() || areacode.length() > 9 || areacode.charAt(0) == '0') {
+            return false;
+        }
+        for (int i = 0; i < areacode.length(); i++) {
+            if (areacode.charAt(i) < '0' || areacode.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the fields of a message as a JSON object in the field order of org.json.
+     * @param sent long, the sent time in Unix time format
+     * @param nickname String, the nickname
+     * @param latitude double, the latitude
+     * @param longitude double, the longitude
+     * @param dangertype String, the danger type
+     * @param areacode String, the areacode, or null if the message is written without areacode and phonenumber
+     * @param phonenumber String, the phonenumber, or null if the message is written without areacode and phonenumber
+     * @param weather int, the weather, written only if it is greater than WEATHER_UNAVAILABLE
+     */
+    private void appendMessage(final long sent, final String nickname, final double latitude, final double longitude,
+            final String dangertype, final String areacode, final String phonenumber, final int weather) {
+        final boolean hasContact = areacode != null;
+        final boolean hasWeather = weather > WarningMessage.WEATHER_UNAVAILABLE;
+
+        if (this.count > 0) {
+            put((byte) ',');
+        }
+        put((byte) '{');
+
+        boolean first = true;
+        for (final int field : FIELD_ORDERS[optionalFields(hasContact, hasWeather)]) {
+            if (!first) {
+                put((byte) ',');
+            }
+            first = false;
+
+            final byte[] name = FIELD_NAMES[field];
+            ensure(name.length);
+            System.arraycopy(name, 0, this.buffer, this.position, name.length);
+            this.position += name.length;
+
+            switch (field) {
+                case SENT:
+                    writeSent(sent);
+                    break;
+                case NICKNAME:
+                    writeString(nickname);
+                    break;
+                case LATITUDE:
+                    writeDouble(latitude);
+                    break;
+                case LONGITUDE:
+                    writeDouble(longitude);
+                    break;
+                case DANGERTYPE:
+                    writeString(dangertype);
+                    break;
+                case AREACODE:
+                    writeString(areacode);
+                    break;
+                case PHONENUMBER:
+                    writeString(phonenumber);
+                    break;
+                default:
+                    writeWeather(weather);
+                    break;
+            }
+        }
+
+        put((byte) '}');
+        this.count++;
+        this.lastSent = sent;
+        this.lastNickname = nickname;
+    }
+
+    /**
+     * Getter for the number of messages written so far.
+     * @return int, the number of messages
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Getter for the sent time of the last message written with append().
+     * @return long, the sent time in Unix time format
+     */
+    public long getLastSent() {
+        return this.lastSent;
+    }
+
+    /**
+     * Getter for the nickname of the last message written with append().
+     * @return String, the nickname, or null if no message has been written
+     */
+    public String getLastNickname() {
+        return this.lastNickname;
+    }
+
+    /**
+     * Getter for the number of bytes in the buffer.
+     * @return int, the number of bytes not yet written out
+     */
+    public int size() {
+        return this.position;
+    }
+
+    /**
+     * Ends the JSON array. Nothing can be appended after this.
+     */
+    public void finish() {
+        if (!this.finished) {
+            put((byte) ']');
+            this.finished = true;
+        }
+    }
+
+    /**
+     * Ends the JSON array and copies it out of the buffer.
+     * @return SerializedMessages, the whole array
+     */
+    public SerializedMessages toMessages() {
+        finish();
+        return new SerializedMessages(Arrays.copyOf(this.buffer, this.position), this.count);
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and empties the buffer.
+     * <p>Used for streaming a large array a part at a time.
+     * @param outputStream OutputStream, usually the response body of the exchange
+     * @throws IOException
+     */
+    public void drainTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(this.buffer, 0, this.position);
+        this.position = 0;
+    }
+
+    /**
+     * Writes the sent time as a JSON string in the format of ZonedDateTime.toString()
+     * in UTC, e.g. "2023-02-01T12:00Z" or "2023-02-01T12:00:30.250Z".
+     * @param epochMilli long, the sent time in Unix time format
+     */
+    private void writeSent(final long epochMilli) {
+        /* Days since 1970-01-01 to a date in the proleptic Gregorian calendar */
+        final long days = Math.floorDiv(epochMilli, 86_400_000L);
+        final int millisOfDay = (int) Math.floorMod(epochMilli, 86_400_000L);
+        final long shifted = days + 719_468;
+        final long era = Math.floorDiv(shifted, 146_097);
+        final long dayOfEra = shifted - era * 146_097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long monthIndex = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        final int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9999) {
+            /* Years outside four digits have a sign, leave those to java.time */
+            writeString(WarningMessage.setSent(epochMilli).atZone(ZoneOffset.UTC).toString());
+            return;
+        }
+
+        final int hour = millisOfDay / 3_600_000;
+        final int minute = millisOfDay / 60_000 % 60;
+        final int second = millisOfDay / 1000 % 60;
+        final int millis = millisOfDay % 1000;
+
+        ensure(26);
+        this.buffer[this.position++] = '"';
+        writeDigits(year, 4);
+        this.buffer[this.position++] = '-';
+        writeDigits(month, 2);
+        this.buffer[this.position++] = '-';
+        writeDigits(day, 2);
+        this.buffer[this.position++] = 'T';
+        writeDigits(hour, 2);
+        this.buffer[this.position++] = ':';
+        writeDigits(minute, 2);
+        if (second > 0 || millis > 0) {
+            this.buffer[this.position++] = ':';
+            writeDigits(second, 2);
+            if (millis > 0) {
+                this.buffer[this.position++] = '.';
+                writeDigits(millis, 3);
+            }
+        }
+        this.buffer[this.position++] = 'Z';
+        this.buffer[this.position++] = '"';
+    }
+
+    /**
+     * Writes the weather as a JSON string, e.g. "-4 Celsius".
+     * @param weather int, the temperature
+     */
+    private void writeWeather(final int weather) {
+        ensure(13 + CELSIUS.length);
+        this.buffer[this.position++] = '"';
+        writeLong(weather);
+        System.arraycopy(CELSIUS, 0, this.buffer, this.position, CELSIUS.length);
+        this.position += CELSIUS.length;
+        this.buffer[this.position++] = '"';
+    }
+
+    /**
+     * Writes a coordinate as a JSON number in the format of org.json,
+     * which is Double.toString() without a trailing ".0".
+     * <p>Numbers between 0.001 and 10^7 with at most 8 decimals and 15 significant
+     * digits, which covers coordinates, are formatted here. For them the shortest
+     * decimal that parses back to the same double is what Double.toString() gives.
+     * Other numbers are left to org.json.
+     * @param value double, the number
+     */
+    private void writeDouble(final double value) {
+        final double magnitude = Math.abs(value);
+        if (value == 0 && Double.doubleToRawLongBits(value) == 0) {
+            put((byte) '0');
+            return;
+        }
+
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+                final double scaled = magnitude * POWERS_OF_TEN[scale];
+                if (scaled >= 1e15) {
+                    break;
+                }
+                final long digits = Math.round(scaled);
+                if (digits / POWERS_OF_TEN[scale] == magnitude) {
+                    writePlainDecimal(value < 0, digits, scale);
+                    return;
+                }
+            }
+        }
+
+        writeAscii(JSONObject.valueToString(value));
+    }
+
+    /**
+     * Writes digits with the decimal point at the given scale, e.g. 6501 and 2 as 65.01.
+     * @param negative boolean, true if a minus sign is written
+     * @param digits long, all digits of the number
+     * @param scale int, the number of decimals
+     */
+    private void writePlainDecimal(final boolean negative, final long digits, final int scale) {
+        ensure(24);
+        if (negative) {
+            this.buffer[this.position++] = '-';
+        }
+        final long divisor = (long) POWERS_OF_TEN[scale];
+        writeLong(digits / divisor);
+        if (scale > 0) {
+            this.buffer[this.position++] = '.';
+            writeDigits(digits % divisor, scale);
+        }
+    }
+
+    /**
+     * Writes a String as a JSON string with the escaping of JSONObject.quote().
+     * @param value String, the value to be written
+     */
+    private void writeString(final String value) {
+        final int length = value.length();
+        /* An escaped character takes at most six bytes */
+        ensure(length * 6 + 2);
+        final byte[] bytes = this.buffer;
+        int at = this.position;
+
+        bytes[at++] = '"';
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    bytes[at++] = '\\';
+                    bytes[at++] = (byte) c;
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        bytes[at++] = '\\';
+                    }
+                    bytes[at++] = '/';
+                    break;
+                case '\b':
+                    bytes[at++] = '\\';
+                    bytes[at++] = 'b';
+                    break;
+                case '\t':
+                    bytes[at++] = '\\';
+                    bytes[at++] = 't';
+                    break;
+                case '\n':
+                    bytes[at++] = '\\';
+                    bytes[at++] = 'n';
+                    break;
+                case '\f':
+                    bytes[at++] = '\\';
+                    bytes[at++] = 'f';
+                    break;
+                case '\r':
+                    bytes[at++] = '\\';
+                    bytes[at++] = 'r';
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        bytes[at++] = '\\';
+                        bytes[at++] = 'u';
+                        bytes[at++] = HEX[c >> 12];
+                        bytes[at++] = HEX[(c >> 8) & 0xf];
+                        bytes[at++] = HEX[(c >> 4) & 0xf];
+                        bytes[at++] = HEX[c & 0xf];
+                    } else if (c < 0x80) {
+                        bytes[at++] = (byte) c;
+                    } else if (c < 0x800) {
+                        bytes[at++] = (byte) (0xc0 | (c >> 6));
+                        bytes[at++] = (byte) (0x80 | (c & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                            final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                            bytes[at++] = (byte) (0xf0 | (codePoint >> 18));
+                            bytes[at++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                            bytes[at++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                            bytes[at++] = (byte) (0x80 | (codePoint & 0x3f));
+                        } else {
+                            /* Same replacement as String.getBytes() for a lone surrogate */
+                            bytes[at++] = '?';
+                        }
+                    } else {
+                        bytes[at++] = (byte) (0xe0 | (c >> 12));
+                        bytes[at++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                        bytes[at++] = (byte) (0x80 | (c & 0x3f));
+                    }
+                    break;
+            }
+            previous = value.charAt(i);
+        }
+        bytes[at++] = '"';
+
+        this.position = at;
+    }
+
+    /**
+     * Writes a String that only has ASCII characters as it is.
+     * @param value String, the value to be written
+     */
+    private void writeAscii(final String value) {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            this.buffer[this.position++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a number in decimal without leading zeros.
+     * @param value long, the number
+     */
+    private void writeLong(final long value) {
+        ensure(20);
+        if (value < 0) {
+            this.buffer[this.position++] = '-';
+        }
+        /* Digits are collected as negative numbers, so that Long.MIN_VALUE works too */
+        long remaining = value < 0 ? value : -value;
+        int digits = 1;
+        for (long bound = -10; remaining <= bound && digits < 19; bound *= 10) {
+            digits++;
+        }
+        for (int i = this.position + digits - 1; i >= this.position; i--) {
+            this.buffer[i] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        this.position += digits;
+    }
+
+    /**
+     * Writes a non-negative number with exactly the given number of digits, padded with zeros.
+     * @param value long, the number
+     * @param digits int, the number of digits
+     */
+    private void writeDigits(long value, final int digits) {
+        for (int i = this.position + digits - 1; i >= this.position; i--) {
+            this.buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        this.position += digits;
+    }
+
+    private void put(final byte value) {
+        ensure(1);
+        this.buffer[this.position++] = value;
+    }
+
+    /**
+     * Grows the buffer so that it has room for the given number of bytes.
+     * @param needed int, the number of bytes about to be written
+     */
+    private void ensure(final int needed) {
+        if (this.position + needed > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + needed));
+        }
+    }
+
+    /**
+     * Index of the field order for the optional fields a message has.
+     * @param hasContact boolean, true if the message has areacode and phonenumber
+     * @param hasWeather boolean, true if the message has weather
+     * @return int, index to FIELD_ORDERS
+     */
+    private static int optionalFields(final boolean hasContact, final boolean hasWeather) {
+        return (hasContact ? 1 : 0) | (hasWeather ? 2 : 0);
+    }
+
+    /**
+     * Finds the order in which org.json writes the fields of a message.
+     * <p>A JSONObject writes its fields in the iteration order of its HashMap,
+     * which depends on the hashes of the names and the order they were put in.
+     * The order is taken from a JSONObject filled the way messages used to be,
+     * so the output stays the same as the JSONObject based serialization.
+     * @param hasContact boolean, true if the message has areacode and phonenumber
+     * @param hasWeather boolean, true if the message has weather
+     * @return int[], the fields in the order they are written
+     */
+    private static int[] fieldOrder(final boolean hasContact, final boolean hasWeather) {
+        final JSONObject template = new JSONObject();
+        for (int field = SENT; field <= DANGERTYPE; field++) {
+            template.put(FIELDS[field], "");
+        }
+        if (hasContact) {
+            template.put(FIELDS[AREACODE], "");
+            template.put(FIELDS[PHONENUMBER], "");
+        }
+        if (hasWeather) {
+            template.put(FIELDS[WEATHER], "");
+        }
+
+        return template.keySet().stream().mapToInt(name -> Arrays.asList(FIELDS).indexOf(name)).toArray();
+    }
+}
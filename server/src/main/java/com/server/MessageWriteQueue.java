@@ -0,0 +1,349 @@
+package com.server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind queue that inserts WarningMessages to the database in batches.
+ * <p>Handler threads put their messages to the queue with write(), which blocks
+ * until the batch containing the message has been committed. A single worker
+ * thread collects the queued messages and inserts them in one transaction with
+ * a reused PreparedStatement, so a burst of messages costs one commit instead
+ * of one commit per message.
+ * <p>A batch is flushed when it has BATCH_SIZE messages or when the oldest
+ * message in it has waited MAX_LATENCY_MS milliseconds, whichever comes first.
+ * <p>Every queued write is completed: a failure while inserting fails the writes
+ * of its batch without stopping the worker, close() fails the writes it could not
+ * commit, and a writer waits at most WRITE_TIMEOUT_MS milliseconds for the worker
+ * to take its message. A message the worker has taken is always waited for, so
+ * write() never reports a failure for a message that is committed later.
+ */
+public class MessageWriteQueue {
+    /* Largest number of messages in one transaction, can be changed with -Dmessagedatabase.batchsize=N */
+    private static final int BATCH_SIZE = Integer.getInteger("messagedatabase.batchsize", 256);
+    /* Longest time a message waits for its batch to fill, can be changed with -Dmessagedatabase.batchlatency=MS */
+    private static final long MAX_LATENCY_MS = Long.getLong("messagedatabase.batchlatency", 5);
+    /* Longest time write() waits for the commit, can be changed with -Dmessagedatabase.writetimeout=MS */
+    private static final long WRITE_TIMEOUT_MS = Long.getLong("messagedatabase.writetimeout", 30_000);
+
+    private static final String INSERT_MESSAGE =
+        "INSERT INTO messages (sent, nickname, latitude, longitude, dangertype, areacode, phonenumber, weather) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Connection connection;
+    private final Object writeLock;
+    private final long writeTimeoutMs;
+    private final PreparedStatement insertStatement;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Message waiting in the queue together with the future that is
+     * completed when the message has been committed.
+     */
+    private static class PendingWrite {
+        private final WarningMessage message;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingWrite(WarningMessage message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Constructor that prepares the insert statement and starts the worker thread.
+     * @param connection Connection, the writer connection of the database
+     * @param writeLock Object, the lock that serializes all use of the writer connection
+     * @throws SQLException if the insert statement could not be prepared
+     */
+    public MessageWriteQueue(Connection connection, Object writeLock) throws SQLException {
+        this(connection, writeLock, WRITE_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructor with the longest time a writer waits for the worker to take its message.
+     * @param connection Connection, the writer connection of the database
+     * @param writeLock Object, the lock that serializes all use of the writer connection
+     * @param writeTimeoutMs long, the timeout in milliseconds
+     * @throws SQLException if the insert statement could not be prepared
+     */
+    MessageWriteQueue(Connection connection, Object writeLock, long writeTimeoutMs) throws SQLException {
+        this.connection = connection;
+        this.writeLock = writeLock;
+        this.writeTimeoutMs = writeTimeoutMs;
+        this.insertStatement = connection.prepareStatement(INSERT_MESSAGE);
+        this.worker = new Thread(this::run, "message-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Puts the message to the queue and waits until its batch has been committed.
+     * @param message WarningMessage, the message to be inserted
+     * @throws SQLException if the message could not be inserted
+     */
+    public void write(WarningMessage message) throws SQLException {
+        if (!this.running) {
+            throw new SQLException("The message write queue has been closed");
+        }
+
+        final PendingWrite pendingWrite = new PendingWrite(message);
+        this.queue.add(pendingWrite);
+        /* close() may have drained the queue between the check above and the add */
+        if (!this.running && this.queue.remove(pendingWrite)) {
+            throw new SQLException("The message write queue has been closed");
+        }
+
+        try {
+            try {
+                pendingWrite.result.get(this.writeTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                /* Only a message that is still queued can be given up, a taken one may still be committed */
+                if (this.queue.remove(pendingWrite)) {
+                    throw new SQLException("Timed out waiting for the message to be committed");
+                }
+                pendingWrite.result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the message to be committed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Failed to insert the message: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Inserts all given messages in one transaction in the calling thread.
+     * <p>Used for bulk requests, whose messages must not be split between the batches
+     * of the worker thread. As in a batch, a message that violates a constraint only
+     * fails its own insert.
+     * @param messages List of the messages to be inserted
+     * @return List with null for each inserted message and the error for each failed one
+     * @throws SQLException if the queue has been closed or the transaction could not be committed
+     */
+    public List<SQLException> writeAll(List<WarningMessage> messages) throws SQLException {
+        if (!this.running) {
+            throw new SQLException("The message write queue has been closed");
+        }
+
+        final List<PendingWrite> batch = new ArrayList<>(messages.size());
+        for (final WarningMessage message : messages) {
+            batch.add(new PendingWrite(message));
+        }
+        if (!flush(batch)) {
+            try {
+                batch.get(0).result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+            }
+            throw new SQLException("Failed to commit the messages");
+        }
+
+        final List<SQLException> errors = new ArrayList<>(batch.size());
+        for (final PendingWrite pendingWrite : batch) {
+            try {
+                pendingWrite.result.getNow(null);
+                errors.add(null);
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof SQLException)) {
+                    throw new SQLException("Failed to insert the messages: " + e.getCause().getMessage(), e.getCause());
+                }
+                errors.add((SQLException) e.getCause());
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Stops the worker thread after it has written all messages that are already queued.
+     * <p>Writes that are still in the queue after that are failed, so no writer is left waiting.
+     * If the worker is still writing a batch, the insert statement is left open for it.
+     */
+    public void close() {
+        this.running = false;
+        this.worker.interrupt();
+
+        try {
+            this.worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<PendingWrite> leftover = new ArrayList<>();
+        this.queue.drainTo(leftover);
+        failAll(leftover, new SQLException("The message write queue has been closed"));
+
+        if (this.worker.isAlive()) {
+            Log.warn("The message writer is still writing a batch, its insert statement is not closed");
+            return;
+        }
+        try {
+            this.insertStatement.close();
+        } catch (SQLException e) {
+            Log.warn("Failed to close the message insert statement: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Main loop of the worker thread. Waits for the first message of a batch,
+     * then collects more messages until the batch is full or the latency runs out.
+     */
+    private void run() {
+        final List<PendingWrite> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final PendingWrite first = this.running ? this.queue.take() : this.queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_LATENCY_MS);
+                while (batch.size() < BATCH_SIZE) {
+                    final long remaining = deadline - System.nanoTime();
+                    final PendingWrite next = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : this.queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                /* close() was called, write whatever has been collected and drain the rest */
+                this.queue.drainTo(batch, BATCH_SIZE - batch.size());
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    /* The worker must keep running, or every later write would wait for nothing */
+                    Log.error("Failed to write a batch of {} messages: {}", batch.size(), e.getMessage());
+                    failAll(batch, new SQLException("Failed to insert the message: " + e.getMessage(), e));
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts the given messages in one transaction.
+     * <p>A message that violates a constraint (e.g. a duplicate primary key) only
+     * fails its own write, the other messages of the batch are still committed.
+     * An unexpected RuntimeException while binding or inserting a message is
+     * handled the same way. If the commit itself fails, every message of the batch fails.
+     * @param batch List of the messages to be inserted
+     * @return true if the transaction was committed, false if it was rolled back
+     */
+    private boolean flush(final List<PendingWrite> batch) {
+        final List<SQLException> errors = new ArrayList<>(batch.size());
+        final long start = System.nanoTime();
+
+        synchronized (this.writeLock) {
+            try {
+                this.connection.setAutoCommit(false);
+
+                for (final PendingWrite pendingWrite : batch) {
+                    try {
+                        bindMessage(pendingWrite.message);
+                        this.insertStatement.executeUpdate();
+                        errors.add(null);
+                    } catch (SQLException e) {
+                        errors.add(e);
+                    } catch (RuntimeException e) {
+                        errors.add(new SQLException("Failed to insert the message: " + e.getMessage(), e));
+                    }
+                }
+
+                this.connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                Log.error("Failed to commit a batch of {} messages: {}", batch.size(), e.getMessage());
+                rollback();
+                failAll(batch, e instanceof SQLException ? (SQLException) e : new SQLException("Failed to commit the messages: " + e.getMessage(), e));
+                return false;
+            } finally {
+                try {
+                    this.connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    Log.warn("Failed to restore auto-commit on the writer connection: {}", e.getMessage());
+                }
+            }
+        }
+
+        Metrics.getInstance().observe(Metrics.DB_BATCH_COMMIT_DURATION, "", System.nanoTime() - start);
+        Metrics.getInstance().add(Metrics.DB_BATCH_MESSAGES, "", batch.size());
+        Log.debug("Committed a batch of {} messages", batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors.get(i) == null) {
+                batch.get(i).result.complete(null);
+            } else {
+                batch.get(i).result.completeExceptionally(errors.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binds the fields of the message to the parameters of the insert statement.
+     * @param message WarningMessage, the message to be inserted
+     * @throws SQLException
+     */
+    private void bindMessage(final WarningMessage message) throws SQLException {
+        this.insertStatement.setLong(1, message.dateAsInt());
+        this.insertStatement.setString(2, message.getNickname());
+        this.insertStatement.setDouble(3, message.getLatitude());
+        this.insertStatement.setDouble(4, message.getLongitude());
+        this.insertStatement.setString(5, message.getDangertype());
+        if (message.getAreacode() != null) {
+            this.insertStatement.setString(6, message.getAreacode());
+        } else {
+            this.insertStatement.setNull(6, Types.INTEGER);
+        }
+        if (message.getPhonenumber() != null) {
+            this.insertStatement.setString(7, message.getPhonenumber());
+        } else {
+            this.insertStatement.setNull(7, Types.VARCHAR);
+        }
+        this.insertStatement.setInt(8, message.getWeather());
+    }
+
+    /**
+     * Fails the writes that could not be committed.
+     * @param writes List of the writes
+     * @param error SQLException, the error their writers get
+     */
+    private static void failAll(final List<PendingWrite> writes, final SQLException error) {
+        for (final PendingWrite pendingWrite : writes) {
+            pendingWrite.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Rolls back the current transaction of the writer connection after a failed commit.
+     */
+    private void rollback() {
+        try {
+            this.connection.rollback();
+        } catch (SQLException e) {
+            Log.error("Failed to roll back the message batch: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the server's metrics.
+ * <p>Supports counters, latency histograms and gauges. A metric is identified by its
+ * name and a label string such as 'operation="get"'. All metrics are exposed in
+ * Prometheus text format by MetricsHandler on the /metrics context.
+ * <p>Recording a value only touches a ConcurrentHashMap lookup and a LongAdder,
+ * so it is cheap enough to call on every request.
+ */
+public class Metrics {
+    /* Names of the metrics recorded by the server */
+    public static final String HTTP_REQUESTS = "http_requests_total";
+    public static final String HTTP_REQUEST_DURATION = "http_request_duration_seconds";
+    public static final String DB_QUERY_DURATION = "db_query_duration_seconds";
+    public static final String DB_INSERT_DURATION = "db_insert_duration_seconds";
+    public static final String DB_BATCH_COMMIT_DURATION = "db_batch_commit_duration_seconds";
+    public static final String DB_BATCH_MESSAGES = "db_batch_messages_total";
+    public static final String DB_STATEMENTS = "db_statements_total";
+    public static final String AUTH_CRYPT_DURATION = "auth_crypt_duration_seconds";
+    public static final String AUTH_CACHE_REQUESTS = "auth_cache_requests_total";
+    public static final String WEATHER_CALL_DURATION = "weather_call_duration_seconds";
+    public static final String WEATHER_CACHE_LOOKUPS = "weather_cache_lookups_total";
+    public static final String HTTP_IN_FLIGHT = "http_requests_in_flight";
+    public static final String EXECUTOR_QUEUE_DEPTH = "server_executor_queue_depth";
+    public static final String EXECUTOR_THREADS = "server_executor_threads";
+    public static final String EXECUTOR_REJECTIONS = "server_executor_rejections_total";
+    public static final String LOG_DROPPED = "log_dropped_total";
+    public static final String RECENT_INDEX_LOOKUPS = "recent_index_lookups_total";
+    public static final String RECENT_INDEX_MESSAGES = "recent_index_messages";
+    public static final String LISTING_CACHE_LOOKUPS = "listing_cache_lookups_total";
+
+    /* Created when the class is loaded, so getInstance() needs no lock on the hot path */
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * All series of one metric name, together with its type and help text.
+     */
+    private static class Family {
+        private final String type;
+        private final String help;
+        private final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        private Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    /**
+     * Public getter for the singleton instance.
+     * @return Metrics object
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /* Private constructor for Singleton implementation, describes the known metrics */
+    private Metrics() {
+        describe(HTTP_REQUESTS, "counter", "Number of handled HTTP requests by context, operation and status code.");
+        describe(HTTP_REQUEST_DURATION, "histogram", "Time spent handling HTTP requests by context and operation.");
+        describe(DB_QUERY_DURATION, "histogram", "Time spent running message queries by query type.");
+        describe(DB_INSERT_DURATION, "histogram", "Time from queuing a message until its batch was committed.");
+        describe(DB_BATCH_COMMIT_DURATION, "histogram", "Time spent inserting and committing one batch of messages.");
+        describe(DB_BATCH_MESSAGES, "counter", "Number of messages written by the batch writer.");
+        describe(DB_STATEMENTS, "counter", "Number of statement lookups in the statement caches.");
+        describe(AUTH_CRYPT_DURATION, "histogram", "Time spent verifying passwords with Crypt.");
+        describe(AUTH_CACHE_REQUESTS, "counter", "Number of credential cache lookups by result.");
+        describe(WEATHER_CALL_DURATION, "histogram", "Time spent calling the weather service.");
+        describe(WEATHER_CACHE_LOOKUPS, "counter", "Number of weather cache lookups by result.");
+        describe(HTTP_IN_FLIGHT, "gauge", "Number of HTTP requests that are being handled.");
+        describe(EXECUTOR_QUEUE_DEPTH, "gauge", "Number of requests waiting for a worker thread.");
+        describe(EXECUTOR_THREADS, "gauge", "Number of worker threads by state.");
+        describe(EXECUTOR_REJECTIONS, "counter", "Number of requests shed because the queue was full.");
+        describe(LOG_DROPPED, "counter", "Number of log messages dropped because the log buffer was full.");
+        describe(RECENT_INDEX_LOOKUPS, "counter", "Number of recent message index lookups by result.");
+        describe(RECENT_INDEX_MESSAGES, "gauge", "Number of messages in the recent message index.");
+        describe(LISTING_CACHE_LOOKUPS, "counter", "Number of message listing cache lookups by result.");
+    }
+
+    /**
+     * Registers the type and help text of a metric.
+     * @param name String, the name of the metric
+     * @param type String, the Prometheus type: "counter", "gauge" or "histogram"
+     * @param help String, the description of the metric
+     */
+    public void describe(String name, String type, String help) {
+        this.families.putIfAbsent(name, new Family(type, help));
+    }
+
+    /**
+     * Records a duration to a histogram.
+     * @param name String, the name of the histogram
+     * @param labels String, the labels of the series, e.g. 'query="user"', or empty
+     * @param nanos long, the observed duration in nanoseconds
+     */
+    public void observe(String name, String labels, long nanos) {
+        ((Histogram) series(name, labels, "histogram")).observeNanos(nanos);
+    }
+
+    /**
+     * Adds one to a counter.
+     * @param name String, the name of the counter
+     * @param labels String, the labels of the series, or empty
+     */
+    public void increment(String name, String labels) {
+        add(name, labels, 1);
+    }
+
+    /**
+     * Adds the given amount to a counter.
+     * @param name String, the name of the counter
+     * @param labels String, the labels of the series, or empty
+     * @param amount long, the amount to add
+     */
+    public void add(String name, String labels, long amount) {
+        ((LongAdder) series(name, labels, "counter")).add(amount);
+    }
+
+    /**
+     * Registers a series whose value is read from the given supplier when the metrics are rendered.
+     * <p>Used for values that are already counted elsewhere, such as queue sizes or cache counters.
+     * @param name String, the name of the metric, which must have been described
+     * @param labels String, the labels of the series, or empty
+     * @param supplier Supplier of the current value
+     */
+    public void register(String name, String labels, Supplier<Number> supplier) {
+        family(name, "gauge").series.put(labels, supplier);
+    }
+
+    /**
+     * Renders all metrics in Prometheus text format.
+     * @return String, the metrics
+     */
+    public String render() {
+        final StringBuilder builder = new StringBuilder(4096);
+
+        for (final Map.Entry<String, Family> entry : new TreeMap<>(this.families).entrySet()) {
+            final String name = entry.getKey();
+            final Family family = entry.getValue();
+            if (family.series.isEmpty()) {
+                continue;
+            }
+
+            builder.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (final Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                final String labels = series.getKey();
+                final Object value = series.getValue();
+
+                if (value instanceof Histogram) {
+                    ((Histogram) value).render(builder, name, labels);
+                } else {
+                    builder.append(name);
+                    if (!labels.isEmpty()) {
+                        builder.append('{').append(labels).append('}');
+                    }
+                    builder.append(' ');
+                    if (value instanceof LongAdder) {
+                        builder.append(((LongAdder) value).sum());
+                    } else {
+                        @SuppressWarnings("unchecked")
+                        final Number number = ((Supplier<Number>) value).get();
+                        builder.append(number);
+                    }
+                    builder.append('\n');
+                }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Gets the series with the given labels, creating it on first use.
+     * @param name String, the name of the metric
+     * @param labels String, the labels of the series
+     * @param type String, the type used if the metric has not been described
+     * @return Object, a Histogram for histograms and a LongAdder for counters
+     */
+    private Object series(String name, String labels, String type) {
+        final Family family = family(name, type);
+        Object value = family.series.get(labels);
+        if (value == null) {
+            value = family.series.computeIfAbsent(labels, key -> "histogram".equals(family.type) ? new Histogram() : new LongAdder());
+        }
+        return value;
+    }
+
+    /**
+     * Gets the family of the given metric, creating it without help text on first use.
+     * @param name String, the name of the metric
+     * @param type String, the type used if the metric has not been described
+     * @return Family of the metric
+     */
+    private Family family(String name, String type) {
+        Family family = this.families.get(name);
+        if (family == null) {
+            family = this.families.computeIfAbsent(name, key -> new Family(type, name));
+        }
+        return family;
+    }
+}
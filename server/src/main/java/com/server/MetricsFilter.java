@@ -0,0 +1,94 @@
+package com.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Filter that records the count, status code and latency of every request of a context.
+ * <p>Handlers can name the operation of a request with setOperation(), e.g. "post_warning".
+ * If it is not set, the request method is used: "get", "post" or "other" for any other
+ * method, so a client cannot add label values of its own to the metrics.
+ * <p>The operation is kept in a ThreadLocal instead of an exchange attribute, because
+ * HttpExchange attributes are shared by all exchanges of the same context.
+ * The filter and the handler always run in the same thread.
+ */
+public class MetricsFilter extends Filter {
+    /* Operation of the request that is being handled in the current thread */
+    private static final ThreadLocal<String> OPERATION = new ThreadLocal<>();
+    /* Number of requests inside the filters of all contexts */
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+
+    static {
+        Metrics.getInstance().register(Metrics.HTTP_IN_FLIGHT, "", IN_FLIGHT::sum);
+    }
+
+    private final String context;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param context String, the path of the context, used as a label
+     */
+    public MetricsFilter(String context) {
+        this.context = context;
+    }
+
+    /**
+     * Passes the request to the handler and records how long it took and which status code was sent.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @param chain Chain, the rest of the filters and the handler
+     */
+    @Override
+    public void doFilter(HttpExchange exchangeObject, Chain chain) throws IOException {
+        final long start = System.nanoTime();
+        OPERATION.remove();
+        IN_FLIGHT.increment();
+
+        try {
+            chain.doFilter(exchangeObject);
+        } finally {
+            IN_FLIGHT.decrement();
+            final String named = OPERATION.get();
+            final String operation = named != null ? named : methodLabel(exchangeObject.getRequestMethod());
+            OPERATION.remove();
+            final String labels = "context=\"" + this.context + "\",operation=\"" + operation + "\"";
+            final Metrics metrics = Metrics.getInstance();
+
+            metrics.observe(Metrics.HTTP_REQUEST_DURATION, labels, System.nanoTime() - start);
+            metrics.increment(Metrics.HTTP_REQUESTS, labels + ",code=\"" + exchangeObject.getResponseCode() + "\"");
+        }
+    }
+
+    /**
+     * Maps the request method to one of a fixed set of label values.
+     * @param method String, the request method sent by the client
+     * @return String, "get", "post" or "other"
+     */
+    static String methodLabel(String method) {
+        if ("GET".equalsIgnoreCase(method)) {
+            return "get";
+        } else if ("POST".equalsIgnoreCase(method)) {
+            return "post";
+        }
+        return "other";
+    }
+
+    /**
+     * Names the operation of the request that is being handled in the current thread.
+     * @param operation String, the name of the operation used as a label
+     */
+    public static void setOperation(String operation) {
+        OPERATION.set(operation);
+    }
+
+    /**
+     * Returns a short description of the filter.
+     * @return String, the description
+     */
+    @Override
+    public String description() {
+        return "Records request metrics for " + this.context;
+    }
+}
@@ -0,0 +1,36 @@
+package com.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * HttpHandler class that exposes the server's metrics in Prometheus text format.
+ * <p>Only GET requests are accepted. The context does not require authentication.
+ */
+public class MetricsHandler implements HttpHandler {
+    public MetricsHandler() {}
+
+    /**
+     * Handle method that sends the current metrics to the client.
+     * @param exchangeObject: Received from the client.
+     */
+    @Override
+    public void handle(final HttpExchange exchangeObject) throws IOException {
+        if (!exchangeObject.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchangeObject.sendResponseHeaders(405, -1);
+            exchangeObject.close();
+            return;
+        }
+
+        final byte[] bytes = Metrics.getInstance().render().getBytes(StandardCharsets.UTF_8);
+        exchangeObject.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchangeObject.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchangeObject.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.server;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of the most recent messages, ordered by the primary key (sent, nickname).
+ * <p>Each message is kept as the JSON object it is sent to the client as, so a query
+ * answered from the index only copies bytes. MessageDatabase writes every committed
+ * message and weather update through to the index.
+ * <p>The index has a floor: it contains every message of the database whose sent time
+ * is at least the floor. A query whose whole range is above the floor is answered from
+ * memory, anything older falls back to SQLite. The floor only rises, when messages older
+ * than the retention window or over the size bound are evicted, and it is raised before
+ * the messages are removed. A reader checks the floor again after reading, so a read that
+ * raced with an eviction is never answered with missing messages.
+ * <p>Reads never lock. Writers only synchronize with each other while evicting.
+ */
+public class RecentMessageIndex {
+    /* Floor of an index that contains the whole table */
+    private static final long COMPLETE = Long.MIN_VALUE;
+
+    private final long retentionMillis;
+    private final int maxMessages;
+    private final ConcurrentSkipListMap<Key, byte[]> messages = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object evictionLock = new Object();
+    /* Every message of the database with sent >= floor is in the index, nothing before load() */
+    private volatile long floor = Long.MAX_VALUE;
+
+    /**
+     * Primary key of a message. Nicknames are compared by code point, which is the
+     * order of their UTF-8 bytes and therefore the order SQLite uses.
+     */
+    static final class Key implements Comparable<Key> {
+        private final long sent;
+        private final String nickname;
+
+        Key(long sent, String nickname) {
+            this.sent = sent;
+            this.nickname = nickname;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            if (this.sent != other.sent) {
+                return Long.compare(this.sent, other.sent);
+            }
+            return compareCodePoints(this.nickname, other.nickname);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && compareTo((Key) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.sent) * 31 + this.nickname.hashCode();
+        }
+    }
+
+    /**
+     * Constructor that initializes the bounds of the index.
+     * @param retentionMillis long, how old messages are kept, compared to the current time
+     * @param maxMessages int, the largest number of messages kept
+     */
+    public RecentMessageIndex(long retentionMillis, int maxMessages) {
+        this.retentionMillis = retentionMillis;
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Getter for the oldest sent time from which on messages are kept.
+     * @return long, the current time minus the retention window
+     */
+    public long getCutoff() {
+        return System.currentTimeMillis() - this.retentionMillis;
+    }
+
+    /**
+     * Getter for the largest number of messages kept.
+     * @return int, the size bound
+     */
+    public int getMaxMessages() {
+        return this.maxMessages;
+    }
+
+    /**
+     * Getter for the number of messages in the index.
+     * @return int, the number of messages
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Fills the index with the messages loaded from the database at startup.
+     * @param loaded NavigableMap of the newest messages of the database not older than getCutoff(),
+     * extra messages over the size bound are evicted
+     * @param complete boolean, true if the database has no messages older than getCutoff()
+     */
+    void load(NavigableMap<Key, byte[]> loaded, boolean complete) {
+        synchronized (this.evictionLock) {
+            this.messages.clear();
+            this.messages.putAll(loaded);
+            this.size.set(loaded.size());
+            this.floor = complete ? COMPLETE : getCutoff();
+            evict();
+        }
+    }
+
+    /**
+     * Checks whether a message with the given sent time belongs to the index.
+     * @param sent long, the sent time in Unix time format
+     * @return boolean, true if the sent time is not below the floor
+     */
+    public boolean covers(long sent) {
+        return sent >= this.floor;
+    }
+
+    /**
+     * Checks whether the index has the message with the given primary key.
+     * @param sent long, the sent time of the message in Unix time format
+     * @param nickname String, the nickname of the message
+     * @return boolean, true if the message is in the index
+     */
+    public boolean contains(long sent, String nickname) {
+        return this.messages.containsKey(new Key(sent, nickname));
+    }
+
+    /**
+     * Adds a message that has been committed to the database.
+     * @param sent long, the sent time of the message in Unix time format
+     * @param nickname String, the nickname of the message
+     * @param json byte[], the message as a JSON object
+     */
+    public void add(long sent, String nickname, byte[] json) {
+        if (sent < this.floor) {
+            /* Below the floor the database is used anyway */
+            return;
+        }
+        if (this.messages.put(new Key(sent, nickname), json) == null) {
+            this.size.incrementAndGet();
+        }
+
+        synchronized (this.evictionLock) {
+            evict();
+        }
+    }
+
+    /**
+     * Replaces a message whose weather was updated in the database.
+     * @param sent long, the sent time of the message in Unix time format
+     * @param nickname String, the nickname of the message
+     * @param json byte[], the updated message as a JSON object
+     */
+    public void replace(long sent, String nickname, byte[] json) {
+        this.messages.replace(new Key(sent, nickname), json);
+    }
+
+    /**
+     * Gives up the messages up to the given sent time, used when a committed message
+     * could not be added, so that queries of its time fall back to the database.
+     * @param sent long, the sent time of the message in Unix time format
+     */
+    public void forget(long sent) {
+        synchronized (this.evictionLock) {
+            if (this.floor <= sent) {
+                this.floor = sent + 1;
+            }
+            removeBelowFloor();
+        }
+    }
+
+    /**
+     * Removes all messages and marks the index as empty, so every query falls back to the database.
+     */
+    public void clear() {
+        synchronized (this.evictionLock) {
+            this.floor = Long.MAX_VALUE;
+            this.messages.clear();
+            this.size.set(0);
+        }
+    }
+
+    /**
+     * Gets the messages posted in a time interval in the order of the primary key,
+     * which is the order the database returns them in.
+     * @param timeStart long, the start of the interval in Unix time format, inclusive
+     * @param timeEnd long, the end of the interval in Unix time format, inclusive
+     * @return SerializedMessages, or null if the interval is not covered by the index
+     */
+    public SerializedMessages getMessagesByTimeInterval(long timeStart, long timeEnd) {
+        if (timeStart < this.floor) {
+            return null;
+        }
+
+        final MessageSerializer serializer = MessageSerializer.start();
+        if (timeStart <= timeEnd) {
+            final NavigableMap<Key, byte[]> range = timeEnd == Long.MAX_VALUE
+                ? this.messages.tailMap(new Key(timeStart, ""), true)
+                : this.messages.subMap(new Key(timeStart, ""), true, new Key(timeEnd + 1, ""), false);
+            for (final byte[] json : range.values()) {
+                serializer.appendJson(json);
+            }
+        }
+
+        /* An eviction while reading may have removed messages of the interval */
+        return timeStart < this.floor ? null : serializer.toMessages();
+    }
+
+    /**
+     * Gets one page of messages from newest to oldest, optionally limited to a time interval.
+     * <p>The page is answered from the index if it fills up above the floor, or if the
+     * index has all messages of the interval, or of the whole table without an interval.
+     * @param timeStart long, the start of the interval in Unix time format, Long.MIN_VALUE for no interval
+     * @param timeEnd long, the end of the interval in Unix time format, Long.MAX_VALUE for no interval
+     * @param limit int, the maximum number of messages on the page
+     * @param cursor MessageCursor, the cursor of the previous page, or null for the first page
+     * @return MessagePage, or null if the page is not covered by the index
+     */
+    public MessagePage getMessagesPage(long timeStart, long timeEnd, int limit, MessageCursor cursor) {
+        final long startFloor = this.floor;
+        if (startFloor == Long.MAX_VALUE) {
+            return null;
+        }
+
+        /* Only the messages above both the floor and the interval start are looked at */
+        final Key lowest = new Key(Math.max(timeStart, startFloor), "");
+        Key highest = timeEnd == Long.MAX_VALUE ? null : new Key(timeEnd + 1, "");
+        if (cursor != null) {
+            final Key cursorKey = new Key(cursor.getSent(), cursor.getNickname());
+            if (highest == null || cursorKey.compareTo(highest) < 0) {
+                highest = cursorKey;
+            }
+        }
+        if (highest != null && highest.compareTo(lowest) <= 0) {
+            return timeStart >= startFloor ? new MessagePage(MessageSerializer.start().toMessages(), null) : null;
+        }
+
+        final NavigableMap<Key, byte[]> range = highest == null
+            ? this.messages.tailMap(lowest, true)
+            : this.messages.subMap(lowest, true, highest, false);
+
+        final MessageSerializer serializer = MessageSerializer.start();
+        MessageCursor nextCursor = null;
+        Key last = null;
+        for (final Map.Entry<Key, byte[]> entry : range.descendingMap().entrySet()) {
+            if (serializer.getCount() == limit) {
+                /* There is at least one more message, the last message of this page is the next cursor */
+                nextCursor = new MessageCursor(last.sent, last.nickname);
+                break;
+            }
+            serializer.appendJson(entry.getValue());
+            last = entry.getKey();
+        }
+
+        final long endFloor = this.floor;
+        if (nextCursor != null) {
+            /* A full page is correct if no message of it was evicted while reading */
+            return endFloor <= last.sent ? new MessagePage(serializer.toMessages(), nextCursor) : null;
+        }
+        /* The page ran out, which is the end only if the index has everything down to the interval start */
+        return endFloor <= timeStart ? new MessagePage(serializer.toMessages(), null) : null;
+    }
+
+    /**
+     * Raises the floor past the messages that are too old or over the size bound, and removes them.
+     * <p>Must be called holding evictionLock.
+     */
+    private void evict() {
+        /* An index that has the whole table stays complete until one of its messages gets too old */
+        final Map.Entry<Key, byte[]> first = this.messages.firstEntry();
+        final long cutoff = getCutoff();
+        if (first != null && first.getKey().sent < cutoff && this.floor < cutoff) {
+            this.floor = cutoff;
+        }
+
+        while (this.size.get() > this.maxMessages) {
+            final Map.Entry<Key, byte[]> oldest = this.messages.firstEntry();
+            if (oldest == null) {
+                break;
+            }
+            /* All messages with the same sent time go together, the floor is a sent time */
+            if (this.floor <= oldest.getKey().sent) {
+                this.floor = oldest.getKey().sent + 1;
+            }
+            removeBelowFloor();
+        }
+        removeBelowFloor();
+    }
+
+    /**
+     * Removes the messages below the floor.
+     */
+    private void removeBelowFloor() {
+        Map.Entry<Key, byte[]> oldest;
+        while ((oldest = this.messages.firstEntry()) != null && oldest.getKey().sent < this.floor) {
+            if (this.messages.remove(oldest.getKey()) != null) {
+                this.size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Compares two Strings by their code points.
+     * @param first String
+     * @param second String
+     * @return int, negative, zero or positive like compareTo()
+     */
+    static int compareCodePoints(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            final int a = first.codePointAt(i);
+            final int b = second.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+}
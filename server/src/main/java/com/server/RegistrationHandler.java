@@ -1,13 +1,8 @@
 package com.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
 
 import org.json.JSONObject;
 
@@ -31,12 +26,12 @@ public class RegistrationHandler implements HttpHandler {
     @Override
     public void handle(HttpExchange exchangeObject) {
         Headers headers = exchangeObject.getRequestHeaders();
-        String newUser = "";
         int code = 0;
         JSONObject usertoJSON;
         MessageDatabase messageDatabase = MessageDatabase.getInstance();
 
-        System.out.println("Status: Request handled in thread " + Thread.currentThread().getId());
+        Log.debug("Handling a registration request");
+        MetricsFilter.setOperation("post_registration");
 
         /* Check if the request is POST */
         code = checkRequestForPost(exchangeObject);
@@ -51,42 +46,35 @@ public class RegistrationHandler implements HttpHandler {
             code = checkContentTypeContents(headers);
         }
 
-        /* Read the input stream */
+        /* Parse the user information straight from the input stream */
         if (code == 0) {
             try {
-                InputStream inputStream = exchangeObject.getRequestBody();
-                newUser = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)).lines().collect(Collectors.joining("\n"));
-                inputStream.close();
-                System.out.println("Success: User information data received");
-            } catch (Exception e) {
-                System.out.println("Error: Exception occured while processing input stream");
-            }
-        }
-
-        /* Check the validity of the content, add a new user if OK */
-        if (code == 0) {
-            if ((code = checkUserFormat(newUser.toString())) == 200) {
-                try {
-                    usertoJSON = new JSONObject(newUser);
-                    code = checkUserContent(usertoJSON);
-                    if (code == 200) {
-                        if (messageDatabase.setUser(usertoJSON)) {
-                            System.out.println("Success: RegistrationHandler added the new user successfully");
-                        } else {
-                            System.out.println("Error 409: User could not be added");
-                            code = 409;
-                        }
+                usertoJSON = RequestBody.parse(exchangeObject);
+                Log.debug("User information data received");
+
+                /* Check the validity of the content, add a new user if OK */
+                code = checkUserContent(usertoJSON);
+                if (code == 200) {
+                    if (messageDatabase.setUser(usertoJSON)) {
+                        Log.debug("RegistrationHandler added the new user successfully");
+                    } else {
+                        Log.debug("User could not be added, responding 409");
+                        code = 409;
                     }
-                } catch (Exception e) {
-                    System.out.println("Error: User JSON parsing failed: " + e.getMessage());
-                    code = 500;
-                }  
+                }
+            } catch (InvalidRequestException e) {
+                Log.debug("Rejected the registration: {}", e.getMessage());
+                /* A body that is not JSON has always been answered with 500 by the registration service */
+                code = e.getCode() == 400 ? 500 : e.getCode();
+            } catch (Exception e) {
+                Log.warn("User JSON parsing failed: {}", e.getMessage());
+                code = 500;
             }
         }
 
         /* handle() method is now finished. Response code is ready. Time to send it. */
         sendResponse(code, exchangeObject);
-        System.out.println("Status: Response " + code + " has been sent, registration handle ends");
+        Log.debug("Response {} has been sent, registration handle ends", code);
     }
 
     /** 
@@ -97,10 +85,10 @@ public class RegistrationHandler implements HttpHandler {
      */
     private int checkRequestForPost(HttpExchange exchangeObject) {
         if (exchangeObject.getRequestMethod().equalsIgnoreCase("POST")) {
-            System.out.println("Success: The request is POST");
+            Log.debug("The request is POST");
             return 0;
         }
-        System.out.println("Error 400: The request was not POST");
+        Log.debug("The request was not POST, responding 400");
         return 400;
     }
 
@@ -112,10 +100,10 @@ public class RegistrationHandler implements HttpHandler {
      */
     private int checkContentTypeAvailability(Headers headers) {
         if (headers.containsKey("Content-Type")) {
-            System.out.println("Success: Content-Type found from header");
+            Log.debug("Content-Type found from header");
             return 0;
         }
-        System.out.println("Error 411: No content type found from the header");
+        Log.debug("No content type found from the header, responding 411");
         return 411;
     }
 
@@ -129,28 +117,13 @@ public class RegistrationHandler implements HttpHandler {
     private int checkContentTypeContents(Headers headers) {
         String contentType = headers.get("Content-Type").get(0);
         if (contentType.equalsIgnoreCase("application/json")) {
-            System.out.println("Success: Supported Content-Type found");
+            Log.debug("Supported Content-Type found");
             return 0;
         }
-        System.out.println("Error 415: Requested Content-Type is unsupported");
+        Log.debug("Requested Content-Type is unsupported, responding 415");
         return 415;
     }
     
-    /** 
-     * Method that checks if the given input is null.
-     * <p>The return value should be used as HTTP response code.
-     * @param input received from client with InputStream
-     * @return int, 200 if content is OK, 412 if not
-     */
-    private int checkUserFormat(String input) {
-        if (input != null && input.length() > 0) {
-            System.out.println("Success: User information is in expected format");
-            return 200;
-        }
-        System.out.println("Error: User information is in invalid format");
-        return 412;
-    }
-
     /**
      * Method that checks if the given JSON is valid
      * by checking that all required fields are included
@@ -163,13 +136,13 @@ public class RegistrationHandler implements HttpHandler {
         if (input.has("username") && input.getString("username").length() > 0) {
             if (input.has("password") && input.getString("password").length() > 0) {
                 if (input.has("email") && input.getString(("email")).length() > 0) {
-                    System.out.println("Success: The given JSON is valid");
+                    Log.debug("The given JSON is valid");
                     return 200;   
                 }
             }
         }
-        System.out.println("Error: Given JSON is not valid");
-        System.out.println("No proper user credentials");
+        Log.debug("Given JSON is not valid");
+        Log.debug("No proper user credentials");
         return 413;
     }
 
@@ -182,7 +155,7 @@ public class RegistrationHandler implements HttpHandler {
      * @param exchangeObject is the HTML exchange object received from the client
      */
     public void sendResponse(int code, HttpExchange exchangeObject) {
-        System.out.println("Status: Preparing the response message for the client");
+        Log.debug("Preparing the response message for the client");
         StringBuilder responseBuilder = new StringBuilder("");
 
         switch(code) {
@@ -208,32 +181,30 @@ public class RegistrationHandler implements HttpHandler {
                 responseBuilder.append("Error: Requested content type is not supported");
                 break;
             default:
-                System.out.println("Error: Registration was not succesful");
+                Log.debug("Registration was not succesful");
                 responseBuilder.append("The server faced an error while processing the request");
                 code = 500;
         }
 
         String responseString = responseBuilder.toString();
         byte[] bytes;
-        System.out.println("Status: The response string is now ready");
+        Log.debug("The response string is now ready");
 
         try {
             bytes = responseString.getBytes("UTF-8");
             try {
-                System.out.println("Status: Sending a response code: " + code);
+                Log.debug("Sending a response code: {}", code);
                 exchangeObject.sendResponseHeaders(code, bytes.length);
                 OutputStream outputStream = exchangeObject.getResponseBody();
                 outputStream.write(bytes);
-                System.out.println("Status: The response has been sent");
+                Log.debug("The response has been sent");
                 outputStream.flush();
                 outputStream.close();
             } catch (IOException e) {
-                System.out.println("Error: IO Exception occured during registration process");
-                e.printStackTrace();
+                Log.warn("IO Exception occured during registration process: {}", e.getMessage());
             }
         } catch (UnsupportedEncodingException e) {
-            System.out.println("Error: Unsupported Encoding occured during registration process");
-            e.printStackTrace();
+            Log.warn("Unsupported Encoding occured during registration process: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,303 @@
+package com.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Helper class that parses the JSON body of a request straight from its InputStream.
+ * <p>The body is never collected into a String. JSONTokener reads the characters
+ * from a buffered reader and builds the JSONObject as it goes.
+ * <p>Bodies larger than MAX_BODY_SIZE bytes are rejected with 413: a too large
+ * Content-Length before anything is read, and a chunked body as soon as the
+ * limit has been passed, so an oversized body never costs more than the limit.
+ * <p>Bulk requests are parsed with parseList(), which accepts a JSON array or
+ * NDJSON of objects and takes its own size limits.
+ */
+public final class RequestBody {
+    /* Largest accepted body in bytes, can be changed with -Dserver.maxbody=BYTES */
+    public static final int MAX_BODY_SIZE = Integer.getInteger("server.maxbody", 64 * 1024);
+    /* Largest rejected body that is still read and discarded, can be changed with -Dserver.maxdrain=BYTES */
+    private static final long MAX_DRAIN_SIZE = Long.getLong("server.maxdrain", 1024 * 1024);
+
+    private RequestBody() {}
+
+    /**
+     * Parses the body of the exchange into a JSONObject.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return JSONObject, the parsed body
+     * @throws InvalidRequestException with code 413 if the body is too large,
+     * 412 if it is empty and 400 if it is not a JSON object
+     */
+    public static JSONObject parse(final HttpExchange exchangeObject) throws InvalidRequestException {
+        return parseObject(open(exchangeObject, MAX_BODY_SIZE));
+    }
+
+    /**
+     * Parses a JSON object from the given stream, reading at most MAX_BODY_SIZE bytes.
+     * @param inputStream InputStream, the body of the request
+     * @return JSONObject, the parsed body
+     * @throws InvalidRequestException with code 413 if the body is too large,
+     * 412 if it is empty and 400 if it is not a JSON object
+     */
+    public static JSONObject parse(final InputStream inputStream) throws InvalidRequestException {
+        return parseObject(tokener(inputStream, MAX_BODY_SIZE));
+    }
+
+    /**
+     * Parses a list of JSON objects from the body of the exchange.
+     * <p>The body is either a JSON array of objects or newline delimited JSON (NDJSON),
+     * one object per line. The objects are read one at a time from the stream.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @param maxBodySize long, the largest accepted body in bytes
+     * @param maxItems int, the largest accepted number of objects
+     * @return List of the parsed objects in the order of the body
+     * @throws InvalidRequestException with code 413 if the body or the number of objects
+     * is too large, 412 if it is empty and 400 if it is not an array or NDJSON of objects
+     */
+    public static List<JSONObject> parseList(final HttpExchange exchangeObject, final long maxBodySize, final int maxItems) throws InvalidRequestException {
+        return parseList(open(exchangeObject, maxBodySize), maxItems);
+    }
+
+    /**
+     * Parses a list of JSON objects from the given stream, see parseList(HttpExchange, long, int).
+     * @param inputStream InputStream, the body of the request
+     * @param maxBodySize long, the largest accepted body in bytes
+     * @param maxItems int, the largest accepted number of objects
+     * @return List of the parsed objects in the order of the body
+     * @throws InvalidRequestException with code 413, 412 or 400 as parseList(HttpExchange, long, int)
+     */
+    public static List<JSONObject> parseList(final InputStream inputStream, final long maxBodySize, final int maxItems) throws InvalidRequestException {
+        return parseList(tokener(inputStream, maxBodySize), maxItems);
+    }
+
+    /**
+     * Checks the Content-Length of the exchange and opens a tokener over its body.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @param maxBodySize long, the largest accepted body in bytes
+     * @return JSONTokener, reading at most maxBodySize bytes of the body
+     * @throws InvalidRequestException with code 413 if the Content-Length is too large
+     * and 400 if it is not a number
+     */
+    private static JSONTokener open(final HttpExchange exchangeObject, final long maxBodySize) throws InvalidRequestException {
+        final String contentLength = exchangeObject.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            final long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (final NumberFormatException e) {
+                throw new InvalidRequestException(400, "Invalid Content-Length: " + contentLength);
+            }
+
+            if (length > maxBodySize) {
+                /* If the unread body is left in the socket, closing the connection resets it and the
+                 * client never sees the response. Moderately large bodies are therefore discarded
+                 * through a small buffer, larger ones are left to the server to cut off. */
+                if (length <= MAX_DRAIN_SIZE) {
+                    discard(exchangeObject.getRequestBody());
+                }
+                throw new InvalidRequestException(413, "The request body is larger than " + maxBodySize + " bytes");
+            }
+        }
+
+        return tokener(exchangeObject.getRequestBody(), maxBodySize);
+    }
+
+    /**
+     * Creates a tokener that reads the stream as UTF-8 and fails after maxBodySize bytes.
+     * @param inputStream InputStream, the body of the request
+     * @param maxBodySize long, the largest accepted body in bytes
+     * @return JSONTokener over the stream
+     */
+    private static JSONTokener tokener(final InputStream inputStream, final long maxBodySize) {
+        return new JSONTokener(new InputStreamReader(new LimitedInputStream(inputStream, maxBodySize), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a single JSON object from the tokener.
+     * @param tokener JSONTokener, the body of the request
+     * @return JSONObject, the parsed body
+     * @throws InvalidRequestException with code 413, 412 or 400 as parse(InputStream)
+     */
+    private static JSONObject parseObject(final JSONTokener tokener) throws InvalidRequestException {
+        try {
+            /* Look at the first character to tell an empty body from invalid JSON */
+            if (tokener.nextClean() == 0) {
+                throw new InvalidRequestException(412, "The content is empty");
+            }
+            tokener.back();
+            final JSONObject object = new JSONObject(tokener);
+
+            /* Read to the end of the body, HttpServer closes a keep-alive connection
+             * whose request body was left unread when the response is sent */
+            while (tokener.next() != 0) {
+                /* Discard */
+            }
+            return object;
+        } catch (final JSONException e) {
+            throw invalidJson(e, "The received message was not proper JSON");
+        }
+    }
+
+    /**
+     * Parses a JSON array of objects or NDJSON objects from the tokener.
+     * @param tokener JSONTokener, the body of the request
+     * @param maxItems int, the largest accepted number of objects
+     * @return List of the parsed objects
+     * @throws InvalidRequestException with code 413, 412 or 400 as parseList(HttpExchange, long, int)
+     */
+    private static List<JSONObject> parseList(final JSONTokener tokener, final int maxItems) throws InvalidRequestException {
+        final List<JSONObject> items = new ArrayList<>();
+
+        try {
+            char next = tokener.nextClean();
+            if (next == 0) {
+                throw new InvalidRequestException(412, "The content is empty");
+            }
+
+            if (next == '[') {
+                /* JSON array: objects separated by commas until the closing bracket */
+                next = tokener.nextClean();
+                while (next != ']') {
+                    tokener.back();
+                    addItem(items, new JSONObject(tokener), maxItems);
+                    next = tokener.nextClean();
+                    if (next == ',') {
+                        next = tokener.nextClean();
+                    } else if (next != ']') {
+                        throw tokener.syntaxError("Expected ',' or ']'");
+                    }
+                }
+                if (tokener.nextClean() != 0) {
+                    throw tokener.syntaxError("Unexpected content after the array");
+                }
+            } else {
+                /* NDJSON: objects separated by line breaks until the end of the body */
+                while (next != 0) {
+                    tokener.back();
+                    addItem(items, new JSONObject(tokener), maxItems);
+                    next = tokener.nextClean();
+                }
+            }
+        } catch (final JSONException e) {
+            throw invalidJson(e, "The received content was not a JSON array or NDJSON of objects");
+        }
+
+        return items;
+    }
+
+    /**
+     * Adds a parsed object to the list unless the list is already full.
+     * @param items List of the objects parsed so far
+     * @param item JSONObject, the parsed object
+     * @param maxItems int, the largest accepted number of objects
+     * @throws InvalidRequestException with code 413 if the list is full
+     */
+    private static void addItem(final List<JSONObject> items, final JSONObject item, final int maxItems) throws InvalidRequestException {
+        if (items.size() >= maxItems) {
+            throw new InvalidRequestException(413, "The request has more than " + maxItems + " items");
+        }
+        items.add(item);
+    }
+
+    /**
+     * Translates a parse error into the response code of the request.
+     * @param e JSONException, the parse error
+     * @param message String, the message used if the JSON itself was invalid
+     * @return InvalidRequestException with code 413 if the body was too large, 400 otherwise
+     */
+    private static InvalidRequestException invalidJson(final JSONException e, final String message) {
+        if (e.getCause() instanceof BodyTooLargeException) {
+            return new InvalidRequestException(413, e.getCause().getMessage());
+        }
+        return new InvalidRequestException(400, message);
+    }
+
+    /**
+     * Reads the rest of the stream without keeping it.
+     * @param inputStream InputStream, the body of the request
+     */
+    private static void discard(final InputStream inputStream) {
+        final byte[] buffer = new byte[8192];
+        try {
+            while (inputStream.read(buffer) >= 0) {
+                /* Discard */
+            }
+        } catch (final IOException e) {
+            Log.warn("Failed to discard the request body: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Exception thrown by LimitedInputStream when the body passes its size limit.
+     */
+    private static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private BodyTooLargeException(long limit) {
+            super("The request body is larger than " + limit + " bytes");
+        }
+    }
+
+    /**
+     * InputStream that fails when more than the given number of bytes has been read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long remaining;
+
+        private LimitedInputStream(InputStream inputStream, long limit) {
+            super(inputStream);
+            this.limit = limit;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = super.read();
+            if (value >= 0) {
+                consume(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            /* Read at most one byte past the limit, which is enough to detect it */
+            final int count = super.read(buffer, offset, (int) Math.min(length, this.remaining + 1));
+            if (count > 0) {
+                consume(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            final long skipped = super.skip(Math.min(count, this.remaining + 1));
+            consume(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void consume(long count) throws BodyTooLargeException {
+            this.remaining -= count;
+            if (this.remaining < 0) {
+                throw new BodyTooLargeException(this.limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.server;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decoder that turns the body of a POST request to /warning into a WarningRequest.
+ * <p>The body is parsed into a JSONObject only once, and all the checks of
+ * JsonChecker are run against that object. The handler gets either a fully
+ * validated warning or query, or an InvalidRequestException with the response code.
+ */
+public class RequestDecoder {
+    private final JsonChecker jsonChecker = new JsonChecker();
+
+    public RequestDecoder() {}
+
+    /**
+     * Decodes the body of a request.
+     * @param content String, the body received from the client
+     * @return WarningRequest, the validated warning or query
+     * @throws InvalidRequestException with code 412 if the body is empty, 400 if it is not JSON,
+     * otherwise with the code of the failed check
+     */
+    public WarningRequest decode(final String content) throws InvalidRequestException {
+        if (content == null || content.isEmpty()) {
+            throw new InvalidRequestException(412, "The content is empty");
+        }
+
+        final JSONObject contentToJSON;
+        try {
+            contentToJSON = new JSONObject(content);
+        } catch (final JSONException e) {
+            throw new InvalidRequestException(400, "The received message was not proper JSON");
+        }
+
+        return decode(contentToJSON);
+    }
+
+    /**
+     * Decodes a request that has already been parsed into a JSONObject.
+     * <p>A body with the field "query" is a query, anything else is a warning message.
+     * @param contentToJSON JSONObject, the body received from the client
+     * @return WarningRequest, the validated warning or query
+     * @throws InvalidRequestException if the content is not a valid warning or query
+     */
+    public WarningRequest decode(final JSONObject contentToJSON) throws InvalidRequestException {
+        if (contentToJSON.has("query")) {
+            Log.debug("RequestDecoder detected that the received content is a Query instead of WarningMessage");
+            return decodeQuery(contentToJSON);
+        }
+        return decodeWarning(contentToJSON);
+    }
+
+    /**
+     * Decodes a warning message.
+     * <p>The response codes are the ones WarningHandler has always used:
+     * 413 for missing fields or an unsupported danger type, and 500 for a
+     * timestamp that cannot be parsed.
+     * @param contentToJSON JSONObject, the warning message as JSON
+     * @return WarningRequest of type WARNING
+     * @throws InvalidRequestException if the message is not valid
+     */
+    private WarningRequest decodeWarning(final JSONObject contentToJSON) throws InvalidRequestException {
+        try {
+            if (this.jsonChecker.checkWarningIsValid(contentToJSON) != 200) {
+                throw new InvalidRequestException(413, "The content does not have all required information");
+            }
+            if (this.jsonChecker.checkDangertype(contentToJSON) != 200) {
+                throw new InvalidRequestException(413, "Invalid danger type");
+            }
+
+            final LocalDateTime time;
+            try {
+                time = OffsetDateTime.parse(contentToJSON.getString("sent")).toLocalDateTime();
+            } catch (final DateTimeException e) {
+                throw new InvalidRequestException(500, "Problem with message content: " + e.getMessage());
+            }
+
+            final WarningMessage message = new WarningMessage(contentToJSON.getString("nickname"), contentToJSON.getDouble("latitude"), contentToJSON.getDouble("longitude"), contentToJSON.getString("dangertype"), time);
+
+            /* If the JSON has phonenumber and areacode, add them to the message */
+            if (this.jsonChecker.checkJsonForAreaAndPhone(contentToJSON)) {
+                message.setAreacode(contentToJSON.getString("areacode"));
+                message.setPhonenumber(contentToJSON.getString("phonenumber"));
+            }
+
+            return WarningRequest.warning(message, this.jsonChecker.checkJsonForWeather(contentToJSON));
+        } catch (final JSONException e) {
+            /* A field had the wrong type, e.g. a number as nickname */
+            throw new InvalidRequestException(413, "Invalid field in the message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a user, time or area query, together with its pagination.
+     * @param contentToJSON JSONObject, the query as JSON
+     * @return WarningRequest of type USER_QUERY, TIME_QUERY or AREA_QUERY
+     * @throws InvalidRequestException with code 412 for an invalid query and 400 for invalid times or pagination
+     */
+    private WarningRequest decodeQuery(final JSONObject contentToJSON) throws InvalidRequestException {
+        final WarningRequest request;
+
+        try {
+            switch (this.jsonChecker.getQueryType(contentToJSON)) {
+                case "user":
+                    if (!this.jsonChecker.checkUserQueryValidity(contentToJSON)) {
+                        throw new InvalidRequestException(412, "Empty content on User Query");
+                    }
+                    request = WarningRequest.userQuery(new UserQuery(contentToJSON.getString("nickname")));
+                    break;
+                case "time":
+                    try {
+                        final LocalDateTime timeStart = OffsetDateTime.parse(contentToJSON.getString("timestart")).toLocalDateTime();
+                        final LocalDateTime timeEnd = OffsetDateTime.parse(contentToJSON.getString("timeend")).toLocalDateTime();
+                        request = WarningRequest.timeQuery(new TimeQuery(timeStart, timeEnd));
+                    } catch (final DateTimeException e) {
+                        throw new InvalidRequestException(400, "Invalid time in Time Query: " + e.getMessage());
+                    }
+                    break;
+                case "area":
+                    if (!this.jsonChecker.checkAreaQueryValidity(contentToJSON)) {
+                        throw new InvalidRequestException(412, "Area Query contains an invalid area");
+                    }
+                    /* Area queries return all matching messages, they are not paginated */
+                    return WarningRequest.areaQuery(this.jsonChecker.getAreaQuery(contentToJSON));
+                default:
+                    throw new InvalidRequestException(412, "The received query was not 'user', 'time' or 'area'");
+            }
+        } catch (final JSONException e) {
+            throw new InvalidRequestException(412, "Invalid field in the query: " + e.getMessage());
+        }
+
+        /* Check if the query asks for a single page instead of all messages */
+        if (this.jsonChecker.checkJsonForPagination(contentToJSON)) {
+            try {
+                request.withPage(this.jsonChecker.getLimit(contentToJSON), this.jsonChecker.getCursor(contentToJSON));
+            } catch (final IllegalArgumentException e) {
+                throw new InvalidRequestException(400, "Invalid pagination in query: " + e.getMessage());
+            }
+        }
+
+        return request;
+    }
+}
@@ -0,0 +1,306 @@
+package com.server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runner of versioned schema migrations.
+ * <p>The schema version of a database is kept in SQLite's user_version header field.
+ * At startup migrate() applies, in order, every step whose version is greater than
+ * the version of the database and stores the new version after each step, so an
+ * up-to-date database costs only one header read.
+ * <p>There are two kinds of steps:
+ * <ul>
+ * <li>schema steps run their statements in one transaction together with the version update</li>
+ * <li>backfill steps copy existing rows in chunks of rowids, one transaction per chunk.
+ * The progress is stored in the schema_backfill table, so a large backfill that is
+ * interrupted continues from the last committed chunk on the next start.</li>
+ * </ul>
+ * <p>Steps must only be appended. A step that has been released must never be changed,
+ * because databases that already have its version will not run it again.
+ */
+public class SchemaMigrator {
+    /* Number of rows copied in one transaction by a backfill, can be changed with -Dmessagedatabase.migrationchunk=N */
+    private static final int CHUNK_SIZE = Integer.getInteger("messagedatabase.migrationchunk", 10000);
+
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * One migration step. A backfill step has a backfill statement and a table
+     * whose rowids it walks through, a schema step has a list of statements.
+     */
+    private static class Step {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+        private final String backfillTable;
+        private final String backfillStatement;
+
+        private Step(int version, String description, String[] statements, String backfillTable, String backfillStatement) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+            this.backfillTable = backfillTable;
+            this.backfillStatement = backfillStatement;
+        }
+    }
+
+    /**
+     * Adds a step that runs the given statements in one transaction.
+     * @param version int, the version of the database after the step, greater than the version of the previous step
+     * @param description String, what the step does, used in the log
+     * @param statements String..., the SQL statements of the step
+     * @return SchemaMigrator, this object
+     */
+    public SchemaMigrator schema(int version, String description, String... statements) {
+        return add(new Step(version, description, statements, null, null));
+    }
+
+    /**
+     * Adds a step that runs the given statement once for every chunk of rowids of a table.
+     * <p>The statement has two parameters: the last rowid of the previous chunk (exclusive)
+     * and the last rowid of this chunk (inclusive), e.g.
+     * "INSERT INTO b SELECT x FROM a WHERE rowid > ? AND rowid <= ?".
+     * Only the rows that exist when the backfill starts are visited.
+     * @param version int, the version of the database after the step, greater than the version of the previous step
+     * @param description String, what the step does, used in the log
+     * @param table String, the table whose rowids are walked through
+     * @param statement String, the SQL statement run for each chunk
+     * @return SchemaMigrator, this object
+     */
+    public SchemaMigrator backfill(int version, String description, String table, String statement) {
+        return add(new Step(version, description, null, table, statement));
+    }
+
+    /**
+     * Getter for the version the database has after all steps have been applied.
+     * @return int, the version of the last step, 0 if there are no steps
+     */
+    public int getLatestVersion() {
+        return this.steps.isEmpty() ? 0 : this.steps.get(this.steps.size() - 1).version;
+    }
+
+    /**
+     * Applies all steps that the database does not have yet.
+     * <p>The caller must make sure that no other connection writes to the database meanwhile.
+     * @param connection Connection, a connection that can write to the database
+     * @return int, the version of the database after the migration
+     * @throws SQLException if a step failed, the database keeps the version of the last successful step
+     */
+    public int migrate(Connection connection) throws SQLException {
+        final int current = getVersion(connection);
+        if (current > getLatestVersion()) {
+            throw new SQLException("The database has schema version " + current + ", which is newer than the supported version " + getLatestVersion());
+        }
+
+        for (final Step step : this.steps) {
+            if (step.version <= current) {
+                continue;
+            }
+
+            Log.info("Migrating the database to version {}: {}", step.version, step.description);
+            final long start = System.nanoTime();
+            if (step.backfillStatement != null) {
+                runBackfill(connection, step);
+            } else {
+                runSchema(connection, step);
+            }
+            Log.info("Database is at version {} after {} ms", step.version, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        return getVersion(connection);
+    }
+
+    /**
+     * Reads the schema version of the database.
+     * @param connection Connection, a connection to the database
+     * @return int, the user_version of the database, 0 for a new database
+     * @throws SQLException
+     */
+    public static int getVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Sets the schema version of the database.
+     * <p>Used to mark databases that were created before versioned migrations
+     * and already have the schema of a later version.
+     * @param connection Connection, a connection that can write to the database
+     * @param version int, the new version
+     * @throws SQLException
+     */
+    public static void setVersion(Connection connection, int version) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            /* PRAGMA does not take parameters, the version is an int so it is safe to concatenate */
+            statement.executeUpdate("PRAGMA user_version = " + version);
+        }
+    }
+
+    /**
+     * Checks whether the database has a table with the given name.
+     * @param connection Connection, a connection to the database
+     * @param table String, the name of the table
+     * @return boolean, true if the table exists
+     * @throws SQLException
+     */
+    public static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            statement.setString(1, table);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    /**
+     * Appends a step, checking that the versions grow.
+     * @param step Step, the step to be added
+     * @return SchemaMigrator, this object
+     */
+    private SchemaMigrator add(Step step) {
+        if (step.version <= getLatestVersion()) {
+            throw new IllegalArgumentException("Error: Migration version " + step.version + " must be greater than " + getLatestVersion());
+        }
+        this.steps.add(step);
+        return this;
+    }
+
+    /**
+     * Runs the statements of a schema step and stores its version in one transaction.
+     * @param connection Connection, a connection that can write to the database
+     * @param step Step, the schema step
+     * @throws SQLException
+     */
+    private void runSchema(Connection connection, Step step) throws SQLException {
+        inTransaction(connection, () -> {
+            try (Statement statement = connection.createStatement()) {
+                for (final String sql : step.statements) {
+                    statement.executeUpdate(sql);
+                }
+            }
+            setVersion(connection, step.version);
+        });
+    }
+
+    /**
+     * Runs a backfill step chunk by chunk, continuing from the stored progress.
+     * @param connection Connection, a connection that can write to the database
+     * @param step Step, the backfill step
+     * @throws SQLException
+     */
+    private void runBackfill(Connection connection, Step step) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_backfill (version INTEGER PRIMARY KEY, position INTEGER NOT NULL, last INTEGER NOT NULL)");
+        }
+
+        final long[] stored = readProgress(connection, step.version);
+        final long[] progress;
+        if (stored == null) {
+            /* First run of the step, the rows that exist now are the ones to be copied */
+            long last = 0;
+            try (Statement statement = connection.createStatement();
+                    ResultSet result = statement.executeQuery("SELECT IFNULL(MAX(rowid), 0) FROM " + step.backfillTable)) {
+                if (result.next()) {
+                    last = result.getLong(1);
+                }
+            }
+            progress = new long[] { 0, last };
+            writeProgress(connection, step.version, progress[0], progress[1]);
+        } else {
+            progress = stored;
+            Log.info("Continuing the interrupted backfill after rowid {}", progress[0]);
+        }
+
+        try (PreparedStatement chunkStatement = connection.prepareStatement(step.backfillStatement)) {
+            while (progress[0] < progress[1]) {
+                final long from = progress[0];
+                final long to = Math.min(from + CHUNK_SIZE, progress[1]);
+
+                inTransaction(connection, () -> {
+                    chunkStatement.setLong(1, from);
+                    chunkStatement.setLong(2, to);
+                    chunkStatement.executeUpdate();
+                    writeProgress(connection, step.version, to, progress[1]);
+                });
+                progress[0] = to;
+                Log.info("Backfilled rowids up to {} of {}", to, progress[1]);
+            }
+        }
+
+        inTransaction(connection, () -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM schema_backfill WHERE version = ?")) {
+                statement.setInt(1, step.version);
+                statement.executeUpdate();
+            }
+            setVersion(connection, step.version);
+        });
+    }
+
+    /**
+     * Reads the stored progress of a backfill.
+     * @param connection Connection, a connection to the database
+     * @param version int, the version of the backfill step
+     * @return long[] with the last copied rowid and the last rowid to be copied, or null if the backfill has not started
+     * @throws SQLException
+     */
+    private static long[] readProgress(Connection connection, int version) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT position, last FROM schema_backfill WHERE version = ?")) {
+            statement.setInt(1, version);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? new long[] { result.getLong(1), result.getLong(2) } : null;
+            }
+        }
+    }
+
+    /**
+     * Stores the progress of a backfill.
+     * @param connection Connection, a connection that can write to the database
+     * @param version int, the version of the backfill step
+     * @param position long, the last copied rowid
+     * @param last long, the last rowid to be copied
+     * @throws SQLException
+     */
+    private static void writeProgress(Connection connection, int version, long position, long last) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO schema_backfill (version, position, last) VALUES (?, ?, ?)")) {
+            statement.setInt(1, version);
+            statement.setLong(2, position);
+            statement.setLong(3, last);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Work done inside a transaction.
+     */
+    private interface Work {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs the work in one transaction, rolling it back if it fails.
+     * @param connection Connection, a connection that can write to the database
+     * @param work Work, the statements of the transaction
+     * @throws SQLException
+     */
+    private static void inTransaction(Connection connection, Work work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class that wraps messages that have been serialized into a JSON array.
+ * <p>The message queries return this instead of a JSONArray, so the rows are
+ * written into bytes once and the bytes are sent as the response body as they are.
+ */
+public class SerializedMessages {
+    private final byte[] json;
+    private final int count;
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param json byte[], the JSON array as UTF-8
+     * @param count int, the number of messages in the array
+     */
+    public SerializedMessages(byte[] json, int count) {
+        this.json = json;
+        this.count = count;
+    }
+
+    /**
+     * Getter for the number of messages.
+     * @return int, the number of messages in the array
+     */
+    public int length() {
+        return this.count;
+    }
+
+    /**
+     * Getter for the serialized messages. The array must not be modified.
+     * @return byte[], the JSON array as UTF-8
+     */
+    public byte[] getBytes() {
+        return this.json;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.json, StandardCharsets.UTF_8);
+    }
+}
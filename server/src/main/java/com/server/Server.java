@@ -4,7 +4,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.net.InetSocketAddress;
 import java.security.KeyStore;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -38,13 +38,17 @@ public class Server {
      * The SSLContext is used to establish secure connections with 
      * clients using a self-signed certificate for authentication.
      * 
+     * @param keystore String, the path of the JKS keystore that contains the certificate
+     * @param password String, the password of the keystore and its key
      * @return A new SSLContext object for the server.
      * @throws Exception if there is an error creating the SSLContext.
      */
-    private static SSLContext serverSSLContext() throws Exception {
-        char[] passphrase = "password".toCharArray();
+    private static SSLContext serverSSLContext(String keystore, String password) throws Exception {
+        char[] passphrase = password.toCharArray();
         KeyStore ks = KeyStore.getInstance("JKS");
-        ks.load(new FileInputStream("keystore.jks"), passphrase);
+        try (FileInputStream keystoreStream = new FileInputStream(keystore)) {
+            ks.load(keystoreStream, passphrase);
+        }
 
         KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
         kmf.init(ks, passphrase);
@@ -58,52 +62,111 @@ public class Server {
         return ssl;
     }
 
-    public static void main(String[] args) throws Exception {
+    /**
+     * Opens the database and starts the server.
+     * <p>Used by main() and by tools such as the load generator that run the server in-process.
+     * @param port int, the port the server listens to
+     * @param keystore String, the path of the JKS keystore that contains the certificate
+     * @param password String, the password of the keystore
+     * @param dbName String, the path of the database file
+     * @return HttpsServer, the started server
+     * @throws Exception if the server could not be created
+     */
+    public static HttpsServer start(int port, String keystore, String password, String dbName) throws Exception {
+        /* Create a database instance */
+        MessageDatabase messageDatabase = MessageDatabase.getInstance();
+
+        /* Create HTTP server to the given port with default logger */
+        HttpsServer server = HttpsServer.create(new InetSocketAddress(port),0);
+
+        /* Use self-signed SSL certificate */
+        SSLContext sslContext = serverSSLContext(keystore, password);
+
+        /* Configure HttpsServer to use sslContext */
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+            public void configure (HttpsParameters params) {
+                SSLContext c = getSSLContext();
+                SSLParameters sslparams = c.getDefaultSSLParameters();
+                params.setSSLParameters(sslparams);
+        }   
+        });
+
+        /* Create User Authenticator instance */
+        UserAuthenticator userAuthenticator = new UserAuthenticator();
+
+        /* Create context for Warning Handler */
+        HttpContext warningContext = server.createContext("/warning", new WarningHandler());
+        warningContext.setAuthenticator(userAuthenticator);
+        warningContext.getFilters().add(new MetricsFilter("/warning"));
+        warningContext.getFilters().add(new LoadSheddingFilter());
+
+        /* Create context for bulk warnings, the longer path takes precedence over /warning */
+        HttpContext bulkContext = server.createContext("/warning/bulk", new BulkWarningHandler());
+        bulkContext.setAuthenticator(userAuthenticator);
+        bulkContext.getFilters().add(new MetricsFilter("/warning/bulk"));
+        bulkContext.getFilters().add(new LoadSheddingFilter());
+
+        /* Create context for Registration Handler */
+        HttpContext registrationContext = server.createContext("/registration", new RegistrationHandler());
+        registrationContext.getFilters().add(new MetricsFilter("/registration"));
+        registrationContext.getFilters().add(new LoadSheddingFilter());
+
+        /* Create unauthenticated context for metrics in Prometheus text format */
+        server.createContext("/metrics", new MetricsHandler());
+
+        /* Initialize database connection before any request can reach the handlers */
+        try {
+            messageDatabase.open(dbName);
+        } catch (Exception e) {
+            Log.error("Error occured while the server tried to open a database connection: {}", e.getMessage());
+        }
+
+        /* Continue fetching weather for messages that were still waiting for it */
+        if (WeatherEnricher.isEnabled()) {
+            WeatherEnricher.getInstance().resumePending();
+        }
+
+        /* Enable support for multi-threading and start the server, see ServerExecutor for the modes */
+        server.setExecutor(ServerExecutor.create());
+        server.start();
+
+        return server;
+    }
+
+    /**
+     * Stops the server and closes the database connections.
+     * <p>Waits at most the given time for the exchanges that are still being handled,
+     * and for the log messages that have not been written yet.
+     * @param server HttpsServer, the server returned by start()
+     * @param delaySeconds int, the longest time to wait for the running exchanges
+     */
+    public static void stop(HttpsServer server, int delaySeconds) {
+        server.stop(delaySeconds);
+        if (server.getExecutor() instanceof ExecutorService) {
+            ((ExecutorService) server.getExecutor()).shutdown();
+        }
+
         try {
-            /* Create a database instance */
-            MessageDatabase messageDatabase = MessageDatabase.getInstance();
-
-            /* Create HTTP server to port 8001 with default logger */
-            HttpsServer server = HttpsServer.create(new InetSocketAddress(8001),0);
-
-            /* Use self-signed SSL certificate */
-            SSLContext sslContext = serverSSLContext();
-
-            /* Configure HttpsServer to use sslContext */
-            server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
-                public void configure (HttpsParameters params) {
-                    SSLContext c = getSSLContext();
-                    SSLParameters sslparams = c.getDefaultSSLParameters();
-                    params.setSSLParameters(sslparams);
-            }   
-            });
-
-            /* Create User Authenticator instance */
-            UserAuthenticator userAuthenticator = new UserAuthenticator();
-
-            /* Create context for Warning Handler */
-            HttpContext warningContext = server.createContext("/warning", new WarningHandler());
-            warningContext.setAuthenticator(userAuthenticator);
-
-            /* Create context for Registration Handler */
-            server.createContext("/registration", new RegistrationHandler());
-
-            /* Enable support for multi-threading and start the server */
-            server.setExecutor(Executors.newCachedThreadPool()); 
-            server.start();
-
-            /* Initialize database connection */
-            try {
-                messageDatabase.open("messages.db");
-            } catch (Exception e) {
-                System.out.println("Error occured while the server tried to open a database connection: " + e.getMessage());
-            } finally {
-                messageDatabase.closeDB();
+            if (WeatherEnricher.isEnabled()) {
+                WeatherEnricher.getInstance().close();
             }
+            MessageDatabase.getInstance().closeDB();
+        } catch (Exception e) {
+            Log.error("Error occured while closing the database connection: {}", e.getMessage());
+        }
+        Log.flush();
+    }
+
+    public static void main(String[] args) throws Exception {
+        try {
+            HttpsServer server = start(8001, "keystore.jks", "password", "messages.db");
+
+            /* Close the database connections when the server is shut down */
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(server, 0)));
         } catch (FileNotFoundException e) {
-            System.out.println("Error: Certificate not found");
+            Log.error("Certificate not found");
         } catch (Exception e) {
-            System.out.println("Error: Something went wrong while executing main function");
+            Log.error("Something went wrong while executing main function: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,187 @@
+package com.server;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executor that runs the exchanges of the HttpsServer.
+ * <p>The mode is chosen with -Dserver.executor=MODE:
+ * <ul>
+ * <li>bounded (default), a fixed number of threads with a bounded queue. When the
+ * queue is full the request is shed: a small separate pool runs it, and LoadSheddingFilter
+ * answers 503 without running the handler.</li>
+ * <li>virtual, one virtual thread per exchange. Requires a JDK with virtual threads,
+ * otherwise the bounded mode is used.</li>
+ * <li>cached, a new platform thread for every concurrent exchange, without a limit.</li>
+ * </ul>
+ * <p>The queue depth, the thread counts and the number of shed requests are exported
+ * to the metrics.
+ */
+public class ServerExecutor {
+    /* Execution mode, can be changed with -Dserver.executor=bounded|virtual|cached */
+    private static final String MODE = System.getProperty("server.executor", "bounded");
+    /* Number of threads in the bounded mode, can be changed with -Dserver.threads=N */
+    private static final int THREADS = Integer.getInteger("server.threads", Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+    /* Number of exchanges that may wait for a thread in the bounded mode, can be changed with -Dserver.queue=N */
+    private static final int QUEUE_SIZE = Integer.getInteger("server.queue", 1000);
+    /* Number of threads that answer shed requests, can be changed with -Dserver.shedthreads=N */
+    private static final int SHED_THREADS = Integer.getInteger("server.shedthreads", 2);
+    /* Number of shed requests that may wait for a shedding thread, can be changed with -Dserver.shedqueue=N */
+    private static final int SHED_QUEUE_SIZE = Integer.getInteger("server.shedqueue", 64);
+
+    /* Set while a rejected exchange is run in a shedding thread */
+    private static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+
+    private ServerExecutor() {}
+
+    /**
+     * Creates the executor of the configured mode.
+     * @return ExecutorService for HttpsServer.setExecutor()
+     */
+    public static ExecutorService create() {
+        return create(MODE);
+    }
+
+    /**
+     * Creates the executor of the given mode.
+     * @param mode String, "bounded", "virtual" or "cached"
+     * @return ExecutorService for HttpsServer.setExecutor()
+     */
+    public static ExecutorService create(String mode) {
+        Log.info("Using the {} executor for requests", mode);
+
+        if (mode.equalsIgnoreCase("cached")) {
+            final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool(threadFactory("http-worker-"));
+            registerMetrics(executor);
+            return executor;
+        }
+        if (mode.equalsIgnoreCase("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                Log.warn("Virtual threads are not available on this JDK, using the bounded executor");
+            }
+        } else if (!mode.equalsIgnoreCase("bounded")) {
+            Log.warn("Unknown executor mode {}, using the bounded executor", mode);
+        }
+
+        final ThreadPoolExecutor executor = bounded(THREADS, QUEUE_SIZE);
+        registerMetrics(executor);
+        return executor;
+    }
+
+    /**
+     * Pool with a fixed number of threads that hands the exchanges it cannot queue
+     * to a separate pool of shedding threads, and shuts that pool down with itself.
+     */
+    private static class BoundedExecutor extends ThreadPoolExecutor {
+        private final ThreadPoolExecutor shedExecutor;
+
+        private BoundedExecutor(int threads, int queueSize, ThreadPoolExecutor shedExecutor) {
+            super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory("http-worker-"),
+                (task, executor) -> shed(task, executor, shedExecutor));
+            this.shedExecutor = shedExecutor;
+        }
+
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            this.shedExecutor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            this.shedExecutor.shutdownNow();
+            return super.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a pool with a fixed number of threads and a bounded queue.
+     * @param threads int, the number of threads
+     * @param queueSize int, the number of exchanges that may wait for a thread
+     * @return ThreadPoolExecutor
+     */
+    public static ThreadPoolExecutor bounded(int threads, int queueSize) {
+        return bounded(threads, queueSize, SHED_THREADS, SHED_QUEUE_SIZE);
+    }
+
+    /**
+     * Creates a pool with a fixed number of threads and a bounded queue.
+     * <p>An exchange that does not fit in the queue is run by one of the shedding threads,
+     * marked as shed, and LoadSheddingFilter answers it with 503 without calling the handler.
+     * It is not run in the submitting thread, which is the dispatcher of the HttpsServer:
+     * the exchange does the TLS handshake and reads the request, so a slow client would
+     * stop the server from accepting any connection.
+     * <p>If the shedding threads cannot keep up either, the exchange is rejected and the
+     * dispatcher closes its connection without a response.
+     * @param threads int, the number of threads
+     * @param queueSize int, the number of exchanges that may wait for a thread
+     * @param shedThreads int, the number of threads that answer shed exchanges
+     * @param shedQueueSize int, the number of shed exchanges that may wait for a shedding thread
+     * @return ThreadPoolExecutor
+     */
+    static ThreadPoolExecutor bounded(int threads, int queueSize, int shedThreads, int shedQueueSize) {
+        final ThreadPoolExecutor shedExecutor = new ThreadPoolExecutor(shedThreads, shedThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(shedQueueSize), threadFactory("http-shed-"), new ThreadPoolExecutor.AbortPolicy());
+        return new BoundedExecutor(threads, queueSize, shedExecutor);
+    }
+
+    /**
+     * Hands an exchange the pool could not queue to the shedding threads.
+     * @param task Runnable, the exchange
+     * @param executor ThreadPoolExecutor, the pool that rejected it
+     * @param shedExecutor ThreadPoolExecutor, the pool of the shedding threads
+     * @throws RejectedExecutionException if the pools are shut down or the shedding threads are full
+     */
+    private static void shed(final Runnable task, final ThreadPoolExecutor executor, final ThreadPoolExecutor shedExecutor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        Metrics.getInstance().increment(Metrics.EXECUTOR_REJECTIONS, "");
+        shedExecutor.execute(() -> {
+            SHED.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                SHED.remove();
+            }
+        });
+    }
+
+    /**
+     * Checks whether the exchange handled in the current thread was rejected by a full queue.
+     * @return boolean, true if the exchange should be answered with 503, false if not
+     */
+    public static boolean isShed() {
+        return SHED.get() != null;
+    }
+
+    /**
+     * Exports the queue depth and the thread counts of the pool to the metrics.
+     * @param executor ThreadPoolExecutor, the pool of the server
+     */
+    private static void registerMetrics(final ThreadPoolExecutor executor) {
+        final Metrics metrics = Metrics.getInstance();
+        metrics.register(Metrics.EXECUTOR_QUEUE_DEPTH, "", () -> executor.getQueue().size());
+        metrics.register(Metrics.EXECUTOR_THREADS, "state=\"active\"", executor::getActiveCount);
+        metrics.register(Metrics.EXECUTOR_THREADS, "state=\"pool\"", executor::getPoolSize);
+    }
+
+    /**
+     * Creates a factory that names the threads.
+     * @param prefix String, the name of the threads without their number
+     * @return ThreadFactory
+     */
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + counter.incrementAndGet());
+    }
+}
@@ -0,0 +1,83 @@
+package com.server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the prepared statements of one database connection.
+ * <p>Each SQL string is prepared once and the same PreparedStatement is returned
+ * on later calls, so SQLite does not have to parse and plan the statement again.
+ * <p>The cache is not thread safe. It may only be used by the thread that holds
+ * its connection: a connection taken from ConnectionPool, or the writer connection
+ * of MessageDatabase while holding its writeLock. A ResultSet of a cached statement
+ * must be closed before the statement is used again.
+ * <p>The SQL strings are constants of MessageDatabase, so the number of cached
+ * statements stays small and the cache does not need an eviction policy.
+ * <p>Every call of prepare() is counted as one statement lookup, which is exported
+ * as a metric. It does not see statements run outside the cache.
+ */
+public class StatementCache {
+    /* Number of statements handed out by all caches */
+    private static final LongAdder STATEMENTS = new LongAdder();
+
+    static {
+        Metrics.getInstance().register(Metrics.DB_STATEMENTS, "", STATEMENTS::sum);
+    }
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param connection Connection, the connection the statements are prepared on
+     */
+    public StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Gets the prepared statement for the given SQL, preparing it on first use.
+     * <p>The parameters of the statement are cleared, the caller binds all of them before executing.
+     * <p>Each call counts as one statement lookup.
+     * @param sql String, the SQL of the statement with ? placeholders
+     * @return PreparedStatement, which must not be closed by the caller
+     * @throws SQLException if the statement could not be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = this.statements.get(sql);
+        if (statement == null) {
+            statement = this.connection.prepareStatement(sql);
+            this.statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        STATEMENTS.increment();
+        return statement;
+    }
+
+    /**
+     * Getter for the number of statement lookups in all caches since the server started.
+     * @return long, the number of prepare() calls
+     */
+    public static long getStatementCount() {
+        return STATEMENTS.sum();
+    }
+
+    /**
+     * Closes all cached statements. The connection itself is left open.
+     */
+    public void close() {
+        for (final PreparedStatement statement : this.statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                Log.warn("Failed to close a cached statement: {}", e.getMessage());
+            }
+        }
+        this.statements.clear();
+    }
+}
@@ -57,7 +57,7 @@ public class User {
         if (!username.isEmpty()) {
             this.username = username;
         } else {
-            System.out.println("Error: Tried to register empty username");
+            Log.debug("Tried to register empty username");
             throw new IllegalArgumentException("Username cannot be empty");
         }
     }
@@ -71,7 +71,7 @@ public class User {
         if (!password.isEmpty()) {
             this.password = password;
         } else {
-            System.out.println("Error: Tried to enter empty password");
+            Log.debug("Tried to enter empty password");
             throw new IllegalArgumentException("Password cannot be empty");
         }
     }
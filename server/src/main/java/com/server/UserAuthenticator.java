@@ -32,13 +32,13 @@ public class UserAuthenticator extends BasicAuthenticator {
     public boolean checkCredentials(final String uname, final String passwd) throws IllegalArgumentException {
         try {
             if (this.messageDatabase.authenticateUser(uname, passwd)) {
-                System.out.println("Status: User authenticator accepted the credentials");
+                Log.debug("User authenticator accepted the credentials");
                 return true;
             }
         } catch (final SQLException e) {
-            System.out.println("Error occured while authenticating user: " + e.getMessage());
+            Log.warn("Error occured while authenticating user: {}", e.getMessage());
         }
-        System.out.println("Status: User authenticator detected incorrect credentials");
+        Log.debug("User authenticator detected incorrect credentials");
         return false;
     }
 
@@ -1,21 +1,12 @@
 package com.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.time.DateTimeException;
-import java.time.LocalDateTime;
-import java.time.OffsetDateTime;
-import java.util.stream.Collectors;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -24,9 +15,11 @@ import com.sun.net.httpserver.HttpHandler;
  * HttpHandler object can receive JSON messages 
  * and store them into a database, it can also 
  * retrieve messages from the database and
- * send them to the client as a JSONArray
+ * send them to the client as a JSON array
  */
 public class WarningHandler implements HttpHandler {
+    private final RequestDecoder requestDecoder = new RequestDecoder();
+
     public WarningHandler() {}
 
     /**
@@ -36,148 +29,101 @@ public class WarningHandler implements HttpHandler {
      */
     @Override
     public void handle(final HttpExchange exchangeObject) throws IOException {
-        String content = "";
-        JSONObject contentToJSON;
         int code = 0;
         byte [] bytes = null;
         final MessageDatabase messageDatabase = MessageDatabase.getInstance();
-        final JsonChecker jsonChecker = new JsonChecker();
         boolean status = false;
 
-        System.out.println("Status: Request handled in thread " + Thread.currentThread().getId());
+        Log.debug("Handling a warning request");
 
         /* Handle POST case */
         if (exchangeObject.getRequestMethod().equalsIgnoreCase("POST")) {
-            System.out.println("Status: Got into POST handler branch");
-            final InputStream inputStream = exchangeObject.getRequestBody();
+            Log.debug("Got into POST handler branch");
+            MetricsFilter.setOperation("post_warning");
 
-            /* Parse content */
+            /* Parse the content straight from the request body, then decode and validate it in one pass */
             try {
-                content = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)).lines().collect(Collectors.joining("\n"));
-                inputStream.close();
-                System.out.println("Success: Warning message received");          
-            } catch (final Exception e) {
-                System.out.println("Error: Exception occured while processing input stream");
-            }
-
-            /* Make sure the warning is not empty */
-            if (content == null || content.length() < 1) {
-                System.out.println("Error: The content is invalid");
-                code = 412;
-            }
+                final WarningRequest request = this.requestDecoder.decode(RequestBody.parse(exchangeObject));
+                MetricsFilter.setOperation(request.getType().getOperation());
 
-            /* Make sure the content is proper JSON */
-            if (code == 0 && jsonChecker.isJSONValid(content)) {
-                contentToJSON = new JSONObject(content);
-
-                /* Check if the content has query element */
-                if (contentToJSON.has("query")) {
-                    System.out.println("Status: WarningHandler detected that the received content is a Query instead of WarningMessage");
-                    
-                    /* Check whether the query is of type "user" or "time", other types are not accepted */
-                    if (jsonChecker.getQueryType(contentToJSON) == "user") {
-                        if (jsonChecker.checkUserQueryValidity(contentToJSON)) {
-                            UserQuery userQuery = new UserQuery(contentToJSON.getString("nickname"));
-                            try {
-                                JSONArray responseArray = messageDatabase.getMessagesByUser(userQuery.getNickname());
-                                String responseString = responseArray.toString();
-                                code = 200;
-                                bytes = responseString.getBytes("UTF-8");
-                                status = sendResponse(code, bytes, exchangeObject);
-                            } catch (Exception e) {
-                                System.out.println("Error: Query handler failed: " + e.getMessage());
-                            }
+                switch (request.getType()) {
+                    case WARNING:
+                        code = storeWarning(request);
+                        status = code == 200;
+                        break;
+                    case USER_QUERY:
+                        code = 200;
+                        if (request.isPaginated()) {
+                            status = sendPage(messageDatabase.getMessagesByUserPage(request.getUserQuery().getNickname(), request.getLimit(), request.getCursor()), exchangeObject);
+                        } else {
+                            status = sendMessages(messageDatabase.getMessagesByUser(request.getUserQuery().getNickname()), exchangeObject);
                         }
-                    } else if (jsonChecker.getQueryType(contentToJSON) == "time") {
-                        try {
-                            OffsetDateTime offsetTime = OffsetDateTime.parse(contentToJSON.getString("timestart"));
-                            final LocalDateTime timeStart = offsetTime.toLocalDateTime();  
-                            offsetTime = OffsetDateTime.parse(contentToJSON.getString("timeend"));
-                            final LocalDateTime timeEnd = offsetTime.toLocalDateTime();
-                            TimeQuery timeQuery = new TimeQuery(timeStart, timeEnd);
-                            JSONArray responseArray = messageDatabase.getMessagesByTimeInterval(timeQuery.timeStartAsInt(), timeQuery.timeEndAsInt());
-                            String responseString = responseArray.toString();
-                            code = 200;
-                            bytes = responseString.getBytes("UTF-8");
-                            status = sendResponse(code, bytes, exchangeObject);
-                        } catch (Exception e) {
-                            System.out.println("Error: Query handler failed: " + e.getMessage());
+                        break;
+                    case TIME_QUERY:
+                        final TimeQuery timeQuery = request.getTimeQuery();
+                        code = 200;
+                        if (request.isPaginated()) {
+                            status = sendPage(messageDatabase.getMessagesByTimeIntervalPage(timeQuery.timeStartAsInt(), timeQuery.timeEndAsInt(), request.getLimit(), request.getCursor()), exchangeObject);
+                        } else {
+                            status = sendMessages(messageDatabase.getMessagesByTimeInterval(timeQuery.timeStartAsInt(), timeQuery.timeEndAsInt()), exchangeObject);
                         }
-                    } else {
-                        System.out.println("Error: The received query was not 'user' or 'time'");
-                        code = 412;
-                    }
-
-                /* The message was not a query. Check if the content has all required information */
-                } else if (code == 0) {
-                    if ((code = jsonChecker.checkWarningIsValid(content)) == 200) {
-                        contentToJSON = new JSONObject(content);
-        
-                        /* Check if the dangertype is in accepted format */
-                        if ((code = jsonChecker.checkDangertype(contentToJSON)) == 200) {
-                            try {
-
-                                /* Parse the timestamp content, will throw if invalid */
-                                System.out.println("Status: Trying to parse timestamp content from the message");
-                                final OffsetDateTime offsetTime = OffsetDateTime.parse(contentToJSON.getString("sent"));
-                                final LocalDateTime time = offsetTime.toLocalDateTime();  
-                                System.out.println("Success: Timestamp succesfully parsed");
-
-                                /* Create a new warning message based on information extracted from the JSON */
-                                WarningMessage newMessage = new WarningMessage(contentToJSON.getString("nickname"), contentToJSON.getDouble("latitude"), contentToJSON.getDouble("longitude"), contentToJSON.getString("dangertype"), time);
-
-                                /* If the JSON has phonenumber and areacode, add them to the message */
-                                if (jsonChecker.checkJsonForAreaAndPhone(contentToJSON)) {
-                                    newMessage.setAreacode(contentToJSON.getString("areacode"));
-                                    newMessage.setPhonenumber(contentToJSON.getString("phonenumber"));
-                                }
-
-                                /* Check if contentToJSON has a field "weather". If it does, get the weather
-                                *  value from WeatherService API and add it to the message.
-                                */
-                                if (jsonChecker.checkJsonForWeather(contentToJSON)) {
-                                    try {
-                                        WeatherService weatherService = new WeatherService(contentToJSON.getDouble("latitude"), contentToJSON.getDouble("longitude"));
-                                        weatherService.callWeatherAPI();
-                                        newMessage.setWeather(weatherService.getTemperature());
-                                    } catch (Exception e) {
-                                        System.out.println("Error: WarningHandler failed to use WeatherService: " + e.getMessage());
-                                    }
-                                } else {
-                                    newMessage.setWeather(-999);
-                                }
-
-                                /* Add the message to the database */
-                                messageDatabase.setMessage(newMessage);
-
-                            } catch (DateTimeException | JSONException | SQLException e) {
-                                code = 500;
-                                System.out.println("Error: Problem with message content: " + e.getMessage());
-                                exchangeObject.sendResponseHeaders(code, -1);
-                            }
-                        }
-                    }        
+                        break;
+                    case AREA_QUERY:
+                        code = 200;
+                        status = sendMessages(messageDatabase.getMessagesByArea(request.getAreaQuery()), exchangeObject);
+                        break;
                 }
-            } else {
-                code = 400;
+            } catch (final InvalidRequestException e) {
+                Log.debug("Rejected the request: {}", e.getMessage());
+                code = e.getCode();
+            } catch (final SQLException e) {
+                Log.warn("Query handler failed: {}", e.getMessage());
+                code = 500;
             }
 
-            /* Done. Send response headers */
-            System.out.println("Status: Got into end of POST; sending response");
-            exchangeObject.sendResponseHeaders(code, -1);
+            /* Done. Send response headers, unless a query response was already sent */
+            Log.debug("Got into end of POST; sending response");
+            if (exchangeObject.getResponseCode() == -1) {
+                exchangeObject.sendResponseHeaders(code, -1);
+            }
             
         /* Handle GET case */
         } else if (exchangeObject.getRequestMethod().equalsIgnoreCase("GET")) {
-            try {
-                JSONArray responseArray = messageDatabase.getMessages();
-                String responseString = responseArray.toString();
+            MetricsFilter.setOperation("get");
+            final String limit = getQueryParameter(exchangeObject, "limit");
+            final String cursor = getQueryParameter(exchangeObject, "cursor");
 
-                /* Send the response */
-                code = 200;
-                bytes = responseString.getBytes("UTF-8");
-                status = sendResponse(code, bytes, exchangeObject);
+            try {
+                if (limit != null || cursor != null) {
+                    /* Send a single page of messages */
+                    final MessagePage page = messageDatabase.getMessagesPage(
+                        limit != null ? MessagePage.parseLimit(limit) : MessagePage.DEFAULT_LIMIT,
+                        cursor != null ? MessageCursor.decode(cursor) : null);
+                    code = 200;
+                    status = sendPage(page, exchangeObject);
+                } else {
+                    final CachedListing listing = messageDatabase.getListing();
+                    code = 200;
+                    if (listing != null) {
+                        /* Every client gets the same encoded listing until the next write */
+                        status = sendListing(listing, exchangeObject);
+                    } else {
+                        /* Send the response with chunked encoding, each message is written (and compressed) as it is read */
+                        final ContentEncoding encoding = ContentEncoding.negotiate(exchangeObject.getRequestHeaders(), -1);
+                        setEncodingHeaders(encoding, exchangeObject);
+                        exchangeObject.sendResponseHeaders(code, 0);
+                        try (OutputStream outputStream = encoding.wrap(exchangeObject.getResponseBody())) {
+                            messageDatabase.writeMessages(outputStream);
+                        }
+                        status = true;
+                    }
+                }
+            } catch (final IllegalArgumentException e) {
+                Log.debug("Invalid pagination parameters: {}", e.getMessage());
+                bytes = ("Error: " + e.getMessage()).getBytes("UTF-8");
+                status = sendResponse(400, bytes, exchangeObject);
             } catch (final Exception e) {
-                System.out.println("Error occured while getting messages: " + e.getMessage());
+                Log.warn("Error occured while getting messages: {}", e.getMessage());
             }
 
         /* Only POST and GET are supported, in any other case send a general error */
@@ -189,31 +135,205 @@ public class WarningHandler implements HttpHandler {
 
         /* Close the handle method and print the outcome of the process */
         if (status) {
-            System.out.println("Success: WarningHandler is done. Closing the handling process.");
+            Log.debug("WarningHandler is done. Closing the handling process.");
+        } else {
+            Log.debug("WarningHandler is done, but the operation failed. Closing the handling process.");
+        }
+    }
+
+    /**
+     * A method that stores a decoded warning message to the database.
+     * @param request WarningRequest, the decoded warning
+     * @return int, the response code: 200 if the message was stored, 500 if not
+     */
+    private int storeWarning(final WarningRequest request) {
+        final WarningMessage newMessage = request.getMessage();
+        applyWeather(request);
+
+        /* Add the message to the database */
+        try {
+            MessageDatabase.getInstance().setMessage(newMessage);
+        } catch (final SQLException e) {
+            Log.debug("Problem with message content: {}", e.getMessage());
+            return 500;
+        }
+
+        enrichWeather(newMessage);
+        return 200;
+    }
+
+    /**
+     * A method that sets the weather of a decoded warning before it is stored.
+     * <p>If the client asked for the weather, it is fetched from WeatherService before
+     * storing, or marked pending for WeatherEnricher if asynchronous weather is enabled.
+     * @param request WarningRequest, the decoded warning
+     */
+    static void applyWeather(final WarningRequest request) {
+        final WarningMessage newMessage = request.getMessage();
+
+        /* Check if the client asked for weather. If it did, get the weather
+        *  value from WeatherService API and add it to the message.
+        */
+        if (request.isWeatherRequested()) {
+            if (WeatherEnricher.isEnabled()) {
+                /* Store the message right away, the weather is fetched in the background */
+                newMessage.setWeather(WarningMessage.WEATHER_PENDING);
+            } else {
+                try {
+                    WeatherService weatherService = new WeatherService(newMessage.getLatitude(), newMessage.getLongitude());
+                    weatherService.callWeatherAPI();
+                    newMessage.setWeather(weatherService.getTemperature());
+                } catch (Exception e) {
+                    Log.warn("WarningHandler failed to use WeatherService: {}", e.getMessage());
+                }
+            }
         } else {
-            System.out.println("Failure: WarningHandler is done, but the operation failed. Closing the handling process.");
+            newMessage.setWeather(WarningMessage.WEATHER_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * A method that hands a stored message with pending weather to WeatherEnricher.
+     * @param message WarningMessage, the message that was stored
+     */
+    static void enrichWeather(final WarningMessage message) {
+        if (message.getWeather() == WarningMessage.WEATHER_PENDING) {
+            WeatherEnricher.getInstance().enrich(message);
+        }
+    }
+
+    /**
+     * A method that sends the messages of a query to the client.
+     * @param messages SerializedMessages, the messages that will be sent to client
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return true if succeeds, false if fails
+     */
+    private boolean sendMessages(SerializedMessages messages, HttpExchange exchangeObject) {
+        return sendResponse(200, messages.getBytes(), exchangeObject);
+    }
+
+    /**
+     * A method that sends one page of messages to the client.
+     * <p>If there are more messages after the page, the cursor for the next page
+     * is sent in the response header "Next-Cursor".
+     * @param page MessagePage, the page that will be sent to client
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return true if succeeds, false if fails
+     */
+    private boolean sendPage(MessagePage page, HttpExchange exchangeObject) {
+        if (page.hasNextPage()) {
+            exchangeObject.getResponseHeaders().set("Next-Cursor", page.getNextCursor().encode());
+        }
+        return sendResponse(200, page.getMessages().getBytes(), exchangeObject);
+    }
+
+    /**
+     * A method that sends the full message listing to the client.
+     * <p>The listing has an ETag for each content coding, and a client that sends it
+     * back in If-None-Match gets 304 without a body while no message has been committed.
+     * A client that prefers gzip gets the compressed copy of the listing.
+     * @param listing CachedListing, the listing that will be sent to client
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return true if succeeds, false if fails
+     */
+    private boolean sendListing(CachedListing listing, HttpExchange exchangeObject) {
+        final byte[] json = listing.getMessages().getBytes();
+        final ContentEncoding encoding = ContentEncoding.negotiate(exchangeObject.getRequestHeaders(), json.length);
+        final Headers responseHeaders = exchangeObject.getResponseHeaders();
+        responseHeaders.set("ETag", listing.getEtag(encoding));
+        responseHeaders.set("Vary", "Accept-Encoding");
+
+        if (listing.matches(exchangeObject.getRequestHeaders().getFirst("If-None-Match"), encoding)) {
+            Log.debug("The client has the current listing");
+            try {
+                exchangeObject.sendResponseHeaders(304, -1);
+                exchangeObject.close();
+                return true;
+            } catch (IOException e) {
+                Log.warn("Something went wrong when sending the GET response: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        if (encoding == ContentEncoding.GZIP) {
+            /* The listing has its gzip copy compressed already */
+            setEncodingHeaders(encoding, exchangeObject);
+            return sendResponse(200, listing.getGzipped(), ContentEncoding.IDENTITY, exchangeObject);
+        }
+        return sendResponse(200, json, encoding, exchangeObject);
+    }
+
+
+    /**
+     * A method that sets the headers of a response body that is sent with the given coding.
+     * @param encoding ContentEncoding, the coding of the body
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     */
+    private void setEncodingHeaders(ContentEncoding encoding, HttpExchange exchangeObject) {
+        final Headers responseHeaders = exchangeObject.getResponseHeaders();
+        responseHeaders.set("Vary", "Accept-Encoding");
+        if (encoding != ContentEncoding.IDENTITY) {
+            responseHeaders.set("Content-Encoding", encoding.getToken());
         }
     }
 
+    /**
+     * A method that gets the value of a parameter from the query string of the request URI.
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @param name String, the name of the parameter
+     * @return String, the decoded value of the parameter or null if the parameter was not found
+     */
+    private String getQueryParameter(HttpExchange exchangeObject, String name) {
+        final String query = exchangeObject.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+
+        for (final String pair : query.split("&")) {
+            final int separator = pair.indexOf('=');
+            final String key = separator < 0 ? pair : pair.substring(0, separator);
+            if (key.equals(name)) {
+                return separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+
+        return null;
+    }
+
     /**
      * A method that wraps the functionality of sending HTTP Exchange response.
+     * <p>The content is compressed with the coding negotiated with the client.
      * @param code int, the response code that will be sent to client
      * @param bytes byte[], contains bytes of the content that will be sent to client
      * @param exchangeObject HttpExchange, the exchange object formed with the client
      * @return true if succeeds, false if fails
      */
     private boolean sendResponse(int code, byte [] bytes, HttpExchange exchangeObject) {
-        System.out.println("Status: Sending HTTP response");
+        return sendResponse(code, bytes, ContentEncoding.negotiate(exchangeObject.getRequestHeaders(), bytes.length), exchangeObject);
+    }
+
+    /**
+     * A method that sends the content with the given coding.
+     * <p>A compressed body is deflated while it is written to the client and sent
+     * with chunked encoding, as its length is not known in advance.
+     * @param code int, the response code that will be sent to client
+     * @param bytes byte[], contains bytes of the content that will be sent to client
+     * @param encoding ContentEncoding, the coding the content is compressed with
+     * @param exchangeObject HttpExchange, the exchange object formed with the client
+     * @return true if succeeds, false if fails
+     */
+    private boolean sendResponse(int code, byte [] bytes, ContentEncoding encoding, HttpExchange exchangeObject) {
+        Log.debug("Sending HTTP response");
 
         try {
-            exchangeObject.sendResponseHeaders(code, bytes.length);
-            final OutputStream outputStream = exchangeObject.getResponseBody();
-            outputStream.write(bytes);
-            outputStream.flush();
-            outputStream.close();
+            setEncodingHeaders(encoding, exchangeObject);
+            exchangeObject.sendResponseHeaders(code, encoding == ContentEncoding.IDENTITY ? bytes.length : 0);
+            try (OutputStream outputStream = encoding.wrap(exchangeObject.getResponseBody())) {
+                outputStream.write(bytes);
+            }
             return true;
         } catch (Exception e) {
-            System.out.println("Error: Something went wrong when sending the GET response: " + e.getMessage());
+            Log.warn("Something went wrong when sending the GET response: {}", e.getMessage());
         }
 
         return false;
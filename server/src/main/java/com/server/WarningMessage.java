@@ -6,6 +6,11 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 
 public class WarningMessage {
+    /* Weather value of a message that has no weather information */
+    public static final int WEATHER_UNAVAILABLE = -999;
+    /* Weather value of a message whose weather is still being fetched in the background */
+    public static final int WEATHER_PENDING = -1000;
+
     private String nickname;
     private double latitude;
     private double longitude;
@@ -0,0 +1,178 @@
+package com.server;
+
+/**
+ * Typed body of a POST request to /warning, created by RequestDecoder.
+ * <p>A request is either a new WarningMessage or a user, time or area query.
+ * Only the getters that belong to the type of the request return a value,
+ * the others return null.
+ */
+public class WarningRequest {
+    /**
+     * Types of the requests accepted by WarningHandler.
+     */
+    public enum Type {
+        WARNING("post_warning"),
+        USER_QUERY("post_query_user"),
+        TIME_QUERY("post_query_time"),
+        AREA_QUERY("post_query_area");
+
+        private final String operation;
+
+        Type(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Getter for the name of the operation used in the metrics.
+         * @return String, the name of the operation
+         */
+        public String getOperation() {
+            return this.operation;
+        }
+    }
+
+    private final Type type;
+    private WarningMessage message;
+    private boolean weatherRequested;
+    private UserQuery userQuery;
+    private TimeQuery timeQuery;
+    private AreaQuery areaQuery;
+    private boolean paginated;
+    private int limit = MessagePage.DEFAULT_LIMIT;
+    private MessageCursor cursor;
+
+    private WarningRequest(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Creates a request that stores a new message.
+     * @param message WarningMessage, the decoded message
+     * @param weatherRequested boolean, true if the client asked for the weather at the location of the message
+     * @return WarningRequest
+     */
+    public static WarningRequest warning(WarningMessage message, boolean weatherRequested) {
+        final WarningRequest request = new WarningRequest(Type.WARNING);
+        request.message = message;
+        request.weatherRequested = weatherRequested;
+        return request;
+    }
+
+    /**
+     * Creates a user query.
+     * @param userQuery UserQuery, the decoded query
+     * @return WarningRequest
+     */
+    public static WarningRequest userQuery(UserQuery userQuery) {
+        final WarningRequest request = new WarningRequest(Type.USER_QUERY);
+        request.userQuery = userQuery;
+        return request;
+    }
+
+    /**
+     * Creates a time query.
+     * @param timeQuery TimeQuery, the decoded query
+     * @return WarningRequest
+     */
+    public static WarningRequest timeQuery(TimeQuery timeQuery) {
+        final WarningRequest request = new WarningRequest(Type.TIME_QUERY);
+        request.timeQuery = timeQuery;
+        return request;
+    }
+
+    /**
+     * Creates an area query.
+     * @param areaQuery AreaQuery, the decoded query
+     * @return WarningRequest
+     */
+    public static WarningRequest areaQuery(AreaQuery areaQuery) {
+        final WarningRequest request = new WarningRequest(Type.AREA_QUERY);
+        request.areaQuery = areaQuery;
+        return request;
+    }
+
+    /**
+     * Makes the query ask for a single page of messages.
+     * @param limit int, the page size
+     * @param cursor MessageCursor, the cursor of the page or null for the first page
+     * @return WarningRequest, this request
+     */
+    public WarningRequest withPage(int limit, MessageCursor cursor) {
+        this.paginated = true;
+        this.limit = limit;
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * Getter for the type of the request.
+     * @return Type
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Getter for the message of a WARNING request.
+     * @return WarningMessage, or null for queries
+     */
+    public WarningMessage getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Checks whether the client asked for the weather of a WARNING request.
+     * @return boolean, true if the message had the field "weather"
+     */
+    public boolean isWeatherRequested() {
+        return this.weatherRequested;
+    }
+
+    /**
+     * Getter for the query of a USER_QUERY request.
+     * @return UserQuery, or null for other types
+     */
+    public UserQuery getUserQuery() {
+        return this.userQuery;
+    }
+
+    /**
+     * Getter for the query of a TIME_QUERY request.
+     * @return TimeQuery, or null for other types
+     */
+    public TimeQuery getTimeQuery() {
+        return this.timeQuery;
+    }
+
+    /**
+     * Getter for the query of an AREA_QUERY request.
+     * @return AreaQuery, or null for other types
+     */
+    public AreaQuery getAreaQuery() {
+        return this.areaQuery;
+    }
+
+    /**
+     * Checks whether the query asks for a single page instead of all messages.
+     * @return boolean, true if the query had the field "limit" or "cursor"
+     */
+    public boolean isPaginated() {
+        return this.paginated;
+    }
+
+    /**
+     * Getter for the page size of a paginated query.
+     * @return int, the page size
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Getter for the cursor of a paginated query.
+     * @return MessageCursor, or null for the first page
+     */
+    public MessageCursor getCursor() {
+        return this.cursor;
+    }
+}
@@ -0,0 +1,189 @@
+package com.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Cache of weather service results keyed by a rounded latitude/longitude grid cell.
+ * <p>Warnings are often sent from nearly the same spot, and the temperature does not
+ * change between them. All coordinates that fall into the same grid cell share one
+ * cached temperature until it expires.
+ * <p>If several threads miss the same cell at the same time, only the first one calls
+ * the weather service and the others wait for its result.
+ * <p>The hit, miss and coalesced counters can be used to tune the cell size.
+ */
+public class WeatherCache {
+    /* Size of a grid cell in degrees, can be changed with -Dweathercache.cellsize=DEGREES, 0 disables the cache */
+    private static final double DEFAULT_CELL_SIZE = Double.parseDouble(System.getProperty("weathercache.cellsize", "0.05"));
+    /* How long a temperature is reused, can be changed with -Dweathercache.ttl=MS */
+    private static final long DEFAULT_TTL_MS = Long.getLong("weathercache.ttl", 10 * 60 * 1000);
+    /* Largest number of cached cells */
+    private static final int MAX_ENTRIES = 10000;
+
+    private final double cellSize;
+    private final long ttlMs;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Temperature of one grid cell. The future is completed when the
+     * weather service has answered.
+     */
+    private static class Entry {
+        private final CompletableFuture<Integer> temperature = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Constructor that uses the configured cell size and time-to-live.
+     */
+    public WeatherCache() {
+        this(DEFAULT_CELL_SIZE, DEFAULT_TTL_MS);
+    }
+
+    /**
+     * Constructor that initializes the class variables.
+     * @param cellSize double, the size of a grid cell in degrees, 0 or less disables the cache
+     * @param ttlMs long, how long a temperature is reused in milliseconds
+     */
+    public WeatherCache(double cellSize, long ttlMs) {
+        this.cellSize = cellSize;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Gets the temperature for the given coordinates.
+     * <p>Uses the cached temperature of the grid cell if there is one, otherwise calls
+     * the loader. A failed lookup (WarningMessage.WEATHER_UNAVAILABLE) is not cached.
+     * @param latitude double, the latitude of the warning
+     * @param longitude double, the longitude of the warning
+     * @param loader IntSupplier that calls the weather service for the coordinates
+     * @return int, the temperature or WarningMessage.WEATHER_UNAVAILABLE if it could not be fetched
+     */
+    public int getTemperature(final double latitude, final double longitude, final IntSupplier loader) {
+        if (this.cellSize <= 0) {
+            this.misses.incrementAndGet();
+            return loader.getAsInt();
+        }
+
+        final Long key = cellKey(latitude, longitude);
+
+        while (true) {
+            final Entry existing = this.entries.get(key);
+
+            if (existing != null && existing.expiresAt > System.currentTimeMillis()) {
+                if (existing.temperature.isDone()) {
+                    this.hits.incrementAndGet();
+                } else {
+                    this.coalesced.incrementAndGet();
+                }
+                return existing.temperature.join();
+            }
+
+            final Entry entry = new Entry();
+            final boolean claimed = existing == null
+                ? this.entries.putIfAbsent(key, entry) == null
+                : this.entries.replace(key, existing, entry);
+
+            if (claimed) {
+                this.misses.incrementAndGet();
+                return load(key, entry, loader);
+            }
+            /* Another thread claimed the cell first, use its entry */
+        }
+    }
+
+    /**
+     * Getter for the number of lookups served from the cache.
+     * @return long, the number of cache hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Getter for the number of lookups that called the weather service.
+     * @return long, the number of cache misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Getter for the number of lookups that waited for another thread's call to the weather service.
+     * @return long, the number of coalesced lookups
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * Getter for the number of cells currently in the cache.
+     * @return int, the number of cached cells
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Calls the loader for a claimed cell and publishes the result to the waiting threads.
+     * @param key Long, the key of the cell
+     * @param entry Entry, the entry claimed by this thread
+     * @param loader IntSupplier that calls the weather service
+     * @return int, the loaded temperature
+     */
+    private int load(final Long key, final Entry entry, final IntSupplier loader) {
+        int temperature = WarningMessage.WEATHER_UNAVAILABLE;
+
+        try {
+            temperature = loader.getAsInt();
+        } finally {
+            if (temperature == WarningMessage.WEATHER_UNAVAILABLE) {
+                /* Do not cache failures, the next warning from this cell tries again */
+                this.entries.remove(key, entry);
+            } else {
+                entry.expiresAt = System.currentTimeMillis() + this.ttlMs;
+                if (this.entries.size() > MAX_ENTRIES) {
+                    evictExpired();
+                }
+            }
+            entry.temperature.complete(temperature);
+        }
+
+        return temperature;
+    }
+
+    /**
+     * Removes expired cells. If the cache is still over its size limit, removes all cells.
+     */
+    private void evictExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt < now) {
+                iterator.remove();
+            }
+        }
+        if (this.entries.size() > MAX_ENTRIES) {
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Calculates the key of the grid cell that contains the given coordinates.
+     * @param latitude double, the latitude
+     * @param longitude double, the longitude
+     * @return Long, the row and column of the cell packed into one value
+     */
+    private Long cellKey(final double latitude, final double longitude) {
+        final long row = (long) Math.floor(latitude / this.cellSize);
+        final long column = (long) Math.floor(longitude / this.cellSize);
+        return (row << 32) | (column & 0xffffffffL);
+    }
+}
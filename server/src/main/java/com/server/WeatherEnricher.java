@@ -0,0 +1,124 @@
+package com.server;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background worker that adds weather information to stored WarningMessages.
+ * <p>When asynchronous weather is enabled, WarningHandler stores a message that requests
+ * weather right away with the weather value WarningMessage.WEATHER_PENDING and passes it
+ * to enrich(). A worker thread then calls the WeatherService and updates the weather
+ * column of the message, so the POST does not have to wait for the weather service.
+ * <p>Messages that are still pending when the server stops are picked up again with
+ * resumePending() on the next start.
+ * <p>Asynchronous weather is enabled with -Dweatherservice.async=true.
+ */
+public class WeatherEnricher {
+    /* Whether weather is fetched in the background instead of during the POST */
+    private static final boolean ENABLED = Boolean.getBoolean("weatherservice.async");
+    /* Number of worker threads, can be changed with -Dweatherservice.workers=N */
+    private static final int WORKERS = Integer.getInteger("weatherservice.workers", 4);
+    /* Largest number of messages waiting for weather */
+    private static final int QUEUE_SIZE = 10000;
+
+    private static WeatherEnricher enricherInstance = null;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Public getter for the singleton instance.
+     * @return WeatherEnricher object
+     */
+    public static synchronized WeatherEnricher getInstance() {
+        if (enricherInstance == null) {
+            enricherInstance = new WeatherEnricher();
+        }
+        return enricherInstance;
+    }
+
+    /**
+     * Checks whether weather should be fetched in the background.
+     * @return boolean, true if asynchronous weather is enabled, false if not
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /* Private constructor for Singleton implementation */
+    private WeatherEnricher() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                final Thread thread = new Thread(runnable, "weather-enricher-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Queues a stored message for weather enrichment.
+     * <p>The message must already be in the database with the weather value
+     * WarningMessage.WEATHER_PENDING.
+     * @param message WarningMessage, the message that requested weather
+     */
+    public void enrich(final WarningMessage message) {
+        try {
+            this.executor.execute(() -> fetchWeather(message));
+        } catch (RejectedExecutionException e) {
+            /* The message stays pending in the database and is retried on the next start */
+            Log.warn("Weather enrichment queue is full, message from {} stays pending", message.getNickname());
+        }
+    }
+
+    /**
+     * Queues all messages that are still waiting for weather in the database.
+     * <p>Should be called once after the database has been opened.
+     */
+    public void resumePending() {
+        try {
+            final List<WarningMessage> pending = MessageDatabase.getInstance().getMessagesWithPendingWeather();
+            Log.info("Resuming weather enrichment for {} messages", pending.size());
+            for (final WarningMessage message : pending) {
+                enrich(message);
+            }
+        } catch (SQLException e) {
+            Log.error("Failed to read messages with pending weather: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the worker threads. Messages that were not enriched stay pending.
+     */
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Fetches the weather for the message and stores it to the database.
+     * <p>If the weather service fails, the message is stored as having no weather,
+     * so that it does not stay pending forever.
+     * @param message WarningMessage, the message that requested weather
+     */
+    private void fetchWeather(final WarningMessage message) {
+        int temperature = WarningMessage.WEATHER_UNAVAILABLE;
+
+        try {
+            final WeatherService weatherService = new WeatherService(message.getLatitude(), message.getLongitude());
+            weatherService.callWeatherAPI();
+            temperature = weatherService.getTemperature();
+        } catch (Exception e) {
+            Log.warn("WeatherEnricher failed to use WeatherService: {}", e.getMessage());
+        }
+
+        try {
+            message.setWeather(temperature);
+            MessageDatabase.getInstance().updateWeather(message);
+        } catch (SQLException e) {
+            Log.warn("WeatherEnricher failed to store the weather: {}", e.getMessage());
+        }
+    }
+}
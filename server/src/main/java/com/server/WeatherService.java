@@ -1,43 +1,63 @@
 package com.server;
 
-import java.io.BufferedReader;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
 
 /**
  * Class that wraps functionality related to Weather Service.
  * <p>This class is initiated with two parameters: double latitude and double longitude.
- * The class creates an XML file with the given coordinates and then sends the file to
- * an external weather service using Curl.
+ * The class builds an XML document with the given coordinates in memory and sends it to
+ * an external weather service over HTTPS.
+ * <p>All instances share one SSL socket factory, so the JDK can keep the connection
+ * to the weather service alive and resume the TLS session between calls.
+ * <p>Temperatures are cached by grid cell in WeatherCache, so warnings sent from nearly
+ * the same spot reuse one call to the weather service.
  * <p>The class expects to receive an XML containing the temperature for the given coordinates.
  * <p>The class returns the temperature for the given coordinates with the method getTemperature()
  * <p>This class was created with help of ChatGPT.
  */
 public class WeatherService {
+    /* Timeouts for the connection to the weather service */
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    /* Address of the weather service, can be changed with -Dweatherservice.url=URL */
+    private static volatile String endpoint = System.getProperty("weatherservice.url", "https://localhost:4001/weather");
+
+    /* The weather service uses a self-signed certificate, so like 'curl -k' the certificate is not verified */
+    private static final SSLSocketFactory SOCKET_FACTORY = createSocketFactory();
+    private static final HostnameVerifier HOSTNAME_VERIFIER = (hostname, session) -> true;
+
+    /* Temperatures of recently queried grid cells, shared by all instances */
+    private static final WeatherCache CACHE = new WeatherCache();
+
+    static {
+        Metrics.getInstance().register(Metrics.WEATHER_CACHE_LOOKUPS, "result=\"hit\"", CACHE::getHits);
+        Metrics.getInstance().register(Metrics.WEATHER_CACHE_LOOKUPS, "result=\"miss\"", CACHE::getMisses);
+        Metrics.getInstance().register(Metrics.WEATHER_CACHE_LOOKUPS, "result=\"coalesced\"", CACHE::getCoalesced);
+    }
+
     private double latitude;
     private double longitude;
-    private String filename;
     private String weatherResponse;
     private int temperature;
 
     /**
      * Constructor for WeatherService class.
-     * <p>Creates an XML file containing the given coordinates.
      * @param latitude double containing latitude coordinates
      * @param longitude double containins longitude coordinates
      */
@@ -49,37 +69,50 @@ public class WeatherService {
             throw new IllegalArgumentException("Error: Invalid longitude value: " + longitude);
         }
         
-        try {
-            System.out.println("Status: Initializing WeatherService");
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.temperature = -999;
-            createWeatherCoordinatesFile();
-        } catch (Exception e) {
-            System.out.println("Error: Failed to initialize WeatherService: " + e.getMessage());
-        }
+        Log.debug("Initializing WeatherService");
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.temperature = -999;
+    }
+
+    /**
+     * This method gets the temperature for the coordinates of this instance.
+     * <p>Uses the cached temperature of the surrounding grid cell if there is one,
+     * otherwise calls the Weather Service API.
+     */
+    public void callWeatherAPI() {
+        this.temperature = CACHE.getTemperature(this.latitude, this.longitude, this::fetchTemperature);
+    }
+
+    /**
+     * Getter for the cache that is shared by all instances.
+     * @return WeatherCache, the cache of temperatures by grid cell
+     */
+    public static WeatherCache getCache() {
+        return CACHE;
     }
 
     /**
      * This method handles the sequence of events required to communicate with the
      * Weather Service API in order to get the temperature information.
-     * <p>Deletes the created XML coordinate file when the sequence is over.
+     * @return int, the temperature or -999 if the operation was not successful
      */
-    public void callWeatherAPI() {
+    private int fetchTemperature() {
+        final long start = System.nanoTime();
         this.weatherResponse = sendWeatherCoordinates();
+        Metrics.getInstance().observe(Metrics.WEATHER_CALL_DURATION, "", System.nanoTime() - start);
         if (weatherResponse != null) {
             if (weatherResponse.contains("weather")) {
-                this.temperature = parseWeatherTemperature(weatherResponse);
-                System.out.println("Status: Temperature: " + this.temperature + " Celcius");
+                final int fetchedTemperature = parseWeatherTemperature(weatherResponse);
+                Log.debug("Temperature: {} Celcius", fetchedTemperature);
+                return fetchedTemperature;
             } else {
-                System.out.println("Error: The received XML does not contain weather information");
+                Log.warn("The received XML does not contain weather information");
             }
         } else {
-            System.out.println("Status: Did not parse weather data since there was a problem with the connection to the weather service");
+            Log.debug("Did not parse weather data since there was a problem with the connection to the weather service");
         }
-
-        /* Delete the created XML since it is not needed any longer */
-        deleteXMLCoordinateFile();
+        return -999;
     }
 
     /**
@@ -103,17 +136,6 @@ public class WeatherService {
         return this.temperature + " Celsius";
     }
 
-    /**
-     * Basic getter for the String filename class variable.
-     * @return The filename of the file containing the XML
-     * coordinates the class received as parameter.
-     * Note that this file will be deleted after the method
-     * callWatherAPI() has been called.
-     */
-    public String getFilename() {
-        return this.filename;
-    }
-
     /**
      * Basic getter that return the class variable latitude
      * @return double latitude
@@ -131,7 +153,24 @@ public class WeatherService {
     }
 
     /**
-     * Method that creates an XML file containing the coordinates
+     * Sets the address of the weather service used by all instances.
+     * <p>Mainly meant for tests that run against a local stub weather server.
+     * @param url String, the address of the weather service, e.g. "https://localhost:4001/weather"
+     */
+    public static void setEndpoint(String url) {
+        endpoint = url;
+    }
+
+    /**
+     * Getter for the address of the weather service.
+     * @return String, the address of the weather service
+     */
+    public static String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Method that creates an XML document containing the coordinates
      * the Class received as parameter.
      * <p>
      * The XML structure will be as follows:
@@ -141,111 +180,124 @@ public class WeatherService {
      *    <longitude>##.###</longitude>
      *</coordinates>
      * }</pre>
+     * @return byte[], the XML document encoded in UTF-8
      */
-    private void createWeatherCoordinatesFile() {
-        System.out.println("Status: Creating a XML file containing coordinates for weather service");
-        try {
-            /* Generate unique filename */
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmssSSS");
-            this.filename = "weathercoordinates_" + dateFormat.format(new Date()) + ".xml";
+    private byte[] createWeatherCoordinatesXML() {
+        final StringBuilder xml = new StringBuilder(96);
+        xml.append("<coordinates><latitude>");
+        xml.append(this.latitude);
+        xml.append("</latitude><longitude>");
+        xml.append(this.longitude);
+        xml.append("</longitude></coordinates>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
 
-            /* Create XML file */
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.newDocument();
+    /**
+     * Method that sends the coordinates to the Weather Service.
+     * <p>The connection is kept alive by the JDK after the response has been read
+     * completely, so the next call can reuse it.
+     * @return String that contains the response from the Weather Service, or null if the call failed.
+     */
+    private String sendWeatherCoordinates() {
+        Log.debug("Sending coordinates to the weather server");
+        HttpURLConnection connection = null;
 
-            /* Create root element "coordinates" */
-            Element root = document.createElement("coordinates");
-            document.appendChild(root);
+        try {
+            final byte[] body = createWeatherCoordinatesXML();
+            connection = (HttpURLConnection) new URL(endpoint).openConnection();
 
-            /* Create element "latitude" */
-            Element latitude = document.createElement("latitude");
-            latitude.appendChild(document.createTextNode(Double.toString(this.latitude)));
-            root.appendChild(latitude);
+            if (connection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(SOCKET_FACTORY);
+                ((HttpsURLConnection) connection).setHostnameVerifier(HOSTNAME_VERIFIER);
+            }
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/xml");
+            connection.setDoOutput(true);
 
-            /* Create element "longitude" */
-            Element longitude = document.createElement("longitude");
-            longitude.appendChild(document.createTextNode(Double.toString(this.longitude)));
-            root.appendChild(longitude);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(body);
+            }
 
-            /* Write the content into XML file */
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(document);
-            StreamResult result = new StreamResult(new File(this.filename));
-            transformer.transform(source, result);
-            System.out.println("Success: File " + this.filename + " created");
-            
-        } catch (ParserConfigurationException | TransformerException e) {
-            System.out.println("Error: XML file for weather coordinates could not be created");
-            System.out.println(e.getMessage());
-        }
+            final int code = connection.getResponseCode();
+            if (code != 200) {
+                Log.warn("Weather service responded with code {}", code);
+                /* Read the error body so that the connection can still be reused */
+                try (InputStream errorStream = connection.getErrorStream()) {
+                    if (errorStream != null) {
+                        readFully(errorStream);
+                    }
+                }
+                return null;
+            }
 
-        /* Check whether the file exists */
-        File file = new File(this.filename);
-        if (file.isFile()) {
-            System.out.println("Success: File " + this.filename + " now exists");
-        } else {
-            System.out.println("Error: The file was not created succesfully since it can not be found");
+            Log.debug("Weather coordinates sent to server");
+            try (InputStream inputStream = connection.getInputStream()) {
+                return readFully(inputStream);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Failed to send weather coordinates to server: {}", e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
         }
     }
 
     /**
-     * Method that forms a curl command with the filename of the XML
-     * file that contains the coordinates.
-     * <p>Uses that curl command to send the file to the Weather Service.
-     * @return String that contains the response from the Weather Service.
+     * Reads the given stream until the end.
+     * @param inputStream InputStream, the stream to be read
+     * @return String, the content of the stream decoded as UTF-8
+     * @throws IOException
      */
-    private synchronized String sendWeatherCoordinates() {
-        System.out.println("Status: Sending coordinates from file " + this.filename + " to the weather server");
-
-        try {
-            /* Build the command for curl */
-            String curlCommand = "curl -k -d @./" + this.filename + " https://localhost:4001/weather -k -H Content-Type:application/xml -v";
+    private static String readFully(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toString(StandardCharsets.UTF_8.name());
+    }
 
-            /* Execute the curl command as a separate process */
-            System.out.println("Status: Executing curl command: " + curlCommand);
-            Process process = Runtime.getRuntime().exec(curlCommand);
+    /**
+     * Creates the SSL socket factory that is shared by all connections to the weather service.
+     * <p>The weather service uses a self-signed certificate, so the certificate is accepted without
+     * verification in the same way as 'curl -k' did before.
+     * @return SSLSocketFactory, the shared socket factory
+     */
+    private static SSLSocketFactory createSocketFactory() {
+        final TrustManager[] trustAll = new TrustManager[] {
+            new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
 
-            /* Read the output of the process */
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder responseBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                responseBuilder.append(line);
-            }
-            reader.close();
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {}
 
-            /* Wait for the process to finish */
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                System.out.println("Success: Weather coordinates sent to server");
-            } else {
-                System.out.println("Error: Something went wrong while waiting for the runtime process to end, coordinates were not sent");
-                return null;
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {}
             }
+        };
 
-            /* Return the received response as a String */
-            return responseBuilder.toString();
-            
-        } catch (IOException | InterruptedException | NullPointerException e) {
-            System.out.println("Error: Failed to send weather coordinates to server: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        } catch (Exception e) {
-            System.out.println("Error: Failed to send weather coordinates to server " + e.getMessage());
-            return null;
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAll, null);
+            return sslContext.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.warn("Failed to create SSL context for weather service: {}", e.getMessage());
+            return (SSLSocketFactory) SSLSocketFactory.getDefault();
         }
     }
 
     /**
      * Method that takes the response String received from the 
      * Weather Service, and parses it to extract the temperature information.
-     * @param response String received earlier from the Weather Service with curl.
+     * @param response String received earlier from the Weather Service.
      * @return Temperature as int, will be -999 if the operation failed.
      */
     private int parseWeatherTemperature(String response) {
-        System.out.println("Status: Parsing weather temperature from response");
+        Log.debug("Parsing weather temperature from response");
     
         try {
             /* Extract the temperature information */
@@ -255,21 +307,8 @@ public class WeatherService {
             int temperature = Integer.parseInt(temperatureStr);
             return temperature;
         } catch (Exception e) {
-            System.out.println("Error: Failed to parse weather temperature from response");
-            e.printStackTrace();
+            Log.warn("Failed to parse weather temperature from response: {}", e.getMessage());
             return -999;
         }
     }
-
-    /**
-     * Method that deletes the created XML file.
-     */
-    private void deleteXMLCoordinateFile() {
-        File file = new File(this.filename);
-        if (file.delete()) {
-            System.out.println("Status: The XML file containing coordinates was deleted, was no more required");
-        } else {
-            System.out.println("Error: Failed to delete the XML file containing coordinates");
-        }
-    }
 }
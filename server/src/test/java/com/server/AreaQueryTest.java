@@ -0,0 +1,83 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AreaQueryTest {
+
+    @Test
+    public void testRadiusQuery() {
+        /* Oulu city centre with a 5 km radius */
+        AreaQuery areaQuery = AreaQuery.fromRadius(65.0121, 25.4651, 5);
+
+        assertTrue(areaQuery.isRadiusQuery());
+        assertTrue(areaQuery.contains(65.0121, 25.4651));
+        assertTrue(areaQuery.contains(65.05, 25.47));
+        /* Inside the bounding box but outside the circle */
+        assertFalse(areaQuery.contains(areaQuery.getNorth() - 0.001, areaQuery.getEast() - 0.001));
+        assertFalse(areaQuery.contains(65.2, 25.4651));
+    }
+
+    @Test
+    public void testPointsJustInsideTheRadiusAreFound() {
+        /* Around the center, near a pole and on both sides of the 180th meridian */
+        final double[][] circles = { { 65, 25, 100 }, { -70, 10, 500 }, { 0, 0, 1000 }, { 89.5, 0, 100 }, { 10, 179.5, 200 }, { -40, -179.9, 50 } };
+        for (double[] circle : circles) {
+            final AreaQuery areaQuery = AreaQuery.fromRadius(circle[0], circle[1], circle[2]);
+            for (int bearing = 0; bearing < 360; bearing++) {
+                final double[] inside = destination(circle[0], circle[1], bearing, circle[2] * 0.999);
+                assertTrue(circle[0] + "," + circle[1] + " bearing " + bearing, areaQuery.contains(inside[0], inside[1]));
+                final double[] outside = destination(circle[0], circle[1], bearing, circle[2] * 1.001);
+                assertFalse(circle[0] + "," + circle[1] + " bearing " + bearing, areaQuery.contains(outside[0], outside[1]));
+            }
+        }
+
+        /* A point due north at 99.96 km */
+        assertTrue(AreaQuery.fromRadius(65, 25, 100).contains(65 + 99.96 / 6371.0 * 180 / Math.PI, 25));
+    }
+
+    @Test
+    public void testRadiusBoxWrapsAroundTheAntimeridian() {
+        final AreaQuery areaQuery = AreaQuery.fromRadius(10, 179.5, 200);
+        assertTrue(areaQuery.crossesAntimeridian());
+        assertTrue(areaQuery.contains(10, 180));
+        assertTrue(areaQuery.contains(10, -179.5));
+        assertFalse(areaQuery.contains(10, 0));
+
+        final AreaQuery polar = AreaQuery.fromRadius(89.5, 0, 100);
+        assertFalse(polar.crossesAntimeridian());
+        assertEquals(-180, polar.getWest(), 0);
+        assertEquals(180, polar.getEast(), 0);
+        assertEquals(90, polar.getNorth(), 0);
+    }
+
+    @Test
+    public void testBoundingBoxQuery() {
+        AreaQuery areaQuery = new AreaQuery(64.0, 66.0, 24.0, 26.0);
+
+        assertFalse(areaQuery.isRadiusQuery());
+        assertTrue(areaQuery.contains(64.0, 26.0));
+        assertFalse(areaQuery.contains(63.99, 25.0));
+    }
+
+    /* The point at the given distance and bearing from the start point on the sphere */
+    private static double[] destination(double latitude, double longitude, double bearing, double distanceKm) {
+        final double angle = distanceKm / 6371.0;
+        final double phi = Math.toRadians(latitude);
+        final double theta = Math.toRadians(bearing);
+        final double phi2 = Math.asin(Math.sin(phi) * Math.cos(angle) + Math.cos(phi) * Math.sin(angle) * Math.cos(theta));
+        final double lambda2 = Math.toRadians(longitude)
+            + Math.atan2(Math.sin(theta) * Math.sin(angle) * Math.cos(phi), Math.cos(angle) - Math.sin(phi) * Math.sin(phi2));
+        final double normalized = (Math.toDegrees(lambda2) + 540) % 360 - 180;
+        return new double[] { Math.toDegrees(phi2), normalized };
+    }
+
+    @Test
+    public void testDistance() {
+        /* One degree of latitude is about 111 km */
+        assertEquals(111.2, AreaQuery.distanceKm(65.0, 25.0, 66.0, 25.0), 0.5);
+    }
+}
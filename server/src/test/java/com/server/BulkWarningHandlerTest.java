@@ -0,0 +1,111 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class BulkWarningHandlerTest {
+    private File dbFile;
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException, SQLException {
+        this.dbFile = File.createTempFile("bulkwarninghandlertest", ".db");
+        this.dbFile.delete();
+        MessageDatabase.getInstance().open(this.dbFile.getPath());
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/bulk", new BulkWarningHandler());
+        this.server.start();
+    }
+
+    @After
+    public void stopServer() throws SQLException {
+        this.server.stop(0);
+        MessageDatabase.getInstance().closeDB();
+        for (String suffix : new String[] { "", "-wal", "-shm" }) {
+            new File(this.dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testEachItemGetsItsOwnStatus() throws IOException, SQLException {
+        final JSONArray body = new JSONArray()
+            .put(warning("a"))
+            .put(warning("b").put("dangertype", "Dragon"))
+            .put(warning("a"))
+            .put(new JSONObject().put("query", "user").put("nickname", "a"))
+            .put(warning("c"));
+
+        final long commitsBefore = metricValue("db_batch_commit_duration_seconds_count");
+        final long messagesBefore = metricValue("db_batch_messages_total");
+        final JSONObject response = post(body.toString());
+
+        assertEquals(2, response.getInt("accepted"));
+        assertEquals(3, response.getInt("rejected"));
+        final JSONArray results = response.getJSONArray("results");
+        assertEquals(200, status(results, 0));
+        assertEquals(413, status(results, 1));
+        /* The duplicate of the first item fails only its own insert */
+        assertEquals(500, status(results, 2));
+        assertTrue(results.getJSONObject(2).has("error"));
+        assertEquals(412, status(results, 3));
+        assertEquals(200, status(results, 4));
+        assertFalse(results.getJSONObject(4).has("error"));
+
+        /* The three valid items, including the duplicate, went to the database in one transaction */
+        assertEquals(1, metricValue("db_batch_commit_duration_seconds_count") - commitsBefore);
+        assertEquals(3, metricValue("db_batch_messages_total") - messagesBefore);
+        assertEquals(2, MessageDatabase.getInstance().getMessages().length());
+    }
+
+    private static JSONObject warning(String nickname) {
+        return new JSONObject().put("nickname", nickname).put("latitude", 65.0).put("longitude", 25.4)
+            .put("dangertype", "Moose").put("sent", "2023-02-01T12:00:00.000Z");
+    }
+
+    private static int status(JSONArray results, int index) {
+        final JSONObject result = results.getJSONObject(index);
+        assertEquals(index, result.getInt("index"));
+        return result.getInt("status");
+    }
+
+    private static long metricValue(String series) {
+        final Matcher matcher = Pattern.compile("(?m)^" + series + " (\\d+)$").matcher(Metrics.getInstance().render());
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private JSONObject post(String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + this.server.getAddress().getPort() + "/bulk").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream inputStream = connection.getInputStream()) {
+            return new JSONObject(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.sun.net.httpserver.Headers;
+
+import org.junit.Test;
+
+public class ContentEncodingTest {
+
+    @Test
+    public void testNegotiation() {
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(List.of("br, identity")));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(List.of("gzip, deflate, br")));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(List.of("deflate", "GZip")));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate(List.of("gzip;q=0.5, deflate")));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate(List.of("gzip;q=0, *")));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(List.of("gzip; q=0, deflate;q=0.0")));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(List.of("*;q=0.1")));
+    }
+
+    @Test
+    public void testSmallBodiesAreNotCompressed() {
+        final Headers headers = new Headers();
+        headers.add("Accept-Encoding", "gzip");
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(headers, 10));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(headers, 100_000));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate(headers, -1));
+    }
+
+    @Test
+    public void testStreamsCanBeDecompressed() throws IOException {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"nickname\":\"n").append(i % 20).append("\",\"dangertype\":\"Moose\",\"latitude\":65.").append(i).append('}');
+        }
+        final byte[] bytes = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (OutputStream output = encoding.wrap(body)) {
+                output.write(bytes);
+            }
+
+            final InputStream input;
+            if (encoding == ContentEncoding.GZIP) {
+                input = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()));
+            } else if (encoding == ContentEncoding.DEFLATE) {
+                input = new InflaterInputStream(new ByteArrayInputStream(body.toByteArray()));
+            } else {
+                input = new ByteArrayInputStream(body.toByteArray());
+            }
+            assertArrayEquals(bytes, input.readAllBytes());
+            if (encoding != ContentEncoding.IDENTITY) {
+                assertTrue(encoding + " " + body.size(), body.size() * 5 < bytes.length);
+            }
+        }
+    }
+}
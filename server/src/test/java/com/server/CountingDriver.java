@@ -0,0 +1,125 @@
+package com.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for tests that counts the statements SQLite actually runs.
+ * <p>Once installed it is asked before the SQLite driver for every "jdbc:sqlite:" URL,
+ * so the connections of MessageDatabase and its ConnectionPool are opened through it.
+ * Every execute call on any Statement, PreparedStatement or CallableStatement of those
+ * connections is counted, whether the statement was cached or not.
+ */
+public class CountingDriver implements Driver {
+    private static final CountingDriver INSTANCE = new CountingDriver();
+    private static final AtomicLong EXECUTIONS = new AtomicLong();
+    private static boolean installed = false;
+
+    private final Driver sqlite = new org.sqlite.JDBC();
+
+    private CountingDriver() {}
+
+    /**
+     * Registers the driver in front of the other registered drivers.
+     * @throws SQLException
+     */
+    public static synchronized void install() throws SQLException {
+        if (installed) {
+            return;
+        }
+        final List<Driver> drivers = Collections.list(DriverManager.getDrivers());
+        for (final Driver driver : drivers) {
+            DriverManager.deregisterDriver(driver);
+        }
+        DriverManager.registerDriver(INSTANCE);
+        for (final Driver driver : drivers) {
+            DriverManager.registerDriver(driver);
+        }
+        installed = true;
+    }
+
+    /**
+     * Getter for the number of statements run on the connections of this driver.
+     * @return long, the number of execute calls
+     */
+    public static long getExecutionCount() {
+        return EXECUTIONS.get();
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        final Connection connection = this.sqlite.connect(url, info);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            forward(connection, (method, result) -> result instanceof Statement ? countExecutions((Statement) result, method.getReturnType()) : result));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith("jdbc:sqlite:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        return this.sqlite.getPropertyInfo(url, info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return this.sqlite.getMajorVersion();
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return this.sqlite.getMinorVersion();
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private interface ResultWrapper {
+        Object wrap(Method method, Object result);
+    }
+
+    /* Wraps a statement so that its execute methods are counted */
+    private static Object countExecutions(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type }, forward(statement, (method, result) -> result));
+    }
+
+    /* Calls the method on the target, counting the execute methods of statements */
+    private static InvocationHandler forward(Object target, ResultWrapper wrapper) {
+        return (proxy, method, arguments) -> {
+            if (target instanceof Statement && method.getName().startsWith("execute")) {
+                EXECUTIONS.incrementAndGet();
+            }
+            try {
+                return wrapper.wrap(method, method.invoke(target, arguments));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+}
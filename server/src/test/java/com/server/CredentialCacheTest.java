@@ -0,0 +1,29 @@
+package com.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CredentialCacheTest {
+
+    @Test
+    public void testVerifyCachedCredentials() {
+        CredentialCache cache = new CredentialCache();
+        assertFalse(cache.verify("user", "password"));
+
+        cache.put("user", "password");
+        assertTrue(cache.verify("user", "password"));
+        assertFalse(cache.verify("user", "wrong password"));
+        assertFalse(cache.verify("other", "password"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        CredentialCache cache = new CredentialCache();
+        cache.put("user", "password");
+        cache.invalidate("user");
+
+        assertFalse(cache.verify("user", "password"));
+    }
+}
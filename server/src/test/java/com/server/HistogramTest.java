@@ -0,0 +1,28 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketsAreCumulative() {
+        Histogram histogram = new Histogram();
+        histogram.observeNanos(100_000L);
+        histogram.observeNanos(3_000_000L);
+        histogram.observeNanos(20_000_000_000L);
+
+        StringBuilder builder = new StringBuilder();
+        histogram.render(builder, "test_seconds", "query=\"user\"");
+        String output = builder.toString();
+
+        assertEquals(3, histogram.getCount());
+        assertTrue(output.contains("test_seconds_bucket{query=\"user\",le=\"5.0E-4\"} 1\n"));
+        assertTrue(output.contains("test_seconds_bucket{query=\"user\",le=\"0.005\"} 2\n"));
+        assertTrue(output.contains("test_seconds_bucket{query=\"user\",le=\"10.0\"} 2\n"));
+        assertTrue(output.contains("test_seconds_bucket{query=\"user\",le=\"+Inf\"} 3\n"));
+        assertTrue(output.contains("test_seconds_count{query=\"user\"} 3\n"));
+    }
+}
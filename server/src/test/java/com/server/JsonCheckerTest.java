@@ -0,0 +1,45 @@
+package com.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class JsonCheckerTest {
+    private final JsonChecker jsonChecker = new JsonChecker();
+
+    @Test
+    public void testBoundingBoxMustBeWithinRange() {
+        assertTrue(valid(box(64, 66, 24, 26)));
+        assertTrue(valid(box(-90, 90, -180, 180)));
+        assertFalse(valid(box(-1000, 66, 24, 26)));
+        assertFalse(valid(box(64, 91, 24, 26)));
+        assertFalse(valid(box(64, 66, -181, 26)));
+        /* getDouble() parses the string "Infinity" */
+        assertFalse(valid(box(64, 66, 24, 26).put("east", "Infinity")));
+        assertFalse(valid(box(66, 64, 24, 26)));
+    }
+
+    @Test
+    public void testBoundingBoxMayCrossTheAntimeridian() {
+        final JSONObject query = box(-20, -10, 170, -170);
+        assertTrue(valid(query));
+        assertTrue(this.jsonChecker.getAreaQuery(query).crossesAntimeridian());
+    }
+
+    @Test
+    public void testRadiusMustBeWithinRange() {
+        assertTrue(valid(new JSONObject().put("latitude", 65.0).put("longitude", 25.4).put("radius", 10.0)));
+        assertFalse(valid(new JSONObject().put("latitude", 95.0).put("longitude", 25.4).put("radius", 10.0)));
+        assertFalse(valid(new JSONObject().put("latitude", 65.0).put("longitude", 25.4).put("radius", "Infinity")));
+    }
+
+    private boolean valid(JSONObject query) {
+        return this.jsonChecker.checkAreaQueryValidity(query);
+    }
+
+    private static JSONObject box(double south, double north, double west, double east) {
+        return new JSONObject().put("south", south).put("north", north).put("west", west).put("east", east);
+    }
+}
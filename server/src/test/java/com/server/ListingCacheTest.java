@@ -0,0 +1,82 @@
+package com.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ListingCacheTest {
+
+    @Test
+    public void testListingIsBuiltOncePerWrite() throws SQLException {
+        final ListingCache cache = new ListingCache(1024);
+        final AtomicInteger loads = new AtomicInteger();
+        final ListingCache.Loader loader = () -> listing("[{\"i\":" + loads.incrementAndGet() + "}]");
+
+        final CachedListing first = cache.get(loader);
+        assertSame(first, cache.get(loader));
+        assertEquals(1, loads.get());
+
+        cache.invalidate();
+        final CachedListing second = cache.get(loader);
+        assertEquals("[{\"i\":2}]", second.getMessages().toString());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testTooLargeListingIsNotKept() throws SQLException {
+        final ListingCache cache = new ListingCache(4);
+        assertEquals(5, cache.get(() -> listing("[{},]")).getMessages().getBytes().length);
+        assertNull(cache.get(() -> listing("[]")));
+
+        cache.clear();
+        assertEquals("[]", cache.get(() -> listing("[]")).getMessages().toString());
+    }
+
+    @Test
+    public void testEtagIsDifferentForEveryVersionAndCoding() throws SQLException {
+        final ListingCache cache = new ListingCache(1024);
+        final CachedListing first = cache.get(() -> listing("[]"));
+        cache.invalidate();
+        final CachedListing second = cache.get(() -> listing("[]"));
+        assertNotEquals(first.getEtag(ContentEncoding.IDENTITY), second.getEtag(ContentEncoding.IDENTITY));
+        assertNotEquals(first.getEtag(ContentEncoding.IDENTITY), new ListingCache(1024).get(() -> listing("[]")).getEtag(ContentEncoding.IDENTITY));
+
+        final String identity = second.getEtag(ContentEncoding.IDENTITY);
+        final String gzip = second.getEtag(ContentEncoding.GZIP);
+        assertNotEquals(identity, gzip);
+        assertNotEquals(gzip, second.getEtag(ContentEncoding.DEFLATE));
+
+        assertTrue(second.matches(identity, ContentEncoding.IDENTITY));
+        assertTrue(second.matches("\"x\", W/" + gzip, ContentEncoding.GZIP));
+        assertTrue(second.matches("*", ContentEncoding.GZIP));
+        assertFalse(second.matches(identity, ContentEncoding.GZIP));
+        assertFalse(second.matches(gzip, ContentEncoding.IDENTITY));
+        assertFalse(second.matches(first.getEtag(ContentEncoding.IDENTITY), ContentEncoding.IDENTITY));
+        assertFalse(second.matches(null, ContentEncoding.IDENTITY));
+    }
+
+    @Test
+    public void testGzipCopy() throws IOException {
+        final CachedListing listing = new CachedListing(listing("[{\"nickname\":\"a\"}]"), "t");
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(listing.getGzipped()))) {
+            assertArrayEquals(listing.getMessages().getBytes(), input.readAllBytes());
+        }
+    }
+
+    private static SerializedMessages listing(String json) {
+        return new SerializedMessages(json.getBytes(StandardCharsets.UTF_8), 1);
+    }
+}
@@ -0,0 +1,27 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LogTest {
+
+    @Test
+    public void testPlaceholdersAreFilledInOrder() {
+        assertEquals("Got 3 messages from a", Log.format("Got {} messages from {}", new Object[] { 3, "a" }));
+        assertEquals("No arguments {}", Log.format("No arguments {}", null));
+        assertEquals("Extra null", Log.format("Extra {}", new Object[] { null, "ignored" }));
+        assertEquals("Missing {} ", Log.format("Missing {} ", new Object[0]));
+    }
+
+    @Test
+    public void testDefaultLevelIsInfo() {
+        assertFalse(Log.isDebugEnabled());
+        assertFalse(Log.isEnabled(Log.Level.DEBUG));
+        assertTrue(Log.isEnabled(Log.Level.INFO));
+        assertTrue(Log.isEnabled(Log.Level.ERROR));
+        assertFalse(Log.isEnabled(Log.Level.OFF));
+    }
+}
@@ -0,0 +1,28 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MessageCursorTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        MessageCursor cursor = new MessageCursor(1677672000000L, "reindeer:spotter");
+        MessageCursor decoded = MessageCursor.decode(cursor.encode());
+
+        /* Nickname may contain the separator character, only the first one is used */
+        assertEquals(cursor.getSent(), decoded.getSent());
+        assertEquals(cursor.getNickname(), decoded.getNickname());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalidCursor() {
+        MessageCursor.decode("not a cursor");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseLimitOutOfRange() {
+        MessagePage.parseLimit(Integer.toString(MessagePage.MAX_LIMIT + 1));
+    }
+}
@@ -0,0 +1,170 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageDatabaseTest {
+    private File dbFile;
+    private MessageDatabase messageDatabase;
+
+    @Before
+    public void createFile() throws IOException, SQLException {
+        /* Every connection the database opens must count the statements it runs */
+        CountingDriver.install();
+        this.dbFile = File.createTempFile("messagedatabasetest", ".db");
+        this.dbFile.delete();
+        this.messageDatabase = MessageDatabase.getInstance();
+    }
+
+    @After
+    public void closeDatabase() throws SQLException {
+        this.messageDatabase.closeDB();
+        for (String suffix : new String[] { "", "-wal", "-shm" }) {
+            new File(this.dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testEachReadRunsOneStatement() throws SQLException {
+        this.messageDatabase.open(this.dbFile.getPath());
+
+        /* An empty database must not need a separate check either */
+        assertStatements(1, () -> assertEquals(0, this.messageDatabase.getMessages().length()));
+        assertStatements(1, () -> assertEquals(0, this.messageDatabase.getMessagesByUser("a").length()));
+
+        final LocalDateTime sent = LocalDateTime.of(2023, 2, 1, 12, 0);
+        for (int i = 0; i < 4; i++) {
+            WarningMessage message = new WarningMessage(i % 2 == 0 ? "a" : "b", 65.0, 25.4, "Moose", sent.plusMinutes(i));
+            message.setWeather(WarningMessage.WEATHER_UNAVAILABLE);
+            this.messageDatabase.setMessage(message);
+        }
+
+        final long start = new WarningMessage("a", 65.0, 25.4, "Moose", sent).dateAsInt();
+        assertStatements(1, () -> assertEquals(4, this.messageDatabase.getMessages().length()));
+        assertStatements(1, () -> assertEquals(2, this.messageDatabase.getMessagesByUser("a").length()));
+        assertStatements(1, () -> assertEquals(3, this.messageDatabase.getMessagesByTimeInterval(start, start + 2 * 60_000).length()));
+        assertStatements(1, () -> assertEquals(4, this.messageDatabase.getMessagesByArea(new AreaQuery(64.0, 66.0, 24.0, 26.0)).length()));
+        assertStatements(1, () -> assertEquals(2, this.messageDatabase.getMessagesPage(2, null).getMessages().length()));
+    }
+
+    @Test
+    public void testRecentMessagesAreReadFromMemory() throws SQLException {
+        this.messageDatabase.open(this.dbFile.getPath());
+
+        final LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+        final WarningMessage[] messages = new WarningMessage[5];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new WarningMessage("a", 65.0, 25.4, "Moose", now.minusMinutes(messages.length - i));
+            messages[i].setWeather(WarningMessage.WEATHER_PENDING);
+        }
+        /* SQLite stores this areacode as 358, the index must have the stored value */
+        messages[1].setAreacode("0358");
+        messages[1].setPhonenumber("0401234567");
+        messages[2].setAreacode("358");
+        messages[2].setPhonenumber("0401234567");
+        for (WarningMessage message : messages) {
+            this.messageDatabase.setMessage(message);
+        }
+        /* WeatherEnricher updates with a message that has no contact fields */
+        final WarningMessage enriched = new WarningMessage("a", 65.0, 25.4, "Moose", messages[2].getSent(ZoneOffset.UTC).toLocalDateTime());
+        enriched.setWeather(-5);
+        this.messageDatabase.updateWeather(enriched);
+
+        for (int restart = 0; restart < 2; restart++) {
+            final long start = messages[0].dateAsInt();
+            final String all = this.messageDatabase.getMessages().toString();
+            assertStatements(0, () -> assertEquals(all, this.messageDatabase.getMessagesByTimeInterval(start, Long.MAX_VALUE).toString()));
+            assertEquals("358", new JSONArray(all).getJSONObject(1).getString("areacode"));
+            assertEquals("-5 Celsius", new JSONArray(all).getJSONObject(2).getString("weather"));
+            assertEquals("358", new JSONArray(all).getJSONObject(2).getString("areacode"));
+
+            /* All messages have the same nickname, so the user page from the database must be the same */
+            MessageCursor cursor = null;
+            do {
+                final MessageCursor previous = cursor;
+                final MessagePage expected = this.messageDatabase.getMessagesByUserPage("a", 2, previous);
+                final MessagePage[] page = new MessagePage[1];
+                assertStatements(0, () -> page[0] = this.messageDatabase.getMessagesPage(2, previous));
+                assertEquals(expected.getMessages().toString(), page[0].getMessages().toString());
+                assertEquals(encode(expected.getNextCursor()), encode(page[0].getNextCursor()));
+                assertStatements(0, () -> assertEquals(expected.getMessages().length(),
+                    this.messageDatabase.getMessagesByTimeIntervalPage(start, Long.MAX_VALUE, 2, previous).getMessages().length()));
+                cursor = page[0].getNextCursor();
+            } while (cursor != null);
+
+            /* After a restart the index is loaded from the database */
+            this.messageDatabase.closeDB();
+            this.messageDatabase.open(this.dbFile.getPath());
+        }
+    }
+
+    @Test
+    public void testAreaAcrossTheAntimeridianIsOneQuery() throws SQLException {
+        this.messageDatabase.open(this.dbFile.getPath());
+
+        final LocalDateTime sent = LocalDateTime.of(2023, 2, 1, 12, 0);
+        final double[] longitudes = { 179.9, -179.9, 179.0, 0.0 };
+        for (int i = 0; i < longitudes.length; i++) {
+            WarningMessage message = new WarningMessage("a", 10.0, longitudes[i], "Moose", sent.plusMinutes(i));
+            message.setWeather(WarningMessage.WEATHER_UNAVAILABLE);
+            this.messageDatabase.setMessage(message);
+        }
+
+        assertStatements(1, () -> assertEquals(2, this.messageDatabase.getMessagesByArea(AreaQuery.fromRadius(10.0, 180.0, 30)).length()));
+        assertStatements(1, () -> assertEquals(3, this.messageDatabase.getMessagesByArea(AreaQuery.fromRadius(10.0, -179.5, 200)).length()));
+    }
+
+    @Test
+    public void testNoQueryScansATable() throws SQLException {
+        this.messageDatabase.open(this.dbFile.getPath());
+        List<String> problems = this.messageDatabase.checkQueryPlans();
+        assertTrue(problems.toString(), problems.isEmpty());
+    }
+
+    @Test
+    public void testLegacyDatabaseIsMigrated() throws SQLException {
+        /* A database made before the spatial index and versioned migrations */
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.dbFile.getPath());
+                Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE messages (sent INT NOT NULL, nickname VARCHAR (50) NOT NULL, latitude DOUBLE NOT NULL, " +
+                "longitude DOUBLE NOT NULL, dangertype VARCHAR(255) NOT NULL, areacode INT, phonenumber VARCHAR (50), weather INT, PRIMARY KEY (sent, nickname))");
+            statement.executeUpdate("CREATE TABLE users (username VARCHAR (50) PRIMARY KEY, password VARCHAR (50) NOT NULL, email VARCHAR (50) NOT NULL)");
+            statement.executeUpdate("INSERT INTO messages VALUES (1675252800000, 'a', 65.0, 25.4, 'Moose', NULL, NULL, -999)");
+            statement.executeUpdate("INSERT INTO messages VALUES (1675252860000, 'b', 61.5, 23.8, 'Deer', NULL, NULL, -999)");
+        }
+
+        this.messageDatabase.open(this.dbFile.getPath());
+        assertEquals(2, this.messageDatabase.getMessages().length());
+        assertEquals(1, this.messageDatabase.getMessagesByArea(new AreaQuery(64.0, 66.0, 24.0, 26.0)).length());
+        assertTrue(this.messageDatabase.checkQueryPlans().isEmpty());
+    }
+
+    private interface Read {
+        void run() throws SQLException;
+    }
+
+    private static String encode(MessageCursor cursor) {
+        return cursor == null ? null : cursor.encode();
+    }
+
+    private static void assertStatements(long expected, Read read) throws SQLException {
+        final long before = CountingDriver.getExecutionCount();
+        read.run();
+        assertEquals(expected, CountingDriver.getExecutionCount() - before);
+    }
+}
@@ -0,0 +1,94 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class MessageSerializerTest {
+
+    @Test
+    public void testOutputIsTheSameAsJSONArray() throws SQLException {
+        final Random random = new Random(42);
+        final StringBuilder characters = new StringBuilder("</<a\\\"\b\t\n\f\r\u0000\u001f\u007f\u0080\u009f ä ⃿℀😀\ud800x");
+        for (char c = 0; c < 0xd800; c += 7) {
+            characters.append(c);
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE messages (sent INT NOT NULL, nickname VARCHAR (50) NOT NULL, latitude DOUBLE NOT NULL, " +
+                    "longitude DOUBLE NOT NULL, dangertype VARCHAR(255) NOT NULL, areacode INT, phonenumber VARCHAR (50), weather INT)");
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO messages VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                insertRow(insert, 1675252800000L, characters.toString(), 65.0, -25.4, "Moose", 358, "0401234567", WarningMessage.WEATHER_PENDING);
+                insertRow(insert, 0, "a", 1e-5, 1e8, "Deer", 0, "040", 0);
+                insertRow(insert, -1, "b", -0.0, 0.001, "Reindeer", 1, null, -4);
+                insertRow(insert, 253402300799999L, "c", 1234567.0000001, Double.MIN_VALUE, "Other", -3, "", Integer.MAX_VALUE);
+                for (int i = 0; i < 5000; i++) {
+                    final double scale = Math.pow(10, random.nextInt(9));
+                    insertRow(insert, random.nextLong() % 100_000_000_000_000L, "n" + i,
+                        Math.round((random.nextDouble() * 180 - 90) * scale) / scale, random.nextDouble() * 360 - 180,
+                        "Moose", random.nextInt(3), random.nextBoolean() ? "040" : null, random.nextInt(80) - 1000);
+                }
+            }
+
+            try (Statement statement = connection.createStatement();
+                    ResultSet result = statement.executeQuery("SELECT * FROM messages")) {
+                final JSONArray expected = new JSONArray();
+                final MessageSerializer serializer = MessageSerializer.start();
+                while (result.next()) {
+                    expected.put(toJSON(result));
+                    serializer.append(result);
+                }
+
+                final SerializedMessages messages = serializer.toMessages();
+                assertEquals(expected.length(), messages.length());
+                assertEquals(expected.toString(), messages.toString());
+            }
+        }
+    }
+
+    private static void insertRow(PreparedStatement insert, long sent, String nickname, double latitude, double longitude,
+            String dangertype, int areacode, String phonenumber, int weather) throws SQLException {
+        insert.setLong(1, sent);
+        insert.setString(2, nickname);
+        insert.setDouble(3, latitude);
+        insert.setDouble(4, longitude);
+        insert.setString(5, dangertype);
+        insert.setInt(6, areacode);
+        insert.setString(7, phonenumber);
+        insert.setInt(8, weather);
+        insert.executeUpdate();
+    }
+
+    /* The JSONObject based serialization the serializer replaces */
+    private static JSONObject toJSON(ResultSet result) throws SQLException {
+        final JSONObject jsonObject = new JSONObject();
+        final WarningMessage msg = new WarningMessage(result.getString("nickname"), result.getDouble("latitude"), result.getDouble("longitude"), result.getString("dangertype"), WarningMessage.setSent(result.getLong("sent")));
+        jsonObject.put("sent", msg.getSent(ZoneOffset.UTC));
+        jsonObject.put("nickname", msg.getNickname());
+        jsonObject.put("latitude", msg.getLatitude());
+        jsonObject.put("longitude", msg.getLongitude());
+        jsonObject.put("dangertype", msg.getDangertype());
+        if (result.getInt("areacode") > 0 && result.getString("phonenumber") != null) {
+            jsonObject.put("areacode", result.getString("areacode"));
+            jsonObject.put("phonenumber", result.getString("phonenumber"));
+        }
+        if (result.getInt("weather") > WarningMessage.WEATHER_UNAVAILABLE) {
+            jsonObject.put("weather", result.getInt("weather") + " Celsius");
+        }
+        return jsonObject;
+    }
+}
@@ -0,0 +1,134 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageWriteQueueTest {
+    private final Object writeLock = new Object();
+    private Connection connection;
+    private MessageWriteQueue writeQueue;
+
+    @Before
+    public void openQueue() throws SQLException {
+        this.connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = this.connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE messages (sent INT NOT NULL, nickname VARCHAR (50) NOT NULL, latitude DOUBLE NOT NULL, " +
+                "longitude DOUBLE NOT NULL, dangertype VARCHAR(255) NOT NULL, areacode INT, phonenumber VARCHAR (50), weather INT, PRIMARY KEY (sent, nickname))");
+        }
+        this.writeQueue = new MessageWriteQueue(this.connection, this.writeLock, 200);
+    }
+
+    @After
+    public void closeQueue() throws SQLException {
+        this.writeQueue.close();
+        this.connection.close();
+    }
+
+    @Test
+    public void testRuntimeFailureOnlyFailsItsOwnWrite() throws SQLException {
+        /* A message without a sent time throws a NullPointerException while it is bound */
+        try {
+            this.writeQueue.write(new WarningMessage("a", 65.0, 25.4, "Moose", null));
+            fail("The write should have failed");
+        } catch (SQLException e) {
+            assertNotNull(e.getCause());
+        }
+
+        /* The worker thread is still running */
+        this.writeQueue.write(message("a", 0));
+
+        final List<SQLException> errors = this.writeQueue.writeAll(List.of(message("b", 0), new WarningMessage("c", 65.0, 25.4, "Moose", null)));
+        assertNull(errors.get(0));
+        assertNotNull(errors.get(1));
+        assertEquals(2, countMessages());
+    }
+
+    @Test
+    public void testWriteAfterCloseFails() throws SQLException {
+        this.writeQueue.write(message("a", 0));
+        this.writeQueue.close();
+
+        try {
+            this.writeQueue.write(message("a", 1));
+            fail("The write should have failed");
+        } catch (SQLException e) {
+            assertEquals("The message write queue has been closed", e.getMessage());
+        }
+        assertEquals(1, countMessages());
+    }
+
+    @Test
+    public void testTimeoutOnlyGivesUpQueuedWrites() throws Exception {
+        final SQLException[] firstError = new SQLException[1];
+        final Thread first = new Thread(() -> {
+            try {
+                this.writeQueue.write(message("a", 0));
+            } catch (SQLException e) {
+                firstError[0] = e;
+            }
+        });
+
+        synchronized (this.writeLock) {
+            /* The worker takes the first message and waits for the lock with it */
+            first.start();
+            awaitWorkerBlocked();
+
+            /* The second message is still queued when its timeout runs out */
+            try {
+                this.writeQueue.write(message("b", 0));
+                fail("The write should have timed out");
+            } catch (SQLException e) {
+                assertEquals("Timed out waiting for the message to be committed", e.getMessage());
+            }
+            /* The first writer has waited past its timeout too, but keeps waiting for the commit */
+            assertTrue(first.isAlive());
+        }
+
+        first.join();
+        assertNull(firstError[0]);
+        assertEquals(1, countMessages());
+    }
+
+    /* Waits until the worker thread is blocked on the write lock */
+    private static void awaitWorkerBlocked() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                if ("message-writer".equals(thread.getName()) && thread.getState() == Thread.State.BLOCKED) {
+                    return;
+                }
+            }
+            Thread.sleep(1);
+        }
+        fail("The worker did not take the message");
+    }
+
+    private static WarningMessage message(String nickname, int minutes) {
+        final WarningMessage message = new WarningMessage(nickname, 65.0, 25.4, "Moose", LocalDateTime.of(2023, 2, 1, 12, 0).plusMinutes(minutes));
+        message.setWeather(WarningMessage.WEATHER_UNAVAILABLE);
+        return message;
+    }
+
+    private int countMessages() throws SQLException {
+        try (Statement statement = this.connection.createStatement();
+                ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM messages")) {
+            return result.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class MetricsFilterTest {
+
+    @Test
+    public void testMethodLabelIsFromFixedSet() {
+        assertEquals("get", MetricsFilter.methodLabel("GET"));
+        assertEquals("post", MetricsFilter.methodLabel("post"));
+        assertEquals("other", MetricsFilter.methodLabel("DELETE"));
+        assertEquals("other", MetricsFilter.methodLabel("X\"Y"));
+    }
+
+    @Test
+    public void testArbitraryMethodDoesNotAddLabelValue() throws IOException, InterruptedException {
+        /* Handler that rejects the request without naming its operation, like the auth filter */
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final HttpContext context = server.createContext("/metricsfiltertest", exchange -> {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+        });
+        /* Outer filter that tells when the metrics filter has recorded the request */
+        final CountDownLatch recorded = new CountDownLatch(1);
+        context.getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    recorded.countDown();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Signals the test";
+            }
+        });
+        context.getFilters().add(new MetricsFilter("/metricsfiltertest"));
+        server.start();
+
+        try (Socket socket = new Socket("localhost", server.getAddress().getPort())) {
+            final OutputStream output = socket.getOutputStream();
+            output.write("MADE\"UP /metricsfiltertest HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            final InputStream input = socket.getInputStream();
+            assertTrue(new String(input.readAllBytes(), StandardCharsets.US_ASCII).startsWith("HTTP/1.1 401"));
+            assertTrue(recorded.await(5, TimeUnit.SECONDS));
+        } finally {
+            server.stop(0);
+        }
+
+        final String metrics = Metrics.getInstance().render();
+        assertTrue(metrics.contains("context=\"/metricsfiltertest\",operation=\"other\",code=\"401\"} 1\n"));
+        assertFalse(metrics.toLowerCase().contains("made"));
+    }
+}
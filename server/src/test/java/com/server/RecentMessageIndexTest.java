@@ -0,0 +1,58 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class RecentMessageIndexTest {
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void testQueriesBelowTheFloorFallBack() {
+        final RecentMessageIndex index = new RecentMessageIndex(60 * MINUTE, 3);
+        final long now = System.currentTimeMillis();
+        assertNull(index.getMessagesByTimeInterval(now, now));
+
+        index.load(new TreeMap<>(), true);
+        assertEquals(0, index.getMessagesByTimeInterval(Long.MIN_VALUE, now).length());
+        assertEquals(0, index.getMessagesPage(Long.MIN_VALUE, Long.MAX_VALUE, 2, null).getMessages().length());
+
+        for (int i = 5; i > 0; i--) {
+            index.add(now - i * MINUTE, "a", json(i));
+        }
+        assertEquals(3, index.size());
+        assertNull(index.getMessagesByTimeInterval(now - 4 * MINUTE, now));
+        assertEquals("[{\"i\":3},{\"i\":2},{\"i\":1}]", index.getMessagesByTimeInterval(now - 3 * MINUTE, now).toString());
+
+        /* A full page is answered from memory, the page that would run past the floor is not */
+        final MessagePage first = index.getMessagesPage(Long.MIN_VALUE, Long.MAX_VALUE, 2, null);
+        assertEquals("[{\"i\":1},{\"i\":2}]", first.getMessages().toString());
+        assertTrue(first.hasNextPage());
+        assertNull(index.getMessagesPage(Long.MIN_VALUE, Long.MAX_VALUE, 2, first.getNextCursor()));
+        assertNotNull(index.getMessagesPage(now - 3 * MINUTE, Long.MAX_VALUE, 2, first.getNextCursor()));
+
+        /* Messages older than the retention window are not kept */
+        index.add(now - 90 * MINUTE, "b", json(90));
+        assertEquals(3, index.size());
+        assertNull(index.getMessagesByTimeInterval(now - 90 * MINUTE, now));
+    }
+
+    @Test
+    public void testKeysAreInUtf8Order() {
+        /* U+FF61 is after U+1F600 in UTF-8 but before it in UTF-16 */
+        assertTrue(RecentMessageIndex.compareCodePoints("｡", "😀") < 0);
+        assertTrue(RecentMessageIndex.compareCodePoints("😀", "｡") > 0);
+        assertTrue(RecentMessageIndex.compareCodePoints("a", "ab") < 0);
+        assertEquals(0, RecentMessageIndex.compareCodePoints("ab", "ab"));
+    }
+
+    private static byte[] json(int i) {
+        return ("{\"i\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RequestBodyTest {
+
+    @Test
+    public void testParseFromStream() throws InvalidRequestException {
+        JSONObject json = RequestBody.parse(stream("  {\"nickname\":\"n\",\"latitude\":65.0}"));
+        assertEquals("n", json.getString("nickname"));
+        assertEquals(65.0, json.getDouble("latitude"), 0.0);
+    }
+
+    @Test
+    public void testBodyIsReadToTheEnd() throws InvalidRequestException {
+        /* An unread rest of the body would make HttpServer close the keep-alive connection */
+        ByteArrayInputStream inputStream = stream("{\"nickname\":\"n\"}\r\n  \r\n");
+        RequestBody.parse(inputStream);
+        assertEquals(0, inputStream.available());
+    }
+
+    @Test
+    public void testInvalidBodies() {
+        assertCode(412, stream(" \n"));
+        assertCode(400, stream("nickname=n"));
+
+        /* A JSON string longer than the limit, which must not be read to the end */
+        byte[] large = new byte[RequestBody.MAX_BODY_SIZE + 1024];
+        Arrays.fill(large, (byte) 'a');
+        large[0] = '{';
+        large[1] = '"';
+        assertCode(413, new ByteArrayInputStream(large));
+    }
+
+    @Test
+    public void testParseList() throws InvalidRequestException {
+        List<JSONObject> array = RequestBody.parseList(stream(" [ {\"nickname\":\"a\"} , {\"nickname\":\"b\"} ] "), 1024, 10);
+        assertEquals(2, array.size());
+        assertEquals("b", array.get(1).getString("nickname"));
+
+        List<JSONObject> ndjson = RequestBody.parseList(stream("{\"nickname\":\"a\"}\n{\"nickname\":\"b\"}\n{\"nickname\":\"c\"}\n"), 1024, 10);
+        assertEquals(3, ndjson.size());
+        assertEquals("c", ndjson.get(2).getString("nickname"));
+
+        assertEquals(0, RequestBody.parseList(stream("[]"), 1024, 10).size());
+    }
+
+    @Test
+    public void testInvalidLists() {
+        assertListCode(412, stream(""), 1024, 10);
+        assertListCode(400, stream("[{\"nickname\":\"a\"} {\"nickname\":\"b\"}]"), 1024, 10);
+        assertListCode(400, stream("[1, 2]"), 1024, 10);
+        assertListCode(400, stream("{\"nickname\":\"a\"}\nnickname=b"), 1024, 10);
+        assertListCode(413, stream("[{},{},{}]"), 1024, 2);
+        assertListCode(413, stream("[{\"nickname\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}]"), 16, 10);
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertCode(int code, ByteArrayInputStream inputStream) {
+        try {
+            RequestBody.parse(inputStream);
+            fail("Expected code " + code);
+        } catch (InvalidRequestException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+
+    private static void assertListCode(int code, ByteArrayInputStream inputStream, long maxBodySize, int maxItems) {
+        try {
+            RequestBody.parseList(inputStream, maxBodySize, maxItems);
+            fail("Expected code " + code);
+        } catch (InvalidRequestException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class RequestDecoderTest {
+    private final RequestDecoder decoder = new RequestDecoder();
+
+    @Test
+    public void testDecodeWarning() throws InvalidRequestException {
+        WarningRequest request = decoder.decode("{\"nickname\":\"n\",\"latitude\":65.0,\"longitude\":25.5,\"dangertype\":\"Moose\","
+            + "\"sent\":\"2023-02-01T12:00:00.000Z\",\"areacode\":\"358\",\"phonenumber\":\"0401234567\",\"weather\":\"\"}");
+
+        assertEquals(WarningRequest.Type.WARNING, request.getType());
+        assertEquals("n", request.getMessage().getNickname());
+        assertEquals(25.5, request.getMessage().getLongitude(), 0.0);
+        assertEquals("358", request.getMessage().getAreacode());
+        assertTrue(request.isWeatherRequested());
+        assertNull(request.getUserQuery());
+    }
+
+    @Test
+    public void testDecodePaginatedUserQuery() throws InvalidRequestException {
+        WarningRequest request = decoder.decode("{\"query\":\"user\",\"nickname\":\"n\",\"limit\":10}");
+
+        assertEquals(WarningRequest.Type.USER_QUERY, request.getType());
+        assertEquals("n", request.getUserQuery().getNickname());
+        assertTrue(request.isPaginated());
+        assertEquals(10, request.getLimit());
+        assertNull(request.getCursor());
+    }
+
+    @Test
+    public void testDecodeTimeQuery() throws InvalidRequestException {
+        WarningRequest request = decoder.decode("{\"query\":\"time\",\"timestart\":\"2023-02-01T00:00:00.000Z\",\"timeend\":\"2023-02-02T00:00:00.000Z\"}");
+
+        assertEquals(WarningRequest.Type.TIME_QUERY, request.getType());
+        assertEquals(86_400_000L, request.getTimeQuery().timeEndAsInt() - request.getTimeQuery().timeStartAsInt());
+        assertFalse(request.isPaginated());
+    }
+
+    @Test
+    public void testInvalidRequestCodes() {
+        assertCode(412, "");
+        assertCode(400, "not json");
+        assertCode(413, "{\"nickname\":\"n\",\"latitude\":65.0,\"longitude\":25.5,\"dangertype\":\"Moose\"}");
+        assertCode(413, "{\"nickname\":\"n\",\"latitude\":65.0,\"longitude\":25.5,\"dangertype\":\"Bear\",\"sent\":\"2023-02-01T12:00:00.000Z\"}");
+        assertCode(500, "{\"nickname\":\"n\",\"latitude\":65.0,\"longitude\":25.5,\"dangertype\":\"Moose\",\"sent\":\"yesterday\"}");
+        assertCode(412, "{\"query\":\"weather\"}");
+        assertCode(400, "{\"query\":\"user\",\"nickname\":\"n\",\"limit\":0}");
+        assertCode(412, "{\"query\":\"area\",\"north\":60}");
+    }
+
+    private void assertCode(int code, String content) {
+        try {
+            decoder.decode(content);
+            fail("Expected code " + code + " for " + content);
+        } catch (InvalidRequestException e) {
+            assertEquals(content, code, e.getCode());
+        }
+    }
+}
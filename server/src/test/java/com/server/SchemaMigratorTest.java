@@ -0,0 +1,74 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+public class SchemaMigratorTest {
+
+    private static SchemaMigrator migrator() {
+        return new SchemaMigrator()
+            .schema(1, "source table", "CREATE TABLE source (value INT)")
+            .schema(2, "target table", "CREATE TABLE target (value INT)")
+            .backfill(3, "copy source to target", "source", "INSERT INTO target SELECT value FROM source WHERE rowid > ? AND rowid <= ?");
+    }
+
+    @Test
+    public void testStepsAreAppliedOnce() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            assertEquals(0, SchemaMigrator.getVersion(connection));
+            assertEquals(3, migrator().migrate(connection));
+            /* The CREATE TABLE statements would fail if they were run again */
+            assertEquals(3, migrator().migrate(connection));
+            assertEquals(3, SchemaMigrator.getVersion(connection));
+        }
+    }
+
+    @Test
+    public void testInterruptedBackfillContinues() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+                Statement statement = connection.createStatement()) {
+            new SchemaMigrator()
+                .schema(1, "source table", "CREATE TABLE source (value INT)")
+                .schema(2, "target table", "CREATE TABLE target (value INT)")
+                .migrate(connection);
+            for (int i = 1; i <= 25; i++) {
+                statement.executeUpdate("INSERT INTO source VALUES (" + i + ")");
+            }
+
+            /* The first ten rows were copied before the server stopped */
+            statement.executeUpdate("INSERT INTO target SELECT value FROM source WHERE rowid <= 10");
+            statement.executeUpdate("CREATE TABLE schema_backfill (version INTEGER PRIMARY KEY, position INTEGER NOT NULL, last INTEGER NOT NULL)");
+            statement.executeUpdate("INSERT INTO schema_backfill VALUES (3, 10, 25)");
+
+            assertEquals(3, migrator().migrate(connection));
+            try (ResultSet result = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT value) FROM target")) {
+                result.next();
+                assertEquals(25, result.getInt(1));
+                assertEquals(25, result.getInt(2));
+            }
+            try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM schema_backfill")) {
+                result.next();
+                assertEquals(0, result.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testNewerDatabaseIsRejected() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            SchemaMigrator.setVersion(connection, 4);
+            migrator().migrate(connection);
+            fail("Expected SQLException");
+        } catch (SQLException e) {
+            /* Expected */
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ServerExecutorTest {
+
+    @Test
+    public void testFullQueueIsShedOutsideTheCallerThread() throws InterruptedException {
+        ThreadPoolExecutor executor = ServerExecutor.bounded(1, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch shedDone = new CountDownLatch(1);
+        AtomicBoolean queuedWasShed = new AtomicBoolean(true);
+        AtomicBoolean rejectedWasShed = new AtomicBoolean(false);
+
+        try {
+            /* Occupy the only thread and the only queue slot */
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> queuedWasShed.set(ServerExecutor.isShed()));
+
+            Thread caller = Thread.currentThread();
+            executor.execute(() -> {
+                rejectedWasShed.set(ServerExecutor.isShed() && Thread.currentThread() != caller);
+                shedDone.countDown();
+            });
+            assertFalse(ServerExecutor.isShed());
+            assertTrue(shedDone.await(5, TimeUnit.SECONDS));
+            assertTrue(rejectedWasShed.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        assertFalse(queuedWasShed.get());
+    }
+
+    @Test
+    public void testFullSheddingThreadsReject() throws InterruptedException {
+        ThreadPoolExecutor executor = ServerExecutor.bounded(1, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            /* Occupy the worker and the shedding thread together with their queues */
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> awaitQuietly(release));
+            }
+            try {
+                executor.execute(() -> { });
+                fail("The exchange should have been rejected");
+            } catch (RejectedExecutionException e) {
+                /* The dispatcher closes the connection */
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    @Test
+    public void testStatementIsPreparedOnce() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            StatementCache cache = new StatementCache(connection);
+
+            PreparedStatement first = cache.prepare("SELECT ?");
+            assertSame(first, cache.prepare("SELECT ?"));
+            assertNotSame(first, cache.prepare("SELECT ? + 1"));
+
+            /* Values are bound as parameters, so quotes in them are not SQL */
+            PreparedStatement statement = cache.prepare("SELECT ?");
+            statement.setString(1, "o'brien");
+            try (ResultSet result = statement.executeQuery()) {
+                assertTrue(result.next());
+                assertEquals("o'brien", result.getString(1));
+            }
+
+            cache.close();
+            assertTrue(first.isClosed());
+            assertNotSame(first, cache.prepare("SELECT ?"));
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WeatherCacheTest {
+
+    @Test
+    public void testSameCellIsReused() {
+        WeatherCache cache = new WeatherCache(0.1, 60000);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(5, cache.getTemperature(65.01, 25.41, () -> { calls.incrementAndGet(); return 5; }));
+        assertEquals(5, cache.getTemperature(65.02, 25.42, () -> { calls.incrementAndGet(); return 6; }));
+        /* Different cell, must call the loader again */
+        assertEquals(7, cache.getTemperature(65.51, 25.41, () -> { calls.incrementAndGet(); return 7; }));
+
+        assertEquals(2, calls.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        WeatherCache cache = new WeatherCache(0.1, 60000);
+
+        assertEquals(WarningMessage.WEATHER_UNAVAILABLE, cache.getTemperature(65.0, 25.0, () -> WarningMessage.WEATHER_UNAVAILABLE));
+        assertEquals(3, cache.getTemperature(65.0, 25.0, () -> 3));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        WeatherCache cache = new WeatherCache(0.1, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(8);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                cache.getTemperature(65.0, 25.0, () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1;
+                });
+            });
+        }
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        /* A lookup is counted before it waits, so every task has found the loading entry once all are counted */
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getMisses() + cache.getCoalesced() < 8 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(7, cache.getCoalesced());
+    }
+}
@@ -0,0 +1,107 @@
+package com.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class WeatherEnricherTest {
+    private File dbFile;
+    private HttpServer stubServer;
+    private String originalEndpoint;
+
+    @Before
+    public void openDatabase() throws IOException, SQLException {
+        this.dbFile = File.createTempFile("weatherenrichertest", ".db");
+        this.dbFile.delete();
+        MessageDatabase.getInstance().open(this.dbFile.getPath());
+
+        /* Stub weather server that knows the weather in the north only */
+        this.stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.stubServer.createContext("/weather", exchange -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                inputStream.transferTo(body);
+            }
+            final String response = body.toString(StandardCharsets.UTF_8.name()).contains("<latitude>71.")
+                ? "<weather><temperature>-12</temperature></weather>"
+                : "<error>Unknown coordinates</error>";
+            final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        this.stubServer.start();
+        this.originalEndpoint = WeatherService.getEndpoint();
+        WeatherService.setEndpoint("http://localhost:" + this.stubServer.getAddress().getPort() + "/weather");
+    }
+
+    @After
+    public void closeDatabase() throws SQLException {
+        WeatherService.setEndpoint(this.originalEndpoint);
+        this.stubServer.stop(0);
+        MessageDatabase.getInstance().closeDB();
+        for (String suffix : new String[] { "", "-wal", "-shm" }) {
+            new File(this.dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testPendingMessagesAreEnrichedAfterRestart() throws SQLException, InterruptedException {
+        final MessageDatabase messageDatabase = MessageDatabase.getInstance();
+        final LocalDateTime sent = LocalDateTime.of(2023, 2, 1, 12, 0);
+        messageDatabase.setMessage(pending(new WarningMessage("north", 71.1, 27.3, "Reindeer", sent)));
+        messageDatabase.setMessage(pending(new WarningMessage("south", 12.3, 45.6, "Other", sent)));
+
+        /* The messages were left pending, e.g. by a server that stopped before fetching their weather */
+        WeatherEnricher.getInstance().resumePending();
+        awaitNoPendingWeather();
+
+        assertEquals(-12, storedWeather("north"));
+        assertEquals(WarningMessage.WEATHER_UNAVAILABLE, storedWeather("south"));
+    }
+
+    private static WarningMessage pending(WarningMessage message) {
+        message.setWeather(WarningMessage.WEATHER_PENDING);
+        return message;
+    }
+
+    private static void awaitNoPendingWeather() throws SQLException, InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!MessageDatabase.getInstance().getMessagesWithPendingWeather().isEmpty()) {
+            assertTrue("The messages are still pending", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private int storedWeather(String nickname) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.dbFile.getPath());
+                PreparedStatement statement = connection.prepareStatement("SELECT weather FROM messages WHERE nickname = ?")) {
+            statement.setString(1, nickname);
+            try (ResultSet result = statement.executeQuery()) {
+                assertTrue(result.next());
+                return result.getInt(1);
+            }
+        }
+    }
+}
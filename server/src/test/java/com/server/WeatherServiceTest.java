@@ -4,8 +4,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpServer;
+
 public class WeatherServiceTest {
 
     @Test
@@ -19,7 +27,6 @@ public class WeatherServiceTest {
         assertNotNull(weatherService);
         assertEquals(latitude, weatherService.getLatitude(), delta);
         assertEquals(longitude, weatherService.getLongitude(), delta);
-        assertNotNull(weatherService.getFilename());
     }
 
     @Test
@@ -35,4 +42,39 @@ public class WeatherServiceTest {
         System.out.println("Test result: The temperature is: " + weatherService.getTemperatureString());
         assertTrue("Temperature is outside valid range", temperature >= -40 && temperature <= 40);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetTemperatureFromStubServer() throws Exception {
+        final StringBuilder receivedBody = new StringBuilder();
+
+        /* Stub weather server that answers every request with the same temperature */
+        HttpServer stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/weather", exchange -> {
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                inputStream.transferTo(body);
+                receivedBody.append(body.toString(StandardCharsets.UTF_8.name()));
+            }
+            byte[] response = "<weather><temperature>-7</temperature></weather>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+        stubServer.start();
+
+        String originalEndpoint = WeatherService.getEndpoint();
+        try {
+            WeatherService.setEndpoint("http://localhost:" + stubServer.getAddress().getPort() + "/weather");
+            WeatherService weatherService = new WeatherService(65.0, 25.5);
+            weatherService.callWeatherAPI();
+
+            assertEquals(-7, weatherService.getTemperature());
+            assertTrue(receivedBody.toString().contains("<latitude>65.0</latitude>"));
+            assertTrue(receivedBody.toString().contains("<longitude>25.5</longitude>"));
+        } finally {
+            WeatherService.setEndpoint(originalEndpoint);
+            stubServer.stop(0);
+        }
+    }
+}